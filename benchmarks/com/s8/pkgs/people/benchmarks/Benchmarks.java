@@ -0,0 +1,44 @@
+package com.s8.pkgs.people.benchmarks;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs all benchmarks (or those matching the regexes passed as arguments) and writes
+ * results as JSON in <code>benchmarks/results/</code>, one file per run, so that runs of
+ * successive builds can be compared (e.g. with any JMH JSON visualizer or diff tool).
+ */
+public class Benchmarks {
+
+
+	public static final String RESULTS_FOLDER = "benchmarks/results";
+
+
+	public static void main(String[] args) throws RunnerException {
+		new File(RESULTS_FOLDER).mkdirs();
+		String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.resultFormat(ResultFormatType.JSON)
+				.result(RESULTS_FOLDER + "/jmh-" + timestamp + ".json");
+
+		if(args.length == 0) {
+			options.include("com\\.s8\\.pkgs\\.people\\.benchmarks\\..*");
+			options.include("org\\.eclipse\\.angus\\.mail\\..*Benchmark.*");
+		}
+		else {
+			for(String include : args) { options.include(include); }
+		}
+
+		new Runner(options.build()).run();
+	}
+
+}
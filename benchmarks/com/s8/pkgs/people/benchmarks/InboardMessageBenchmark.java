@@ -0,0 +1,66 @@
+package com.s8.pkgs.people.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.s8.api.web.S8WebFront;
+import com.s8.pkgs.people.InboardMessage;
+import com.s8.pkgs.people.InboardMessage.Mode;
+import com.s8.pkgs.people.InboardMessages;
+
+
+/**
+ * Feedback messages: one new web object per feedback against interning in the
+ * message field (as forms do).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InboardMessageBenchmark {
+
+
+	private static final String[] TEXTS = new String[] {
+			"Username is available!", "Username is already reserved", "Invalid Username or Password",
+			"Password recopy is not matching"
+	};
+
+	private S8WebFront front;
+
+	private InboardMessages messages;
+
+	private int index = 0;
+
+
+	@Setup
+	public void setup() {
+		/* no-op front: only object creation is measured */
+		front = (S8WebFront) Proxy.newProxyInstance(S8WebFront.class.getClassLoader(), 
+				new Class<?>[] { S8WebFront.class }, (proxy, method, args) -> null);
+		messages = new InboardMessages(front, 16);
+	}
+
+
+	@Benchmark
+	public InboardMessage create() {
+		return new InboardMessage(front, Mode.WARNING, TEXTS[index++ & 3]);
+	}
+
+	@Benchmark
+	public InboardMessage interned() {
+		return messages.get(Mode.WARNING, TEXTS[index++ & 3]);
+	}
+
+}
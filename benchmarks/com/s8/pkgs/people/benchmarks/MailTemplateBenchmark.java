@@ -0,0 +1,103 @@
+package com.s8.pkgs.people.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.s8.pkgs.people.mail.MailTemplate;
+import com.s8.pkgs.people.mail.MailTemplates;
+import com.s8.pkgs.people.process.SignupManager;
+
+
+/**
+ * Sign-up mail bodies: precompiled template rendering (slot bindings, or parameters as
+ * done by the outbox) against the element-by-element builder path (emulated here: each
+ * element re-assembled from its tag, class, style and text).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailTemplateBenchmark {
+
+
+	private MailTemplate template;
+
+	private MailTemplate.Slot codeSlot;
+
+	private MailTemplate registered;
+
+	private final Map<String, String> parameters = new HashMap<>();
+
+	private int index = 0;
+
+
+	@Setup
+	public void setup() {
+		/* forces registration */
+		template = SignupManager.VALIDATION_MAIL_TEMPLATE;
+		codeSlot = template.getSlot("code");
+		registered = MailTemplates.get(SignupManager.VALIDATION_MAIL_TYPE, "fr");
+	}
+
+
+	@Benchmark
+	public String templateSlots() {
+		return template.renderHTML(template.bind().set(codeSlot, Integer.toHexString(index++)));
+	}
+
+	@Benchmark
+	public String templateParameters() {
+		parameters.put("code", Integer.toHexString(index++));
+		return registered.renderHTML(registered.bind(parameters));
+	}
+
+	@Benchmark
+	public String builderPath() {
+		return builderPath(Integer.toHexString(index++));
+	}
+
+
+	private static String builderPath(String code) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("<div class=\"mg-mail-wrapper\">");
+		appendBaseElement(builder, "div", ".mg-mail-banner",
+				"background-image: url(https://alphaventor.com/assets/logos/AlphaventorLogo-1024px-black-text.png);", null);
+		appendBaseElement(builder, "h1", ".mg-h1", null, "Hello dear AlphaVentor user!");
+		appendBaseElement(builder, "h2", ".mg-h2", null, "Welcome to a world of designs");
+		appendBaseElement(builder, "p", ".mg-p", null, "Please find below your validation code for the creation of your account:");
+		appendBaseElement(builder, "div", ".mg-code-wrapper", null, code);
+		appendBaseElement(builder, "p", ".mg-p", null, "If you're not the initiator of this, please report to pierre.convert@alphaventor.com");
+		builder.append("</div>");
+		return builder.toString();
+	}
+
+
+	private static void appendBaseElement(StringBuilder builder, String tag, String cssClass, String style, String text) {
+		builder.append('<').append(tag);
+		if(cssClass != null) { builder.append(" class=\"").append(escape(cssClass.substring(1))).append('"'); }
+		if(style != null) { builder.append(" style=\"").append(escape(style)).append('"'); }
+		builder.append('>');
+		if(text != null) { builder.append(escape(text)); }
+		builder.append("</").append(tag).append('>');
+	}
+
+
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;").replace("'", "&#39;");
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.s8.pkgs.people.benchmarks;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.s8.pkgs.people.security.PasswordHasher;
+import com.s8.pkgs.people.security.PasswordHashingEngine;
+import com.s8.pkgs.people.security.Pbkdf2PasswordHasher;
+import com.s8.pkgs.people.security.ScryptPasswordHasher;
+
+
+/**
+ * Sizes password hashing cost against the log-in p99 budget (250 ms): log-in
+ * verifications, as many concurrent as cores, through an engine with one worker per
+ * core. Pick the costliest hasher whose <code>p0.99</code> sample time stays within
+ * budget.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(Threads.MAX)
+@Fork(1)
+public class PasswordHashingBenchmark {
+
+
+	private static final String PASSWORD = "Warm#Up123";
+
+
+	@Param({ "pbkdf2-100000", "pbkdf2-210000", "pbkdf2-600000", "scrypt-13", "scrypt-14", "scrypt-15", "scrypt-16" })
+	public String hasher;
+
+	private PasswordHashingEngine engine;
+
+	private String hash;
+
+
+	@Setup
+	public void setup() throws InterruptedException, ExecutionException {
+		int nWorkers = Runtime.getRuntime().availableProcessors();
+		engine = new PasswordHashingEngine(parse(hasher), nWorkers, 16 * nWorkers);
+		hash = engine.hash(PASSWORD).get();
+	}
+
+
+	@TearDown
+	public void tearDown() {
+		engine.shutdown();
+	}
+
+
+	@Benchmark
+	public boolean verify() throws InterruptedException, ExecutionException {
+		return engine.verify(PASSWORD, hash).get().isValid;
+	}
+
+
+	private static PasswordHasher parse(String hasher) {
+		int cost = Integer.parseInt(hasher.substring(hasher.indexOf('-') + 1));
+		return hasher.startsWith("scrypt") ? new ScryptPasswordHasher(cost, 8, 1) : new Pbkdf2PasswordHasher(cost);
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.s8.pkgs.people.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.s8.pkgs.people.S8People;
+
+
+/**
+ * {@link S8People} validation rules: legacy regexes against compiled check sets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+
+	@Param({ "short", "typical", "invalid", "adversarial" })
+	public String input;
+
+	private String password;
+
+	private String email;
+
+
+	@Setup
+	public void setup() {
+		switch(input) {
+		case "short":
+			password = "Abcdef1!";
+			email = "john.doe@example.com";
+			break;
+		case "typical":
+			password = "S3cure#Passw0rd";
+			email = "first.last@sub.domain.org";
+			break;
+		case "invalid":
+			password = "NoSpecial123";
+			email = "not-an-email";
+			break;
+		case "adversarial":
+		default:
+			/* no special char, scanned by every lookahead; backtracking on labels */
+			password = "a".repeat(4096) + "A1";
+			email = "a".repeat(4096) + "@" + "b.".repeat(256) + "toolong";
+			break;
+		}
+	}
+
+
+	@Benchmark
+	public boolean passwordRegex() {
+		return S8People.VALID_PASSWORD.matcher(password).matches();
+	}
+
+	@Benchmark
+	public boolean passwordChecks() {
+		return S8People.PASSWORD_CHECKS.isValid(password);
+	}
+
+	@Benchmark
+	public String passwordFailures() {
+		return S8People.PASSWORD_CHECKS.describeFailures(password, ", ");
+	}
+
+	@Benchmark
+	public boolean emailRegex() {
+		return S8People.VALID_EMAIL_ADDRESS.matcher(email).matches();
+	}
+
+	@Benchmark
+	public boolean emailChecks() {
+		return S8People.EMAIL_ADDRESS_CHECKS.isValid(email);
+	}
+
+}
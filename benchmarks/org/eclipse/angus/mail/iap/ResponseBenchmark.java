@@ -0,0 +1,71 @@
+package org.eclipse.angus.mail.iap;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * IMAP response parsing: tagged status lines and untagged FETCH responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBenchmark {
+
+
+	private static final String TAGGED = "A0042 OK [READ-WRITE] SELECT completed";
+
+	private static final String FETCH = "* 12 FETCH (UID 4827 FLAGS (\\Seen \\Answered) RFC822.SIZE 44827 "
+			+ "INTERNALDATE \"17-Jul-1996 02:44:25 -0700\" BODY[HEADER.FIELDS (SUBJECT)] {27}\r\nSubject: Hello there\r\n\r\n)";
+
+	private static final String LIST = "* LIST (\\HasNoChildren \\Sent) \"/\" \"Sent Messages\"";
+
+
+	@Benchmark
+	public void tagged(Blackhole blackhole) {
+		Response response = new Response(TAGGED);
+		blackhole.consume(response.isOK());
+		blackhole.consume(response.getTag());
+		blackhole.consume(response.getRest());
+	}
+
+	@Benchmark
+	public void fetch(Blackhole blackhole) {
+		Response response = new Response(FETCH);
+		blackhole.consume(response.readNumber());
+		blackhole.consume(response.readAtom());
+		response.skipSpaces();
+		response.readByte(); /* ( */
+		blackhole.consume(response.readAtom());
+		blackhole.consume(response.readLong());
+		blackhole.consume(response.readAtom());
+		blackhole.consume(response.readAtomStringList());
+		blackhole.consume(response.readAtom());
+		blackhole.consume(response.readLong());
+		blackhole.consume(response.readAtom());
+		blackhole.consume(response.readString());
+	}
+
+	@Benchmark
+	public void list(Blackhole blackhole) {
+		Response response = new Response(LIST);
+		blackhole.consume(response.readAtom());
+		blackhole.consume(response.readAtomStringList());
+		blackhole.consume(response.readString());
+		blackhole.consume(response.readAtomString());
+	}
+
+}
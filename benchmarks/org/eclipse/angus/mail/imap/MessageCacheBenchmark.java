@@ -0,0 +1,66 @@
+package org.eclipse.angus.mail.imap;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * {@link MessageCache} bookkeeping on large folders: growth, expunges and sequence
+ * number mapping (messages themselves are never materialized, no folder being open).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCacheBenchmark {
+
+
+	@Param({ "1000", "100000" })
+	public int size;
+
+	private MessageCache cache;
+
+
+	@Setup(Level.Invocation)
+	public void setup() {
+		cache = new MessageCache(size, false);
+	}
+
+
+	@Benchmark
+	public int addMessages() {
+		for(int i = 0; i < 100; i++) { cache.addMessages(10, cache.size() + 1); }
+		return cache.size();
+	}
+
+	@Benchmark
+	public int expungeFromMiddle() {
+		/* every expunge renumbers all following messages */
+		for(int i = 0; i < 100; i++) { cache.expungeMessage(size / 2); }
+		return cache.seqnumOf(size);
+	}
+
+	@Benchmark
+	public void seqnumLookups(Blackhole blackhole) {
+		cache.expungeMessage(1);
+		for(int msgnum = 1; msgnum <= size; msgnum += size / 100) {
+			blackhole.consume(cache.seqnumOf(msgnum));
+		}
+	}
+
+}
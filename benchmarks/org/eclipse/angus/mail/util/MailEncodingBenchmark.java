@@ -0,0 +1,123 @@
+package org.eclipse.angus.mail.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Transfer encodings (BASE64, quoted-printable) and {@link ASCIIUtility}, on mail-sized
+ * payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailEncodingBenchmark {
+
+
+	@Param({ "1024", "65536", "1048576" })
+	public int size;
+
+	private byte[] binary;
+
+	private byte[] text;
+
+	private byte[] base64;
+
+	private byte[] quotedPrintable;
+
+	private String asciiString;
+
+	private byte[] digits;
+
+	private final byte[] buffer = new byte[8192];
+
+	private ByteArrayOutputStream output;
+
+
+	@Setup
+	public void setup() throws IOException {
+		Random random = new Random(42);
+		binary = new byte[size];
+		random.nextBytes(binary);
+
+		/* mostly ASCII text, some 8-bit chars and long lines */
+		text = new byte[size];
+		for(int i = 0; i < size; i++) {
+			int r = random.nextInt(100);
+			text[i] = (byte) (r < 2 ? 0xE9 : r < 4 ? '\n' : r < 16 ? ' ' : 'a' + random.nextInt(26));
+		}
+
+		output = new ByteArrayOutputStream(size * 4);
+		base64 = encode(binary, new BASE64EncoderStream(output));
+		quotedPrintable = encode(text, new QPEncoderStream(output));
+		asciiString = ASCIIUtility.toString(text, 0, Math.min(size, 4096));
+		digits = ASCIIUtility.getBytes("1234567890");
+	}
+
+
+	private byte[] encode(byte[] bytes, OutputStream encoder) throws IOException {
+		output.reset();
+		encoder.write(bytes);
+		encoder.close(); /* pads and flushes, closing the byte array output is a no-op */
+		return output.toByteArray();
+	}
+
+
+	private long decode(InputStream decoder) throws IOException {
+		long n = 0;
+		int r;
+		while((r = decoder.read(buffer, 0, buffer.length)) > 0) { n += r; }
+		return n;
+	}
+
+
+	@Benchmark
+	public byte[] base64Encode() throws IOException {
+		return encode(binary, new BASE64EncoderStream(output));
+	}
+
+	@Benchmark
+	public long base64Decode() throws IOException {
+		return decode(new BASE64DecoderStream(new ByteArrayInputStream(base64)));
+	}
+
+	@Benchmark
+	public byte[] quotedPrintableEncode() throws IOException {
+		return encode(text, new QPEncoderStream(output));
+	}
+
+	@Benchmark
+	public long quotedPrintableDecode() throws IOException {
+		return decode(new QPDecoderStream(new ByteArrayInputStream(quotedPrintable)));
+	}
+
+	@Benchmark
+	public void asciiUtility(Blackhole blackhole) {
+		blackhole.consume(ASCIIUtility.getBytes(asciiString));
+		blackhole.consume(ASCIIUtility.toString(text, 0, Math.min(size, 4096)));
+		blackhole.consume(ASCIIUtility.parseInt(digits, 0, 9));
+		blackhole.consume(ASCIIUtility.parseLong(digits, 0, 10));
+	}
+
+}
@@ -1,5 +1,44 @@
+const { bundle } = require("./web-bundler.js");
+
+
+/* web sources: one bundle per web object type, content-hashed and precompressed (manifest read by WebSources) */
+const WEB = bundle({
+	source: "web-sources/S8-pkgs-people",
+	root: "/S8-pkgs-people",
+	entries: [
+		"InboardBox.js",
+		"InboardScreen.js",
+		"InboardMessage.js",
+		"DynamicMeshBackground.js",
+		"menu/P8MenuIcon.js",
+		"forms/LogInForm.js",
+		"forms/SignUpForm.js",
+		"forms/ValidateForm.js"
+	],
+	assets: [".css", ".svg", ".png"],
+	output: "dist",
+	manifest: "sources/com/s8/pkgs/people/WebSources.properties"
+});
+
+/* vendored Angus Mail (org/eclipse/angus/mail): SMTP transport, pipelining, connection pool and batch sends */
+const ANGUS_MAIL = build({
+	module: "org.eclipse.angus.mail",
+	sources: ".",
+	packages: ["org.eclipse.angus.mail"],
+	dependencies: ["jakarta.mail-api"],
+	target: "S8-angus-mail"
+});
+
 const ROOT = build({
 	module: "com.s8.pkgs.people",
-	dependencies: ["S8-api"],
+	dependencies: ["S8-api", "jakarta.mail-api", "S8-angus-mail"],
 	target: "S8-pkgs-people"
-});
\ No newline at end of file
+});
+
+/* JMH benchmarks (run com.s8.pkgs.people.benchmarks.Benchmarks, JSON results in benchmarks/results),
+ * mail ones measuring the vendored Angus Mail sources, not the published artifact */
+const BENCHMARKS = build({
+	sources: "benchmarks",
+	dependencies: ["S8-pkgs-people", "S8-api", "jmh-core", "jmh-generator-annprocess", "S8-angus-mail", "jakarta.mail-api"],
+	target: "S8-pkgs-people-benchmarks"
+});
@@ -0,0 +1,66 @@
+package com.s8.pkgs.people.demos;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.s8.pkgs.people.security.BreachedPasswords;
+
+
+/**
+ * Builds and queries breached passwords indexes.
+ *
+ * Usage:
+ * <ul>
+ * <li><code>BreachedPasswordsTool convert [dump.txt] [index.bin] [min count]</code>: convert a
+ * SHA-1 dump sorted by hash (<code>HASH:COUNT</code> lines)</li>
+ * <li><code>BreachedPasswordsTool check [index.bin] [password]...</code>: look up passwords,
+ * then time random lookups</li>
+ * </ul>
+ */
+public class BreachedPasswordsTool {
+
+
+	private static final int N_TIMED_LOOKUPS = 1000000;
+
+
+	public static void main(String[] args) throws Exception {
+		if(args.length >= 3 && args[0].equals("convert")) {
+			long t0 = System.nanoTime();
+			int minCount = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+			long size;
+			try(BufferedReader reader = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.US_ASCII)) {
+				size = BreachedPasswords.convert(reader, Paths.get(args[2]), minCount);
+			}
+			System.out.println(String.format("%d hashes written in %.1f s (%d MB)",
+					size, (System.nanoTime() - t0) * 1e-9, Files.size(Paths.get(args[2])) >> 20));
+		}
+		else if(args.length >= 2 && args[0].equals("check")) {
+			Path path = Paths.get(args[1]);
+			BreachedPasswords index = BreachedPasswords.open(path);
+			System.out.println(index.size + " hashes mapped from " + path);
+			for(int i = 2; i < args.length; i++) {
+				System.out.println(args[i] + ": " + (index.isBreached(args[i]) ? "BREACHED" : "not found"));
+			}
+
+			byte[] hash = new byte[20];
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			long t0 = System.nanoTime();
+			int nFound = 0;
+			for(int i = 0; i < N_TIMED_LOOKUPS; i++) {
+				random.nextBytes(hash);
+				if(index.contains(hash)) { nFound++; }
+			}
+			System.out.println(String.format("random lookups: %.3f us/lookup (%d false positives)",
+					(System.nanoTime() - t0) * 1e-3 / N_TIMED_LOOKUPS, nFound));
+		}
+		else {
+			System.out.println("Usage: BreachedPasswordsTool convert [dump.txt] [index.bin] [min count]");
+			System.out.println("       BreachedPasswordsTool check [index.bin] [password]...");
+		}
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.s8.pkgs.people.demos;
+
+import com.s8.pkgs.people.S8People;
+
+/**
+ * {@link S8People#PASSWORD_CHECKS} must accept exactly what {@link S8People#VALID_PASSWORD}
+ * matches, lengths being counted in code points.
+ */
+public class TestPasswordChecks {
+
+	public static void main(String[] args) {
+
+		String[] passwords = new String[] {
+				"Delphine12!", "Aa1!", "Aa1!aaaa", "Aa1!aaa",
+				"Aa1!\uD83D\uDE00\uD83D\uDE00", "Aa1!\uD83D\uDE00\uD83D\uDE00\uD83D\uDE00\uD83D\uDE00",
+				"Aa1!aaaa\n", "Delphine12"
+		};
+
+		boolean isConsistent = true;
+		for(String password : passwords) {
+			boolean regex = S8People.VALID_PASSWORD.matcher(password).matches();
+			boolean checks = S8People.PASSWORD_CHECKS.isValid(password);
+			System.out.println(password.replace("\n", "\\n") + ": regex " + regex + ", checks " + checks);
+			if(regex != checks) { isConsistent = false; }
+		}
+
+		if(!isConsistent) {
+			throw new AssertionError("Password checks disagree with regex");
+		}
+	}
+
+}
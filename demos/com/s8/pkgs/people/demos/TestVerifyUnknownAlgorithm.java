@@ -0,0 +1,37 @@
+package com.s8.pkgs.people.demos;
+
+import com.s8.pkgs.people.security.PasswordHashingEngine;
+import com.s8.pkgs.people.security.PasswordHashingEngine.Verification;
+import com.s8.pkgs.people.security.Pbkdf2PasswordHasher;
+import com.s8.pkgs.people.security.ScryptPasswordHasher;
+
+/**
+ * A stored hash of an algorithm the engine does not know must not verify, least of
+ * all against itself (it would otherwise be compared as a legacy plain password).
+ */
+public class TestVerifyUnknownAlgorithm {
+
+	public static void main(String[] args) throws Exception {
+
+		PasswordHashingEngine scrypt = new PasswordHashingEngine(new ScryptPasswordHasher(10, 8, 1), 1, 4);
+		PasswordHashingEngine pbkdf2 = new PasswordHashingEngine(new Pbkdf2PasswordHasher(1000), 1, 4);
+
+		String stored = scrypt.hash("Delphine12!").get();
+
+		Verification pastedHash = pbkdf2.verify(stored, stored).get();
+		Verification password = pbkdf2.verify("Delphine12!", stored).get();
+		Verification legacy = pbkdf2.verify("Delphine12!", "Delphine12!").get();
+
+		System.out.println("pasted hash: " + pastedHash.isValid + ", rehash: " + pastedHash.rehash);
+		System.out.println("password: " + password.isValid);
+		System.out.println("legacy plain password: " + legacy.isValid);
+
+		scrypt.shutdown();
+		pbkdf2.shutdown();
+
+		if(pastedHash.isValid || pastedHash.rehash != null || password.isValid || !legacy.isValid) {
+			throw new AssertionError("Unknown algorithm hash must not verify");
+		}
+	}
+
+}
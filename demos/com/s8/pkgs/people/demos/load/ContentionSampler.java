@@ -0,0 +1,127 @@
+package com.s8.pkgs.people.demos.load;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Samples stacks of all platform threads at a fixed period, and counts, per code
+ * location, threads found waiting for a lock: blocked on a monitor
+ * (<code>synchronized</code>) or parked acquiring a <code>java.util.concurrent</code>
+ * lock. Locations are the first frame in <code>com.s8</code> code (falling back to top
+ * frame), waits within the load test harness itself being ignored. Virtual threads are
+ * not visible to this sampler.
+ */
+public class ContentionSampler implements Runnable {
+
+
+	private static final String HARNESS_PACKAGE = ContentionSampler.class.getPackageName() + ".";
+
+
+	public final long period;
+
+	private final Map<String, Long> counts = new HashMap<>();
+
+	private long nSamples = 0;
+
+	private volatile boolean isRunning = true;
+
+	private Thread thread;
+
+
+
+	/**
+	 *
+	 * @param period in milliseconds
+	 */
+	public ContentionSampler(long period) {
+		super();
+		this.period = period;
+	}
+
+
+	public void start() {
+		thread = new Thread(this, "contention-sampler");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+
+	public void stop() throws InterruptedException {
+		isRunning = false;
+		thread.join();
+	}
+
+
+	@Override
+	public void run() {
+		while(isRunning) {
+			for(Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+				StackTraceElement[] stack = entry.getValue();
+				String location;
+				if(stack.length > 0 && isWaitingForLock(entry.getKey().getState(), stack) && (location = locate(stack)) != null) {
+					synchronized (counts) { counts.merge(location, 1L, Long::sum); }
+				}
+			}
+			synchronized (counts) { nSamples++; }
+			try {
+				Thread.sleep(period);
+			}
+			catch (InterruptedException exception) {
+				return;
+			}
+		}
+	}
+
+
+	private static boolean isWaitingForLock(Thread.State state, StackTraceElement[] stack) {
+		if(state == Thread.State.BLOCKED) { return true; }
+		if(state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING) {
+			/* parked in a lock acquisition, not awaiting a condition or a task */
+			for(int i = 0; i < Math.min(stack.length, 8); i++) {
+				StackTraceElement frame = stack[i];
+				if(frame.getClassName().startsWith("java.util.concurrent.locks.")
+						&& frame.getMethodName().startsWith("acquire")) { return true; }
+				if(frame.getMethodName().equals("await")) { return false; }
+			}
+		}
+		return false;
+	}
+
+
+	/** harness waits (e.g. its own backpressure) are not reported */
+	private static String locate(StackTraceElement[] stack) {
+		for(StackTraceElement frame : stack) {
+			String className = frame.getClassName();
+			if(className.startsWith(HARNESS_PACKAGE)) { return null; }
+			if(className.startsWith("com.s8.")) { return frame.toString(); }
+		}
+		return stack[0].toString();
+	}
+
+
+	/**
+	 *
+	 * @param n
+	 * @return top <code>n</code> locations, formatted with the share of samples a thread
+	 * was found waiting there
+	 */
+	public List<String> getHotspots(int n) {
+		List<Map.Entry<String, Long>> entries;
+		long nSamples;
+		synchronized (counts) {
+			entries = new ArrayList<>(counts.entrySet());
+			nSamples = Math.max(1, this.nSamples);
+		}
+		entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+		List<String> hotspots = new ArrayList<>();
+		for(int i = 0; i < Math.min(n, entries.size()); i++) {
+			Map.Entry<String, Long> entry = entries.get(i);
+			hotspots.add(String.format("%8.2f waiting threads (avg)  %s", (double) entry.getValue() / nSamples, entry.getKey()));
+		}
+		return hotspots;
+	}
+
+}
@@ -0,0 +1,377 @@
+package com.s8.pkgs.people.demos.load;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.s8.api.flow.S8AsyncFlow;
+import com.s8.api.flow.S8User;
+import com.s8.api.web.S8WebFront;
+import com.s8.pkgs.people.Inboard;
+import com.s8.pkgs.people.S8People;
+import com.s8.pkgs.people.demos.load.StubServer.Latency;
+import com.s8.pkgs.people.metrics.Counter;
+import com.s8.pkgs.people.metrics.Histogram;
+import com.s8.pkgs.people.metrics.MetricsRegistry;
+import com.s8.pkgs.people.security.PasswordHashingEngine;
+import com.s8.pkgs.people.security.Pbkdf2PasswordHasher;
+
+
+/**
+ * Drives {@link com.s8.pkgs.people.process.LoginManager} and
+ * {@link com.s8.pkgs.people.process.SignupManager} with thousands of concurrent
+ * simulated fronts, against stub fronts and flows ({@link StubFront},
+ * {@link StubServer}), then reports throughput, latency percentiles, contention
+ * hotspots and inboard metrics.
+ *
+ * Each simulated session runs on its own virtual thread (a thread per concurrent front
+ * if virtual threads are not available) and awaits outcomes as a browser would.
+ *
+ * Usage: <code>LoadTest [key=value]...</code>, keys being
+ * <code>fronts</code> (concurrent fronts, default 1000),
+ * <code>sessions</code> (total, default 20000),
+ * <code>users</code> (existing users, default 10000),
+ * <code>getRow</code> and <code>mail</code> (latency <code>min:mean</code> in ms, default
+ * 1:3 and 20:50), <code>failures</code> (request failure rate, default 0),
+ * <code>hashing</code> (PBKDF2 iterations, default 1000: production cost would only
+ * measure hashing workers), <code>mix</code> (scenario weights, default
+ * <code>login:60,badLogin:10,token:10,signup:20</code>), <code>timeout</code> (per step,
+ * in seconds, default 30).
+ */
+public class LoadTest {
+
+
+	public enum Scenario {
+
+		/** valid credentials */
+		LOGIN("login"),
+
+		/** wrong password */
+		BAD_LOGIN("badLogin"),
+
+		/** remember-me token */
+		TOKEN_LOGIN("token"),
+
+		/** username check, submit, then validation code */
+		SIGNUP("signup");
+
+		public final String key;
+
+		private Scenario(String key) { this.key = key; }
+	}
+
+
+	private static class Outcomes {
+
+		private final Histogram latency;
+
+		private final Counter expected;
+
+		private final Counter unexpected;
+
+		private final Counter errors;
+
+		private Outcomes(MetricsRegistry registry, Scenario scenario) {
+			super();
+			String name = "load." + scenario.key;
+			this.latency = registry.histogram(name + ".latency");
+			this.expected = registry.counter(name + ".expected");
+			this.unexpected = registry.counter(name + ".unexpected");
+			this.errors = registry.counter(name + ".errors");
+		}
+	}
+
+
+	/**
+	 * Inboard reporting outcomes to the simulated fronts.
+	 */
+	private static class LoadInboard extends Inboard {
+
+		private final StubServer server;
+
+		private final PasswordHashingEngine engine;
+
+		private LoadInboard(StubServer server, PasswordHashingEngine engine) {
+			super(S8People.USERS_TABLE_ID, null, "Load test");
+			this.server = server;
+			this.engine = engine;
+		}
+
+		@Override
+		public PasswordHashingEngine getPasswordHashingEngine() {
+			return engine;
+		}
+
+		@Override
+		public void onLogInSucceed(S8WebFront front, S8AsyncFlow flow, S8User user) {
+			StubFront.of(front).succeeded.complete(user);
+		}
+
+		@Override
+		public void onSignUpValidated(S8WebFront front, S8AsyncFlow flow, String username, String passwordHash) {
+			server.putUser(username, passwordHash);
+			StubFront.of(front).succeeded.complete(username);
+		}
+	}
+
+
+	private static final String PASSWORD = "Load#Test1234";
+
+
+	public final int nFronts;
+
+	public final int nSessions;
+
+	public final int nUsers;
+
+	public final long timeout;
+
+	private final Map<Scenario, Integer> weights;
+
+	private final StubServer server;
+
+	private final PasswordHashingEngine engine;
+
+	private final LoadInboard inboard;
+
+	private final MetricsRegistry registry = new MetricsRegistry();
+
+	private final Map<Scenario, Outcomes> outcomes = new EnumMap<>(Scenario.class);
+
+
+
+	/**
+	 *
+	 * @param options
+	 */
+	public LoadTest(Map<String, String> options) {
+		super();
+		nFronts = Integer.parseInt(options.getOrDefault("fronts", "1000"));
+		nSessions = Integer.parseInt(options.getOrDefault("sessions", "20000"));
+		nUsers = Integer.parseInt(options.getOrDefault("users", "10000"));
+		timeout = Long.parseLong(options.getOrDefault("timeout", "30"));
+
+		weights = new EnumMap<>(Scenario.class);
+		for(String weight : options.getOrDefault("mix", "login:60,badLogin:10,token:10,signup:20").split(",")) {
+			String[] pair = weight.split(":");
+			for(Scenario scenario : Scenario.values()) {
+				if(scenario.key.equals(pair[0].trim())) { weights.put(scenario, Integer.parseInt(pair[1].trim())); }
+			}
+		}
+
+		server = new StubServer(
+				parseLatency(options.getOrDefault("getRow", "1:3")),
+				parseLatency(options.getOrDefault("mail", "20:50")),
+				Double.parseDouble(options.getOrDefault("failures", "0")),
+				StubServer.proxyRows());
+
+		int nWorkers = Runtime.getRuntime().availableProcessors();
+		engine = new PasswordHashingEngine(new Pbkdf2PasswordHasher(Integer.parseInt(options.getOrDefault("hashing", "1000"))),
+				nWorkers, 4 * nFronts);
+
+		inboard = new LoadInboard(server, engine);
+		/* all simulated clients share very few usernames: throttling would dominate */
+		inboard.getLoginThrottle().setThresholds(Integer.MAX_VALUE, Integer.MAX_VALUE, 60 * 1000);
+
+		for(Scenario scenario : Scenario.values()) { outcomes.put(scenario, new Outcomes(registry, scenario)); }
+	}
+
+
+	private static Latency parseLatency(String value) {
+		String[] bounds = value.split(":");
+		double min = Double.parseDouble(bounds[0]);
+		return new Latency(min, bounds.length > 1 ? Double.parseDouble(bounds[1]) : min);
+	}
+
+
+	private static String username(int index) {
+		return "user-" + index + "@load.test";
+	}
+
+
+	/**
+	 *
+	 * @throws Exception
+	 */
+	public void run() throws Exception {
+		String hash = engine.hash(PASSWORD).get();
+		for(int i = 0; i < nUsers; i++) { server.putUser(username(i), hash); }
+
+		int totalWeight = 0;
+		for(int weight : weights.values()) { totalWeight += weight; }
+
+		ExecutorService executor = newExecutor(nFronts);
+		boolean isVirtual = !(executor instanceof ThreadPoolExecutor);
+		System.out.println("sessions: " + nSessions + ", concurrent fronts: " + nFronts + ", users: " + nUsers
+				+ ", " + (isVirtual ? "virtual threads" : "platform threads (virtual threads not available)"));
+
+		ContentionSampler sampler = new ContentionSampler(10);
+		sampler.start();
+		Semaphore inFlight = new Semaphore(nFronts);
+		long t0 = System.nanoTime();
+
+		for(int i = 0; i < nSessions; i++) {
+			Scenario scenario = pick(totalWeight);
+			int index = i;
+			inFlight.acquire();
+			executor.execute(() -> {
+				try {
+					runSession(scenario, index);
+				}
+				finally {
+					inFlight.release();
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.HOURS);
+		long elapsed = System.nanoTime() - t0;
+		sampler.stop();
+
+		report(elapsed, sampler);
+		server.shutdown();
+		engine.shutdown();
+	}
+
+
+	private Scenario pick(int totalWeight) {
+		int r = ThreadLocalRandom.current().nextInt(Math.max(1, totalWeight));
+		for(Map.Entry<Scenario, Integer> entry : weights.entrySet()) {
+			if((r -= entry.getValue()) < 0) { return entry.getKey(); }
+		}
+		return Scenario.LOGIN;
+	}
+
+
+	/**
+	 * One simulated front, from first display to outcome.
+	 */
+	private void runSession(Scenario scenario, int index) {
+		Outcomes outcome = outcomes.get(scenario);
+		StubFront client = new StubFront();
+		long t0 = System.nanoTime();
+		try {
+			boolean isExpected;
+			switch(scenario) {
+			case LOGIN: isExpected = logIn(client, username(index % nUsers), PASSWORD); break;
+			case BAD_LOGIN: isExpected = !logIn(client, username(index % nUsers), "Wrong#Pass123"); break;
+			case TOKEN_LOGIN: isExpected = logInWithToken(client, username(index % nUsers)); break;
+			case SIGNUP: default: isExpected = signUp(client, "signup-" + index + "@load.test"); break;
+			}
+			outcome.latency.recordSince(t0);
+			(isExpected ? outcome.expected : outcome.unexpected).increment();
+		}
+		catch(TimeoutException exception) {
+			outcome.errors.increment();
+		}
+		catch(Exception exception) {
+			outcome.errors.increment();
+			exception.printStackTrace();
+		}
+		finally {
+			inboard.closeSession(client.front);
+		}
+	}
+
+
+	private boolean logIn(StubFront client, String username, String password) throws Exception {
+		S8AsyncFlow flow = server.newFlow(client, username);
+		inboard.getLoginModule().start(client.front);
+		CompletableFuture<Object> message = client.expect("message");
+		client.call("on-trying-login", flow, (Object) new String[] { username, password, "false" });
+		CompletableFuture.anyOf(client.succeeded, message).get(timeout, TimeUnit.SECONDS);
+		return client.succeeded.isDone();
+	}
+
+
+	private boolean logInWithToken(StubFront client, String username) throws Exception {
+		/* a returning client, holding a token issued on a previous visit */
+		String token = inboard.getSessionTokens().issue(username);
+		S8AsyncFlow flow = server.newFlow(client, username);
+		inboard.getLoginModule().start(client.front);
+		CompletableFuture<Object> forgotten = client.expect("rememberMeToken");
+		client.call("on-trying-token-login", flow, token);
+		CompletableFuture.anyOf(client.succeeded, forgotten).get(timeout, TimeUnit.SECONDS);
+		return client.succeeded.isDone();
+	}
+
+
+	private boolean signUp(StubFront client, String username) throws Exception {
+		S8AsyncFlow flow = server.newFlow(client, username);
+		inboard.getSignupModule().start(client.front);
+
+		CompletableFuture<Object> feedback = client.expect("usernameFeedbackMessage");
+		client.call("on-username-change", flow, username);
+		feedback.get(timeout, TimeUnit.SECONDS);
+
+		client.call("on-signup", flow, (Object) new String[] { username, PASSWORD, PASSWORD });
+		String code = client.mailedCode.get(timeout, TimeUnit.SECONDS);
+
+		CompletableFuture<Object> message = client.expect("message");
+		client.call("on-trying-validate", flow, code);
+		CompletableFuture.anyOf(client.succeeded, message).get(timeout, TimeUnit.SECONDS);
+		return client.succeeded.isDone();
+	}
+
+
+	private void report(long elapsed, ContentionSampler sampler) {
+		double seconds = elapsed / 1e9;
+		long total = 0;
+		System.out.println(String.format("%n%-10s %8s %8s %8s %8s %10s %9s %9s %9s %9s %9s",
+				"scenario", "count", "expected", "unexpect", "errors", "per sec", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms"));
+		for(Scenario scenario : Scenario.values()) {
+			Outcomes outcome = outcomes.get(scenario);
+			Histogram.Snapshot latency = outcome.latency.snapshot();
+			long count = outcome.expected.get() + outcome.unexpected.get() + outcome.errors.get();
+			total += count;
+			System.out.println(String.format("%-10s %8d %8d %8d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f",
+					scenario.key, count, outcome.expected.get(), outcome.unexpected.get(), outcome.errors.get(),
+					count / seconds, latency.p50 * 1e-6, latency.p90 * 1e-6, latency.p99 * 1e-6, latency.p999 * 1e-6, latency.max * 1e-6));
+		}
+		System.out.println(String.format("%n%d sessions in %.2f s: %.1f sessions/s", total, seconds, total / seconds));
+		System.out.println(String.format("stub server: %d row reads, %d mails, %d flow sends, %d injected failures",
+				server.nGetRows.sum(), server.nMails.sum(), server.nSends.sum(), server.nFailures.sum()));
+
+		System.out.println("\ncontention hotspots (platform threads):");
+		for(String hotspot : sampler.getHotspots(10)) { System.out.println(hotspot); }
+
+		System.out.println("\ninboard metrics (latencies in ns):");
+		System.out.print(inboard.getMetrics().snapshot().toText());
+	}
+
+
+	/**
+	 * Virtual threads are looked up reflectively, so that this runs on older runtimes too.
+	 *
+	 * @param nThreads nb of platform threads if virtual threads are not available
+	 * @return executor
+	 */
+	private static ExecutorService newExecutor(int nThreads) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException | RuntimeException exception) {
+			return Executors.newFixedThreadPool(nThreads);
+		}
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for(String arg : args) {
+			int equal = arg.indexOf('=');
+			if(equal > 0) { options.put(arg.substring(0, equal), arg.substring(equal + 1)); }
+		}
+		new LoadTest(options).run();
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,167 @@
+package com.s8.pkgs.people.demos.load;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.s8.api.flow.S8AsyncFlow;
+import com.s8.api.web.S8WebFront;
+
+
+/**
+ * Simulated web front, standing for one browser tab.
+ *
+ * The front is a dynamic proxy: any call returning an interface returns another stub
+ * bound to this front (vertices, inbound, outbound...), any other call returns a
+ * default value. Inbound methods registered by forms (<code>set...Method(name,
+ * function)</code>) are recorded, so that the simulated client can call them, and
+ * outbound field writes (<code>set...Field(name, value)</code>) can be awaited. Names
+ * are not scoped by web object: last registration wins.
+ */
+public class StubFront implements InvocationHandler {
+
+
+	/**
+	 *
+	 * @param front
+	 * @return the stub behind <code>front</code>, <code>null</code> if not a stub
+	 */
+	public static StubFront of(S8WebFront front) {
+		if(front != null && Proxy.isProxyClass(front.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(front);
+			if(handler instanceof StubFront) { return (StubFront) handler; }
+		}
+		return null;
+	}
+
+
+	public final S8WebFront front;
+
+	/** completed when inboard reports a successful log-in (or sign-up) on this front */
+	public final CompletableFuture<Object> succeeded = new CompletableFuture<>();
+
+	/** completed with the first validation code mailed from this front */
+	public final CompletableFuture<String> mailedCode = new CompletableFuture<>();
+
+
+	private final Map<String, Object> functions = new ConcurrentHashMap<>();
+
+	private final Map<String, CompletableFuture<Object>> expectations = new ConcurrentHashMap<>();
+
+	private final Map<Class<?>, Object> stubs = new ConcurrentHashMap<>();
+
+
+
+	public StubFront() {
+		super();
+		this.front = (S8WebFront) stub(S8WebFront.class);
+	}
+
+
+	/**
+	 * Must be called before the action triggering the write.
+	 *
+	 * @param field
+	 * @return future completing with next non-null value written in <code>field</code>
+	 */
+	public CompletableFuture<Object> expect(String field) {
+		CompletableFuture<Object> expectation = new CompletableFuture<>();
+		expectations.put(field, expectation);
+		return expectation;
+	}
+
+
+	/**
+	 * Call an inbound method, as a client event would.
+	 *
+	 * @param name inbound method name (e.g. <code>on-trying-login</code>)
+	 * @param flow
+	 * @param arguments
+	 * @throws IllegalStateException if no such method has been registered
+	 */
+	public void call(String name, S8AsyncFlow flow, Object... arguments) {
+		Object function = functions.get(name);
+		if(function == null) { throw new IllegalStateException("No inbound method: " + name); }
+		Object[] parameters = new Object[arguments.length + 1];
+		parameters[0] = flow;
+		System.arraycopy(arguments, 0, parameters, 1, arguments.length);
+
+		/* lambda classes are not accessible: call through the functional interface */
+		for(Class<?> type : function.getClass().getInterfaces()) {
+			for(Method method : type.getMethods()) {
+				if(!method.isDefault() && method.getParameterCount() == parameters.length
+						&& method.getParameterTypes()[0].isInstance(flow)) {
+					try {
+						method.invoke(function, parameters);
+						return;
+					}
+					catch (IllegalAccessException exception) {
+						throw new IllegalStateException(exception);
+					}
+					catch (InvocationTargetException exception) {
+						Throwable cause = exception.getCause();
+						if(cause instanceof RuntimeException) { throw (RuntimeException) cause; }
+						throw new IllegalStateException(cause);
+					}
+				}
+			}
+		}
+		throw new IllegalStateException("Cannot call " + name + " with " + arguments.length + " argument(s)");
+	}
+
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+		String name = method.getName();
+		switch(name) {
+		case "equals": if(arguments != null && arguments.length == 1) { return proxy == arguments[0]; } break;
+		case "hashCode": if(arguments == null) { return System.identityHashCode(proxy); } break;
+		case "toString": if(arguments == null) { return "StubFront@" + Integer.toHexString(System.identityHashCode(this)); } break;
+		}
+
+		if(arguments != null && arguments.length == 2 && arguments[0] instanceof String && name.startsWith("set")) {
+			if(name.endsWith("Method")) {
+				functions.put((String) arguments[0], arguments[1]);
+				return null;
+			}
+			if(name.endsWith("Field")) {
+				if(arguments[1] != null) {
+					CompletableFuture<Object> expectation = expectations.remove(arguments[0]);
+					if(expectation != null) { expectation.complete(arguments[1]); }
+				}
+				return null;
+			}
+		}
+
+		Class<?> type = method.getReturnType();
+		return type.isInterface() ? stubs.computeIfAbsent(type, this::stub) : defaultValue(type);
+	}
+
+
+	private Object stub(Class<?> type) {
+		return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, this);
+	}
+
+
+	/**
+	 *
+	 * @param type
+	 * @return <code>null</code>, or zero for primitive types
+	 */
+	static Object defaultValue(Class<?> type) {
+		if(!type.isPrimitive() || type == void.class) { return null; }
+		if(type == boolean.class) { return false; }
+		if(type == char.class) { return (char) 0; }
+		if(type == byte.class) { return (byte) 0; }
+		if(type == short.class) { return (short) 0; }
+		if(type == int.class) { return 0; }
+		if(type == long.class) { return 0L; }
+		if(type == float.class) { return 0f; }
+		return 0.0;
+	}
+
+}
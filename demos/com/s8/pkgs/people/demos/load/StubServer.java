@@ -0,0 +1,285 @@
+package com.s8.pkgs.people.demos.load;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.s8.api.flow.S8AsyncFlow;
+import com.s8.api.flow.S8User;
+import com.s8.api.flow.mail.S8MailBuilder;
+import com.s8.api.flow.mail.SendMailS8Request;
+import com.s8.api.flow.table.objects.RowS8Object;
+import com.s8.api.flow.table.requests.GetRowS8Request;
+
+
+/**
+ * Simulated S8 server side: an in-memory users table and a mail server, both answering
+ * asynchronously after a configurable latency, through stub {@link S8AsyncFlow}.
+ */
+public class StubServer {
+
+
+	/**
+	 * Minimum plus exponentially distributed extra time.
+	 */
+	public static class Latency {
+
+		/** in milliseconds */
+		public final double min;
+
+		/** in milliseconds */
+		public final double mean;
+
+		/**
+		 *
+		 * @param min in milliseconds
+		 * @param mean in milliseconds (at least min)
+		 */
+		public Latency(double min, double mean) {
+			super();
+			this.min = min;
+			this.mean = Math.max(min, mean);
+		}
+
+		/**
+		 *
+		 * @return a latency, in microseconds
+		 */
+		public long sample() {
+			double extra = -(mean - min) * Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+			return (long) ((min + extra) * 1000);
+		}
+	}
+
+
+	/**
+	 * Builds users table rows.
+	 */
+	public interface RowFactory {
+
+		/**
+		 *
+		 * @param username
+		 * @param passwordHash
+		 * @return a row, cast to {@link S8User} by log-in
+		 */
+		public RowS8Object create(String username, String passwordHash);
+	}
+
+
+	/**
+	 * Rows as dynamic proxies, only possible if rows are interfaces of the API.
+	 *
+	 * @return factory
+	 * @throws UnsupportedOperationException if not possible: a factory must then be provided
+	 */
+	public static RowFactory proxyRows() {
+		if(!RowS8Object.class.isInterface()) {
+			throw new UnsupportedOperationException("RowS8Object is not an interface: provide a RowFactory");
+		}
+		return (username, passwordHash) -> (RowS8Object) Proxy.newProxyInstance(StubServer.class.getClassLoader(),
+				new Class<?>[] { RowS8Object.class, S8User.class }, (proxy, method, arguments) -> {
+					switch(method.getName()) {
+					case "getPassword": return passwordHash;
+					case "equals": return proxy == arguments[0];
+					case "hashCode": return System.identityHashCode(proxy);
+					case "toString": return username;
+					default: return StubFront.defaultValue(method.getReturnType());
+					}
+				});
+	}
+
+
+	private static final Pattern CODE = Pattern.compile("\\b[0-9]{6}\\b");
+
+
+	public final Latency getRowLatency;
+
+	public final Latency sendEMailLatency;
+
+	/** probability of a request failing */
+	public final double failureRate;
+
+	public final RowFactory rows;
+
+	private final Map<String, RowS8Object> users = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService scheduler;
+
+
+	public final LongAdder nGetRows = new LongAdder();
+
+	public final LongAdder nMails = new LongAdder();
+
+	public final LongAdder nSends = new LongAdder();
+
+	public final LongAdder nFailures = new LongAdder();
+
+
+
+	/**
+	 *
+	 * @param getRowLatency
+	 * @param sendEMailLatency
+	 * @param failureRate
+	 * @param rows
+	 */
+	public StubServer(Latency getRowLatency, Latency sendEMailLatency, double failureRate, RowFactory rows) {
+		super();
+		this.getRowLatency = getRowLatency;
+		this.sendEMailLatency = sendEMailLatency;
+		this.failureRate = failureRate;
+		this.rows = rows;
+		AtomicInteger index = new AtomicInteger();
+		this.scheduler = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2), runnable -> {
+			Thread thread = new Thread(runnable, "stub-server-" + index.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @param passwordHash
+	 */
+	public void putUser(String username, String passwordHash) {
+		users.put(username, rows.create(username, passwordHash));
+	}
+
+
+	/**
+	 *
+	 * @return nb of users in table
+	 */
+	public int getUserCount() {
+		return users.size();
+	}
+
+
+	/**
+	 * Row requests are answered for <code>key</code>: the simulated client knows which
+	 * username it is working on, while request internals are not part of the API.
+	 *
+	 * @param front front the flow belongs to (receiving mails sent to its user)
+	 * @param key username looked up by row requests of this flow
+	 * @return flow
+	 */
+	public S8AsyncFlow newFlow(StubFront front, String key) {
+		return (S8AsyncFlow) Proxy.newProxyInstance(S8AsyncFlow.class.getClassLoader(),
+				new Class<?>[] { S8AsyncFlow.class }, new Flow(front, key));
+	}
+
+
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+
+
+	private boolean isFailing() {
+		return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+	}
+
+
+	/** exceptions of callbacks would otherwise be silently held by scheduled futures */
+	private void schedule(Runnable callback, Latency latency) {
+		scheduler.schedule(() -> {
+			try {
+				callback.run();
+			}
+			catch(RuntimeException exception) {
+				exception.printStackTrace();
+			}
+		}, latency.sample(), TimeUnit.MICROSECONDS);
+	}
+
+
+	private class Flow implements InvocationHandler {
+
+		private final StubFront front;
+
+		private final String key;
+
+		private Flow(StubFront front, String key) {
+			super();
+			this.front = front;
+			this.key = key;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] arguments) throws Throwable {
+			Object argument = arguments != null && arguments.length == 1 ? arguments[0] : null;
+			if(argument instanceof GetRowS8Request) {
+				getRow((GetRowS8Request) argument);
+				return null;
+			}
+			if(argument instanceof SendMailS8Request) {
+				sendEMail((SendMailS8Request) argument);
+				return null;
+			}
+			switch(method.getName()) {
+			case "send": nSends.increment(); return null;
+			case "equals": return proxy == argument;
+			case "hashCode": return System.identityHashCode(proxy);
+			case "toString": return "Flow(" + key + ")";
+			default: return StubFront.defaultValue(method.getReturnType());
+			}
+		}
+
+		private void getRow(GetRowS8Request request) {
+			nGetRows.increment();
+			schedule(() -> {
+				if(isFailing()) {
+					nFailures.increment();
+					request.onFailed(new IOException("Simulated users table failure"));
+				}
+				else {
+					request.onSucceed(GetRowS8Request.Status.OK, users.get(key));
+				}
+			}, getRowLatency);
+		}
+
+		private void sendEMail(SendMailS8Request request) {
+			nMails.increment();
+			schedule(() -> {
+				if(isFailing()) {
+					nFailures.increment();
+					request.onFailed(new IOException("Simulated mail server failure"));
+					return;
+				}
+				try {
+					/* mail delivered to the front's user: validation code is read from text */
+					request.compose((S8MailBuilder) Proxy.newProxyInstance(S8MailBuilder.class.getClassLoader(),
+							new Class<?>[] { S8MailBuilder.class }, (mail, method, arguments) -> {
+								if(arguments != null) {
+									for(Object argument : arguments) {
+										Matcher matcher;
+										if(argument instanceof String && (matcher = CODE.matcher((String) argument)).find()) {
+											front.mailedCode.complete(matcher.group());
+										}
+									}
+								}
+								return StubFront.defaultValue(method.getReturnType());
+							}));
+					request.onSent(SendMailS8Request.Status.OK, null);
+				}
+				catch (IOException | RuntimeException exception) {
+					request.onFailed(exception);
+				}
+			}, sendEMailLatency);
+		}
+	}
+
+}
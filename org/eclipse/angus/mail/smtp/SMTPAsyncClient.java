@@ -0,0 +1,350 @@
+package org.eclipse.angus.mail.smtp;
+
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import javax.net.ssl.SSLContext;
+import org.eclipse.angus.mail.util.MailLogger;
+import org.eclipse.angus.mail.util.PropUtil;
+
+/**
+ * Non-blocking SMTP client: a single selector thread drives any number of concurrent
+ * SMTP sessions over {@link java.nio.channels.SocketChannel}s (with an
+ * {@link javax.net.ssl.SSLEngine} for SSL and STARTTLS), each one a state machine going
+ * through greeting, EHLO, STARTTLS, AUTH, MAIL, RCPT and DATA. No thread is held while
+ * waiting for the server.
+ *
+ * Each message is sent in its own session. Its result completes the returned future,
+ * from the selector thread: dependent actions that may block must use the async
+ * variants of {@link CompletableFuture}.
+ *
+ * Configuration is read from the same <code>mail.smtp.*</code> properties as
+ * {@link SMTPTransport} (host, port, ssl.enable, starttls.enable, starttls.required, auth,
+ * auth.mechanisms, sasl.*, ehlo, localhost, from, sendpartial, reportsuccess,
+ * pipelining, timeout, connectiontimeout, ssl.checkserveridentity, ssl.protocols).
+ * Socket factory properties don't apply: SSL is configured by the {@link SSLContext}.
+ */
+public class SMTPAsyncClient implements AutoCloseable {
+	private static final String[] ignoreList = new String[]{"Bcc", "Content-Length"};
+	private static final long SELECT_TIMEOUT = 1000L;
+	final Session session;
+	final String name;
+	final MailLogger logger;
+	final String host;
+	final int port;
+	final String user;
+	final String password;
+	final boolean isSSL;
+	final boolean useStartTLS;
+	final boolean requireStartTLS;
+	final boolean useAuth;
+	final boolean useEhlo;
+	final boolean usePipelining;
+	final boolean reportSuccess;
+	final boolean allowutf8;
+	final boolean enableSASL;
+	final boolean checkServerIdentity;
+	final String localHostName;
+	final String authMechanisms;
+	final String[] saslMechanisms;
+	final String saslRealm;
+	final String authorizationID;
+	final String[] sslProtocols;
+	final long timeout;
+	final long connectionTimeout;
+	final SSLContext sslContext;
+	private final Selector selector;
+	private final Thread thread;
+	private final ConcurrentLinkedQueue<SMTPAsyncSession> startingSessions = new ConcurrentLinkedQueue();
+	private final AtomicInteger sessionCount = new AtomicInteger();
+	private volatile boolean isClosed = false;
+
+	/**
+	 *
+	 * @param session
+	 * @param name protocol name (<code>smtp</code> or <code>smtps</code>)
+	 * @param user user name, <code>null</code> for <code>mail.smtp.user</code>
+	 * @param password password, <code>null</code> if not authenticating
+	 * @param sslContext SSL context, <code>null</code> for the default one
+	 * @throws MessagingException if the selector can't be opened
+	 */
+	public SMTPAsyncClient(Session session, String name, String user, String password, SSLContext sslContext)
+			throws MessagingException {
+		this.session = session;
+		this.name = name;
+		Properties props = session.getProperties();
+		this.logger = new MailLogger(this.getClass(), "DEBUG SMTP NIO", session.getDebug(), session.getDebugOut());
+		this.isSSL = name.equals("smtps")
+				|| PropUtil.getBooleanProperty(props, "mail." + name + ".ssl.enable", false);
+		String host = session.getProperty("mail." + name + ".host");
+		this.host = host != null && host.length() > 0 ? host : "localhost";
+		this.port = PropUtil.getIntProperty(props, "mail." + name + ".port", this.isSSL ? 465 : 25);
+		this.user = user != null ? user : session.getProperty("mail." + name + ".user");
+		this.password = password;
+		this.useStartTLS = PropUtil.getBooleanProperty(props, "mail." + name + ".starttls.enable", false);
+		this.requireStartTLS = PropUtil.getBooleanProperty(props, "mail." + name + ".starttls.required", false);
+		this.useAuth = PropUtil.getBooleanProperty(props, "mail." + name + ".auth", false);
+		this.useEhlo = PropUtil.getBooleanProperty(props, "mail." + name + ".ehlo", true);
+		this.usePipelining = PropUtil.getBooleanProperty(props, "mail." + name + ".pipelining", true);
+		this.reportSuccess = PropUtil.getBooleanProperty(props, "mail." + name + ".reportsuccess", false);
+		this.allowutf8 = PropUtil.getBooleanProperty(props, "mail.mime.allowutf8", false);
+		this.enableSASL = PropUtil.getBooleanProperty(props, "mail." + name + ".sasl.enable", false);
+		this.checkServerIdentity = PropUtil.getBooleanProperty(props, "mail." + name + ".ssl.checkserveridentity",
+				true);
+		String mechs = session.getProperty("mail." + name + ".auth.mechanisms");
+		this.authMechanisms = mechs != null ? mechs : "LOGIN PLAIN DIGEST-MD5";
+		this.saslMechanisms = split(session.getProperty("mail." + name + ".sasl.mechanisms"));
+		this.saslRealm = session.getProperty("mail." + name + ".sasl.realm");
+		this.authorizationID = session.getProperty("mail." + name + ".sasl.authorizationid");
+		this.sslProtocols = split(session.getProperty("mail." + name + ".ssl.protocols"));
+		this.timeout = 1000000L * (long) PropUtil.getIntProperty(props, "mail." + name + ".timeout", 60000);
+		this.connectionTimeout = 1000000L
+				* (long) PropUtil.getIntProperty(props, "mail." + name + ".connectiontimeout", 30000);
+		this.localHostName = localHostName(session, name);
+
+		try {
+			this.sslContext = sslContext != null ? sslContext : SSLContext.getDefault();
+			this.selector = Selector.open();
+		} catch (NoSuchAlgorithmException | IOException var9) {
+			throw new MessagingException("Can't start SMTP client", var9);
+		}
+
+		this.thread = new Thread(this::run, "angus-smtp-nio");
+		this.thread.setDaemon(true);
+		this.thread.start();
+		if (this.logger.isLoggable(Level.CONFIG)) {
+			this.logger.config("host " + this.host + ", port " + this.port + ", ssl " + this.isSSL);
+		}
+
+	}
+
+	public SMTPAsyncClient(Session session, String name, String user, String password) throws MessagingException {
+		this(session, name, user, password, (SSLContext) null);
+	}
+
+	/**
+	 * Sends a message in a new SMTP session. As for {@link SMTPTransport#sendMessage}, the
+	 * message must have been saved.
+	 *
+	 * @param message
+	 * @param addresses recipients, <code>null</code> for all recipients of the message
+	 * @return future completed with the result of the message, holding a
+	 *         {@link SendFailedException} if the server rejected the message or some of its
+	 *         recipients, or completed exceptionally if the session failed (connection,
+	 *         TLS, authentication or protocol error)
+	 */
+	public CompletableFuture<SMTPSendResult> send(Message message, Address[] addresses) {
+		CompletableFuture<SMTPSendResult> future = new CompletableFuture();
+
+		try {
+			if (this.isClosed) {
+				throw new MessagingException("SMTP client is closed");
+			}
+
+			if (!(message instanceof MimeMessage)) {
+				throw new MessagingException("SMTP can only send RFC822 messages");
+			}
+
+			if (addresses == null) {
+				addresses = message.getAllRecipients();
+			}
+
+			if (addresses == null || addresses.length == 0) {
+				throw new SendFailedException("No recipient addresses");
+			}
+
+			for (int i = 0; i < addresses.length; ++i) {
+				if (!(addresses[i] instanceof InternetAddress)) {
+					throw new MessagingException(addresses[i] + " is not an InternetAddress");
+				}
+			}
+
+			MimeMessage mimeMessage = (MimeMessage) message;
+			boolean sendPartial = message instanceof SMTPMessage && ((SMTPMessage) message).getSendPartial()
+					|| PropUtil.getBooleanProperty(this.session.getProperties(), "mail." + this.name + ".sendpartial",
+							false);
+			SMTPAsyncSession s = new SMTPAsyncSession(this, new InetSocketAddress(this.host, this.port), mimeMessage,
+					addresses, this.envelopeFrom(mimeMessage), this.content(mimeMessage), sendPartial, future);
+			this.startingSessions.add(s);
+			/* closed meanwhile: the selector thread may have drained starting sessions already */
+			if (this.isClosed && this.startingSessions.remove(s)) {
+				throw new MessagingException("SMTP client is closed");
+			}
+
+			this.selector.wakeup();
+		} catch (MessagingException var7) {
+			future.completeExceptionally(var7);
+		} catch (IOException var8) {
+			future.completeExceptionally(new MessagingException("IOException while sending message", var8));
+		}
+
+		return future;
+	}
+
+	/**
+	 * @return nb of sessions in progress
+	 */
+	public int getSessionCount() {
+		return this.sessionCount.get();
+	}
+
+	/**
+	 * Stops the selector thread. Sessions in progress fail.
+	 */
+	public void close() {
+		this.isClosed = true;
+		this.selector.wakeup();
+		if (Thread.currentThread() != this.thread) {
+			try {
+				this.thread.join();
+			} catch (InterruptedException var2) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+	}
+
+	private void run() {
+		while (!this.isClosed) {
+			try {
+				this.selector.select(SELECT_TIMEOUT);
+
+				SMTPAsyncSession s;
+				while ((s = (SMTPAsyncSession) this.startingSessions.poll()) != null) {
+					s.start(this.selector);
+				}
+
+				Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+
+				while (keys.hasNext()) {
+					SelectionKey key = (SelectionKey) keys.next();
+					keys.remove();
+					((SMTPAsyncSession) key.attachment()).ready(key);
+				}
+
+				long now = System.nanoTime();
+
+				for (SelectionKey key : this.selector.keys()) {
+					((SMTPAsyncSession) key.attachment()).checkTimeout(now);
+				}
+			} catch (IOException | ClosedSelectorException var6) {
+				this.logger.log(Level.WARNING, "selector failure", var6);
+			}
+		}
+
+		MessagingException closed = new MessagingException("SMTP client closed");
+
+		SMTPAsyncSession s;
+		while ((s = (SMTPAsyncSession) this.startingSessions.poll()) != null) {
+			s.fail(closed);
+		}
+
+		for (SelectionKey key : this.selector.keys()) {
+			((SMTPAsyncSession) key.attachment()).fail(closed);
+		}
+
+		try {
+			this.selector.close();
+		} catch (IOException var5) {
+			this.logger.log(Level.FINE, "selector close failed", var5);
+		}
+
+	}
+
+	void sessionStarted() {
+		this.sessionCount.incrementAndGet();
+	}
+
+	void sessionEnded() {
+		this.sessionCount.decrementAndGet();
+	}
+
+	private String envelopeFrom(MimeMessage message) throws MessagingException {
+		String from = null;
+		if (message instanceof SMTPMessage) {
+			from = ((SMTPMessage) message).getEnvelopeFrom();
+		}
+
+		if (from == null || from.length() <= 0) {
+			from = this.session.getProperty("mail." + this.name + ".from");
+		}
+
+		if (from == null || from.length() <= 0) {
+			Address[] fa = message.getFrom();
+			Address me = fa != null && fa.length > 0 ? fa[0] : InternetAddress.getLocalAddress(this.session);
+			if (me == null) {
+				throw new MessagingException("can't determine local email address");
+			}
+
+			from = ((InternetAddress) me).getAddress();
+		}
+
+		return from;
+	}
+
+	/**
+	 * Message is encoded in the calling thread: the selector thread only moves bytes.
+	 *
+	 * @return dot-stuffed content, terminated by the end of data line
+	 */
+	private byte[] content(MimeMessage message) throws IOException, MessagingException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		SMTPOutputStream os = new SMTPOutputStream(bos);
+		message.writeTo(os, ignoreList);
+		os.ensureAtBOL();
+		bos.write(new byte[]{46, 13, 10});
+		return bos.toByteArray();
+	}
+
+	private static String localHostName(Session session, String name) {
+		String localHostName = session.getProperty("mail." + name + ".localhost");
+		if (localHostName == null || localHostName.length() <= 0) {
+			localHostName = session.getProperty("mail." + name + ".localaddress");
+		}
+
+		if (localHostName == null || localHostName.length() <= 0) {
+			try {
+				localHostName = InetAddress.getLocalHost().getCanonicalHostName();
+			} catch (UnknownHostException var4) {
+				localHostName = "localhost";
+			}
+		}
+
+		return localHostName;
+	}
+
+	private static String[] split(String s) {
+		if (s == null) {
+			return new String[0];
+		} else {
+			StringTokenizer st = new StringTokenizer(s, " ,");
+			String[] tokens = new String[st.countTokens()];
+
+			for (int i = 0; i < tokens.length; ++i) {
+				tokens[i] = st.nextToken();
+			}
+
+			return tokens;
+		}
+	}
+}
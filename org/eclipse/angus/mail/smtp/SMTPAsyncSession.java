@@ -0,0 +1,983 @@
+package org.eclipse.angus.mail.smtp;
+
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.security.sasl.Sasl;
+import javax.security.sasl.SaslClient;
+import org.eclipse.angus.mail.util.ASCIIUtility;
+
+/**
+ * One message sent by {@link SMTPAsyncClient}: the SMTP session is a chain of commands,
+ * each one registering the handler of its reply, handlers issuing the next commands.
+ * Only used from the selector thread.
+ */
+final class SMTPAsyncSession {
+	private static final int BUFFER_SIZE = 16384;
+	private static final int MAX_LINE_LENGTH = 65536;
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	private final SMTPAsyncClient client;
+	private final InetSocketAddress address;
+	private final MimeMessage message;
+	private final Address[] addresses;
+	private final String from;
+	private final byte[] content;
+	private final boolean sendPartial;
+	private final CompletableFuture<SMTPSendResult> future;
+	private SocketChannel channel;
+	private SelectionKey key;
+	private SSLEngine engine;
+	private boolean handshaking;
+	private Step afterHandshake;
+	private ByteBuffer netIn;
+	private ByteBuffer netOut;
+	private ByteBuffer appIn = ByteBuffer.allocate(BUFFER_SIZE);
+	private final ArrayDeque<ByteBuffer> output = new ArrayDeque();
+	private final ArrayDeque<ReplyHandler> handlers = new ArrayDeque();
+	private final StringBuilder reply = new StringBuilder();
+	private final Map<String, String> extensions = new HashMap();
+	private long deadline;
+	private boolean isStarted = false;
+	private boolean isClosed = false;
+	private boolean isAborted = false;
+	private final List<InternetAddress> valid = new ArrayList();
+	private final List<InternetAddress> validUnsent = new ArrayList();
+	private final List<InternetAddress> invalid = new ArrayList();
+	private MessagingException mex;
+	private boolean addressFailed = false;
+	private int nRcptReplies = 0;
+
+	SMTPAsyncSession(SMTPAsyncClient client, InetSocketAddress address, MimeMessage message, Address[] addresses,
+			String from, byte[] content, boolean sendPartial, CompletableFuture<SMTPSendResult> future) {
+		this.client = client;
+		this.address = address;
+		this.message = message;
+		this.addresses = addresses;
+		this.from = from;
+		this.content = content;
+		this.sendPartial = sendPartial;
+		this.future = future;
+	}
+
+	void start(Selector selector) {
+		this.client.sessionStarted();
+		this.isStarted = true;
+		this.deadline = System.nanoTime() + this.client.connectionTimeout;
+
+		try {
+			this.channel = SocketChannel.open();
+			this.channel.configureBlocking(false);
+			boolean connected = this.channel.connect(this.address);
+			this.key = this.channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+			if (connected) {
+				this.connected();
+			}
+		} catch (Exception var3) {
+			this.fail(var3);
+		}
+
+	}
+
+	void ready(SelectionKey key) {
+		try {
+			if (key.isValid() && key.isConnectable()) {
+				this.channel.finishConnect();
+				key.interestOps(SelectionKey.OP_READ);
+				this.connected();
+			}
+
+			if (key.isValid() && key.isWritable()) {
+				if (this.handshaking) {
+					this.handshake();
+				} else {
+					this.flush();
+				}
+			}
+
+			if (key.isValid() && key.isReadable()) {
+				this.read();
+			}
+		} catch (Exception var3) {
+			this.fail(var3);
+		}
+
+	}
+
+	void checkTimeout(long now) {
+		if (!this.isClosed && now - this.deadline > 0L) {
+			this.fail(new MessagingException("Timeout waiting for SMTP host: " + this.client.host));
+		}
+
+	}
+
+	/**
+	 * Session failed: the future completes exceptionally, unless the message result is
+	 * already known.
+	 */
+	void fail(Exception exception) {
+		if (!this.future.isDone()) {
+			MessagingException mex;
+			if (exception instanceof MessagingException) {
+				mex = (MessagingException) exception;
+			} else if (exception instanceof IOException) {
+				mex = new MessagingException("IOException while sending message", exception);
+			} else {
+				mex = new MessagingException(exception.toString(), exception);
+			}
+
+			this.client.logger.log(Level.FINE, "session failed", mex);
+			this.future.completeExceptionally(mex);
+		}
+
+		this.close();
+	}
+
+	private void close() {
+		if (!this.isClosed) {
+			this.isClosed = true;
+			if (this.isStarted) {
+				this.client.sessionEnded();
+			}
+
+			if (this.key != null) {
+				this.key.cancel();
+			}
+
+			try {
+				if (this.channel != null) {
+					this.channel.close();
+				}
+			} catch (IOException var2) {
+				this.client.logger.log(Level.FINE, "close failed", var2);
+			}
+		}
+
+	}
+
+	private void connected() throws Exception {
+		this.deadline = System.nanoTime() + this.client.timeout;
+		if (this.client.isSSL) {
+			this.startTLS(this::greeting);
+		} else {
+			this.greeting();
+		}
+
+	}
+
+	private void greeting() {
+		this.handlers.add((code, response) -> {
+			if (code != 220) {
+				throw new MessagingException("Got bad greeting from SMTP host: " + this.client.host + ", response: "
+						+ response);
+			}
+
+			this.hello();
+		});
+	}
+
+	private void hello() throws Exception {
+		if (this.client.useEhlo) {
+			this.command("EHLO " + this.client.localHostName, (code, response) -> {
+				if (code == 250) {
+					this.parseExtensions(response);
+					this.helloDone();
+				} else {
+					this.helo();
+				}
+
+			});
+		} else {
+			this.helo();
+		}
+
+	}
+
+	private void helo() throws Exception {
+		this.command("HELO " + this.client.localHostName, (code, response) -> {
+			if (code != 250) {
+				throw new MessagingException(response);
+			}
+
+			this.extensions.clear();
+			this.helloDone();
+		});
+	}
+
+	private void helloDone() throws Exception {
+		if ((this.client.useStartTLS || this.client.requireStartTLS) && this.engine == null) {
+			if (this.supportsExtension("STARTTLS")) {
+				this.command("STARTTLS", (code, response) -> {
+					if (code != 220) {
+						throw new MessagingException(response);
+					}
+
+					this.startTLS(this::hello);
+				});
+				return;
+			}
+
+			if (this.client.requireStartTLS) {
+				throw new MessagingException("STARTTLS is required but host does not support STARTTLS");
+			}
+		}
+
+		boolean hasCredentials = this.client.user != null && this.client.password != null;
+		if (this.client.useAuth && !hasCredentials) {
+			throw new AuthenticationFailedException("failed to connect, no user name or password specified");
+		}
+
+		if ((this.client.useAuth || hasCredentials)
+				&& (this.supportsExtension("AUTH") || this.supportsExtension("AUTH=LOGIN"))) {
+			this.authenticate(this.authentication());
+		} else {
+			this.mailFrom();
+		}
+
+	}
+
+	private Authentication authentication() throws Exception {
+		String user = this.client.user;
+		String password = this.client.password;
+		String authzid = this.client.authorizationID;
+		if (this.client.enableSASL) {
+			String[] mechs = this.client.saslMechanisms;
+			if (mechs.length == 0) {
+				mechs = this.serverMechanisms().toArray(new String[0]);
+			}
+
+			Map<String, ?> props = (Map) this.client.session.getProperties();
+			SaslClient sc = Sasl.createSaslClient(mechs, authzid, this.client.name, this.client.host, props,
+					SMTPSaslAuthenticator.callbackHandler(this.client.logger, this.client.saslRealm, user, password));
+			if (sc != null) {
+				return new SaslAuthentication(sc);
+			}
+
+			this.client.logger.fine("No SASL support, trying other mechanisms");
+		}
+
+		List<String> serverMechanisms = this.serverMechanisms();
+		StringTokenizer st = new StringTokenizer(this.client.authMechanisms);
+
+		while (st.hasMoreTokens()) {
+			String m = st.nextToken().toUpperCase(Locale.ENGLISH);
+			if (serverMechanisms.contains(m)) {
+				if (m.equals("LOGIN")) {
+					return new LoginAuthentication(user, password);
+				}
+
+				if (m.equals("PLAIN")) {
+					return new PlainAuthentication(authzid, user, password);
+				}
+
+				if (m.equals("DIGEST-MD5")) {
+					return new DigestMD5Authentication(this.client, user, password);
+				}
+
+				if (m.equals("XOAUTH2")) {
+					return new OAuth2Authentication(user, password);
+				}
+			}
+		}
+
+		throw new AuthenticationFailedException("No authentication mechanisms supported by both server and client");
+	}
+
+	private void authenticate(Authentication authentication) throws Exception {
+		this.command(authentication.start(), this.authReply(authentication));
+	}
+
+	private ReplyHandler authReply(Authentication authentication) {
+		return (code, response) -> {
+			if (code == 235) {
+				authentication.verify();
+				this.mailFrom();
+			} else if (code == 334) {
+				this.command(authentication.respond(response), this.authReply(authentication));
+			} else {
+				throw new AuthenticationFailedException(response);
+			}
+
+		};
+	}
+
+	private void mailFrom() throws Exception {
+		String cmd = "MAIL FROM:" + normalizeAddress(this.from);
+		if (this.client.allowutf8 && this.supportsExtension("SMTPUTF8")) {
+			cmd = cmd + " SMTPUTF8";
+		}
+
+		final String mailFrom = cmd;
+		final boolean pipelining = this.client.usePipelining && this.supportsExtension("PIPELINING");
+		this.command(mailFrom, (code, response) -> {
+			if (code != 250) {
+				SMTPSendFailedException ex = new SMTPSendFailedException(mailFrom, code, response, (Exception) null,
+						(Address[]) null, this.addresses, (Address[]) null);
+				if (code == 501 || code == 503 || code == 550 || code == 551 || code == 553) {
+					try {
+						ex.setNextException(
+								new SMTPSenderFailedException(new InternetAddress(this.from), mailFrom, code, response));
+					} catch (AddressException var7) {
+					}
+				}
+
+				this.abort(ex);
+			} else if (!pipelining) {
+				this.rcptTo(0, false);
+			}
+
+		});
+		if (pipelining) {
+			for (int i = 0; i < this.addresses.length; ++i) {
+				this.rcptTo(i, true);
+			}
+		}
+
+	}
+
+	private void rcptTo(int i, boolean pipelining) throws Exception {
+		final InternetAddress ia = (InternetAddress) this.addresses[i];
+		String notify = this.supportsExtension("DSN") ? this.dsnNotify() : null;
+		final String cmd = "RCPT TO:" + normalizeAddress(ia.getAddress()) + (notify != null ? " NOTIFY=" + notify : "");
+		this.command(cmd, (code, response) -> {
+			if (this.isAborted) {
+				return;
+			}
+
+			if (code >= 200 && code <= 299) {
+				this.valid.add(ia);
+				if (this.client.reportSuccess) {
+					this.chain(new SMTPAddressSucceededException(ia, cmd, code, response));
+				}
+			} else if (code >= 400 && code <= 599) {
+				if (code <= 499) {
+					this.validUnsent.add(ia);
+				} else {
+					this.invalid.add(ia);
+				}
+
+				this.addressFailed = true;
+				this.chain(new SMTPAddressFailedException(ia, cmd, code, response));
+			} else {
+				this.abort(new SMTPAddressFailedException(ia, cmd, code, response));
+				return;
+			}
+
+			if (++this.nRcptReplies == this.addresses.length) {
+				this.rcptDone();
+			} else if (!pipelining) {
+				this.rcptTo(i + 1, false);
+			}
+
+		});
+	}
+
+	private void rcptDone() throws Exception {
+		if (this.addressFailed && !this.sendPartial || this.valid.isEmpty()) {
+			List<InternetAddress> unsent = new ArrayList(this.valid);
+			unsent.addAll(this.validUnsent);
+			this.abort(new SendFailedException("Invalid Addresses", this.mex, (Address[]) null, toArray(unsent),
+					toArray(this.invalid)));
+		} else {
+			this.command("DATA", (code, response) -> {
+				if (code != 354) {
+					this.abort(new SMTPSendFailedException("DATA", code, response, this.mex, (Address[]) null,
+							this.validAddresses(), toArray(this.invalid)));
+				} else {
+					this.deadline = System.nanoTime() + this.client.timeout;
+					this.send(ByteBuffer.wrap(this.content), this::dataDone);
+				}
+
+			});
+		}
+
+	}
+
+	private void dataDone(int code, String response) throws Exception {
+		MessagingException result = null;
+		if (code != 250) {
+			result = new SMTPSendFailedException(".", code, response, this.mex, (Address[]) null,
+					this.validAddresses(), toArray(this.invalid));
+		} else if (this.addressFailed || this.client.reportSuccess) {
+			result = new SMTPSendFailedException(".", code, response, this.mex, toArray(this.valid),
+					toArray(this.validUnsent), toArray(this.invalid));
+		}
+
+		this.future.complete(new SMTPSendResult(this.message, this.addresses, result));
+		this.quit();
+	}
+
+	/**
+	 * Message rejected: the result is known, replies to commands already sent are ignored.
+	 */
+	private void abort(MessagingException exception) throws Exception {
+		this.isAborted = true;
+		this.future.complete(new SMTPSendResult(this.message, this.addresses, exception));
+		this.quit();
+	}
+
+	private void quit() throws Exception {
+		this.command("QUIT", (code, response) -> this.close());
+	}
+
+	private void command(String cmd, ReplyHandler handler) throws Exception {
+		byte[] bytes = this.client.allowutf8 ? cmd.getBytes(StandardCharsets.UTF_8) : ASCIIUtility.getBytes(cmd);
+		ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 2);
+		buffer.put(bytes).put((byte) 13).put((byte) 10).flip();
+		this.send(buffer, handler);
+	}
+
+	private void send(ByteBuffer buffer, ReplyHandler handler) throws Exception {
+		this.output.add(buffer);
+		this.handlers.add(handler);
+		this.deadline = System.nanoTime() + this.client.timeout;
+		if (!this.handshaking) {
+			this.flush();
+		}
+
+	}
+
+	private void flush() throws IOException {
+		while (true) {
+			ByteBuffer src = (ByteBuffer) this.output.peek();
+			if (this.engine != null) {
+				if (!this.flushNet()) {
+					return;
+				}
+
+				if (src == null) {
+					break;
+				}
+
+				/* netOut is empty and at least one packet large */
+				if (this.engine.wrap(src, this.netOut).getStatus() == SSLEngineResult.Status.CLOSED) {
+					throw new SSLException("SSL connection closed");
+				}
+			} else {
+				if (src == null) {
+					break;
+				}
+
+				if (this.channel.write(src) > 0) {
+					this.deadline = System.nanoTime() + this.client.timeout;
+				}
+
+				if (src.hasRemaining()) {
+					this.setWriteInterest(true);
+					return;
+				}
+			}
+
+			if (!src.hasRemaining()) {
+				this.output.poll();
+			}
+		}
+
+		this.setWriteInterest(false);
+	}
+
+	/**
+	 * @return <code>true</code> if all encrypted bytes have been written
+	 */
+	private boolean flushNet() throws IOException {
+		this.netOut.flip();
+		if (this.channel.write(this.netOut) > 0) {
+			this.deadline = System.nanoTime() + this.client.timeout;
+		}
+
+		boolean flushed = !this.netOut.hasRemaining();
+		this.netOut.compact();
+		this.setWriteInterest(!flushed);
+		return flushed;
+	}
+
+	private void setWriteInterest(boolean write) {
+		if (this.key.isValid()) {
+			this.key.interestOps(write ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+
+	}
+
+	private void read() throws Exception {
+		ByteBuffer dst = this.engine != null ? this.netIn : this.appIn;
+		if (!dst.hasRemaining()) {
+			dst = this.grow(dst);
+		}
+
+		int n = this.channel.read(dst);
+		if (n < 0) {
+			throw new MessagingException("Connection closed by SMTP host: " + this.client.host);
+		} else {
+			if (n > 0) {
+				this.deadline = System.nanoTime() + this.client.timeout;
+			}
+
+			if (this.engine != null) {
+				if (this.handshaking) {
+					this.handshake();
+					return;
+				}
+
+				this.unwrap();
+			}
+
+			this.processReplies();
+		}
+	}
+
+	private ByteBuffer grow(ByteBuffer buffer) throws MessagingException {
+		if (buffer.capacity() >= MAX_LINE_LENGTH) {
+			throw new MessagingException("SMTP reply too long");
+		} else {
+			ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			larger.put(buffer);
+			if (buffer == this.netIn) {
+				this.netIn = larger;
+			} else {
+				this.appIn = larger;
+			}
+
+			return larger;
+		}
+	}
+
+	private void startTLS(Step next) throws Exception {
+		SSLEngine e = this.client.sslContext.createSSLEngine(this.client.host, this.client.port);
+		e.setUseClientMode(true);
+		if (this.client.sslProtocols.length > 0) {
+			e.setEnabledProtocols(this.client.sslProtocols);
+		}
+
+		if (this.client.checkServerIdentity) {
+			SSLParameters parameters = e.getSSLParameters();
+			parameters.setEndpointIdentificationAlgorithm("HTTPS");
+			e.setSSLParameters(parameters);
+		}
+
+		this.netIn = ByteBuffer.allocate(e.getSession().getPacketBufferSize());
+		this.netOut = ByteBuffer.allocate(e.getSession().getPacketBufferSize());
+		/* plain text received after the STARTTLS reply is discarded, not trusted */
+		this.appIn = ByteBuffer.allocate(Math.max(BUFFER_SIZE, e.getSession().getApplicationBufferSize()));
+		this.engine = e;
+		this.handshaking = true;
+		this.afterHandshake = next;
+		this.deadline = System.nanoTime() + this.client.timeout;
+		e.beginHandshake();
+		this.handshake();
+	}
+
+	private void handshake() throws Exception {
+		while (this.handshaking) {
+			SSLEngineResult result;
+			switch (this.engine.getHandshakeStatus()) {
+				case NEED_TASK :
+					this.runDelegatedTasks();
+					break;
+				case NEED_WRAP :
+					if (!this.flushNet()) {
+						return;
+					}
+
+					result = this.engine.wrap(EMPTY, this.netOut);
+					if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+						throw new SSLException("SSL connection closed during handshake");
+					}
+
+					if (!this.flushNet()) {
+						return;
+					}
+					break;
+				case NEED_UNWRAP :
+				case NEED_UNWRAP_AGAIN :
+					this.netIn.flip();
+
+					try {
+						result = this.engine.unwrap(this.netIn, this.appIn);
+					} finally {
+						this.netIn.compact();
+					}
+
+					if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+						if (!this.netIn.hasRemaining()) {
+							this.grow(this.netIn);
+						}
+
+						return;
+					}
+
+					if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+						this.grow(this.appIn);
+					} else if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+						throw new SSLException("SSL connection closed during handshake");
+					}
+					break;
+				default :
+					this.handshaking = false;
+					this.client.logger.fine("TLS handshake done");
+					Step next = this.afterHandshake;
+					this.afterHandshake = null;
+					next.run();
+					this.flush();
+					/* server data may have come with the last handshake records */
+					this.unwrap();
+					this.processReplies();
+			}
+		}
+
+	}
+
+	private void unwrap() throws Exception {
+		this.netIn.flip();
+
+		try {
+			while (this.netIn.hasRemaining()) {
+				SSLEngineResult result = this.engine.unwrap(this.netIn, this.appIn);
+				SSLEngineResult.Status status = result.getStatus();
+				if (status == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+					this.grow(this.appIn);
+				} else {
+					if (status == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+						break;
+					}
+
+					if (status == SSLEngineResult.Status.CLOSED) {
+						throw new MessagingException("SSL connection closed by SMTP host: " + this.client.host);
+					}
+
+					if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+						this.runDelegatedTasks();
+					}
+
+					if (this.engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+						/* post-handshake message, e.g. TLS 1.3 key update */
+						if (this.flushNet()) {
+							this.engine.wrap(EMPTY, this.netOut);
+							this.flushNet();
+						}
+					}
+
+					if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+						break;
+					}
+				}
+			}
+		} finally {
+			this.netIn.compact();
+		}
+
+	}
+
+	/**
+	 * Certificate checks run on the selector thread: they are CPU bound and short.
+	 */
+	private void runDelegatedTasks() {
+		Runnable task;
+		while ((task = this.engine.getDelegatedTask()) != null) {
+			task.run();
+		}
+
+	}
+
+	private void processReplies() throws Exception {
+		String line;
+		while (!this.isClosed && (line = this.readLine()) != null) {
+			this.reply.append(line).append('\n');
+			if (line.length() < 4 || line.charAt(3) != '-') {
+				String response = this.reply.toString();
+				this.reply.setLength(0);
+
+				int code;
+				try {
+					code = Integer.parseInt(response.substring(0, 3));
+				} catch (NumberFormatException | StringIndexOutOfBoundsException var5) {
+					code = -1;
+				}
+
+				ReplyHandler handler = (ReplyHandler) this.handlers.poll();
+				if (handler == null) {
+					throw new MessagingException("Unexpected response from SMTP host: " + response);
+				}
+
+				handler.reply(code, response);
+			}
+		}
+
+	}
+
+	private String readLine() throws MessagingException {
+		int end = this.appIn.position();
+
+		for (int i = 0; i < end; ++i) {
+			if (this.appIn.get(i) == 10) {
+				int length = i > 0 && this.appIn.get(i - 1) == 13 ? i - 1 : i;
+				byte[] bytes = new byte[length];
+				this.appIn.flip();
+				this.appIn.get(bytes);
+				this.appIn.position(i + 1);
+				this.appIn.compact();
+				return new String(bytes, StandardCharsets.UTF_8);
+			}
+		}
+
+		if (end >= MAX_LINE_LENGTH) {
+			throw new MessagingException("SMTP reply too long");
+		} else {
+			return null;
+		}
+	}
+
+	private void parseExtensions(String response) {
+		this.extensions.clear();
+		StringTokenizer lines = new StringTokenizer(response, "\n");
+		if (lines.hasMoreTokens()) {
+			lines.nextToken();
+		}
+
+		while (lines.hasMoreTokens()) {
+			String line = lines.nextToken();
+			if (line.length() >= 5) {
+				line = line.substring(4);
+				int i = line.indexOf(32);
+				String arg = "";
+				if (i > 0) {
+					arg = line.substring(i + 1);
+					line = line.substring(0, i);
+				}
+
+				this.extensions.put(line.toUpperCase(Locale.ENGLISH), arg);
+			}
+		}
+
+	}
+
+	private boolean supportsExtension(String ext) {
+		return this.extensions.containsKey(ext.toUpperCase(Locale.ENGLISH));
+	}
+
+	private List<String> serverMechanisms() {
+		List<String> mechanisms = new ArrayList();
+		String auth = (String) this.extensions.get("AUTH");
+		if (auth != null) {
+			StringTokenizer st = new StringTokenizer(auth);
+
+			while (st.hasMoreTokens()) {
+				mechanisms.add(st.nextToken().toUpperCase(Locale.ENGLISH));
+			}
+		}
+
+		if (this.supportsExtension("AUTH=LOGIN") && !mechanisms.contains("LOGIN")) {
+			mechanisms.add("LOGIN");
+		}
+
+		return mechanisms;
+	}
+
+	private String dsnNotify() {
+		String notify = null;
+		if (this.message instanceof SMTPMessage) {
+			notify = ((SMTPMessage) this.message).getDSNNotify();
+		}
+
+		return notify != null ? notify : this.client.session.getProperty("mail." + this.client.name + ".dsn.notify");
+	}
+
+	private void chain(MessagingException exception) {
+		if (this.mex == null) {
+			this.mex = exception;
+		} else {
+			this.mex.setNextException(exception);
+		}
+
+	}
+
+	private Address[] validAddresses() {
+		List<InternetAddress> all = new ArrayList(this.valid);
+		all.addAll(this.validUnsent);
+		return toArray(all);
+	}
+
+	private static Address[] toArray(List<InternetAddress> addresses) {
+		return (Address[]) addresses.toArray(new Address[0]);
+	}
+
+	private static String normalizeAddress(String addr) {
+		return !addr.startsWith("<") && !addr.endsWith(">") ? "<" + addr + ">" : addr;
+	}
+
+	private static String base64(byte[] bytes) {
+		return ASCIIUtility.toString(Base64.getEncoder().encode(bytes));
+	}
+
+	private static byte[] challenge(String response) {
+		String text = response.trim();
+		return text.length() > 4 ? Base64.getMimeDecoder().decode(text.substring(4)) : new byte[0];
+	}
+
+	private interface Step {
+		void run() throws Exception;
+	}
+
+	private interface ReplyHandler {
+		void reply(int code, String response) throws Exception;
+	}
+
+	/**
+	 * Client side of an AUTH exchange, fed with the 334 challenges of the server.
+	 */
+	private abstract static class Authentication {
+		abstract String start() throws Exception;
+
+		abstract String respond(String response) throws Exception;
+
+		void verify() throws Exception {
+		}
+	}
+
+	private static final class LoginAuthentication extends Authentication {
+		private final String user;
+		private final String password;
+		private int step = 0;
+
+		LoginAuthentication(String user, String password) {
+			this.user = user;
+			this.password = password;
+		}
+
+		String start() {
+			return "AUTH LOGIN";
+		}
+
+		String respond(String response) {
+			return base64((this.step++ == 0 ? this.user : this.password).getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static final class PlainAuthentication extends Authentication {
+		private final String authzid;
+		private final String user;
+		private final String password;
+
+		PlainAuthentication(String authzid, String user, String password) {
+			this.authzid = authzid;
+			this.user = user;
+			this.password = password;
+		}
+
+		String start() {
+			String s = (this.authzid != null ? this.authzid : "") + "\u0000" + this.user + "\u0000" + this.password;
+			return "AUTH PLAIN " + base64(s.getBytes(StandardCharsets.UTF_8));
+		}
+
+		String respond(String response) {
+			return "";
+		}
+	}
+
+	private static final class DigestMD5Authentication extends Authentication {
+		private final SMTPAsyncClient client;
+		private final String user;
+		private final String password;
+		private final DigestMD5 md5;
+		private int step = 0;
+
+		DigestMD5Authentication(SMTPAsyncClient client, String user, String password) {
+			this.client = client;
+			this.user = user;
+			this.password = password;
+			this.md5 = new DigestMD5(client.logger);
+		}
+
+		String start() {
+			return "AUTH DIGEST-MD5";
+		}
+
+		String respond(String response) throws Exception {
+			if (this.step++ == 0) {
+				return ASCIIUtility.toString(
+						this.md5.authClient(this.client.host, this.user, this.password, this.client.saslRealm, response));
+			} else if (!this.md5.authServer(response)) {
+				throw new AuthenticationFailedException("DIGEST-MD5 server authentication failed");
+			} else {
+				return "";
+			}
+		}
+	}
+
+	private static final class OAuth2Authentication extends Authentication {
+		private final String user;
+		private final String token;
+
+		OAuth2Authentication(String user, String token) {
+			this.user = user;
+			this.token = token;
+		}
+
+		String start() {
+			String s = "user=" + this.user + "\u0001auth=Bearer " + this.token + "\u0001\u0001";
+			return "AUTH XOAUTH2 " + base64(s.getBytes(StandardCharsets.UTF_8));
+		}
+
+		/** error details: empty response, the server then fails the exchange */
+		String respond(String response) {
+			return "";
+		}
+	}
+
+	private static final class SaslAuthentication extends Authentication {
+		private final SaslClient sc;
+
+		SaslAuthentication(SaslClient sc) {
+			this.sc = sc;
+		}
+
+		String start() throws Exception {
+			String cmd = "AUTH " + this.sc.getMechanismName();
+			if (this.sc.hasInitialResponse()) {
+				byte[] ba = this.sc.evaluateChallenge(new byte[0]);
+				cmd = cmd + " " + (ba.length > 0 ? base64(ba) : "=");
+			}
+
+			return cmd;
+		}
+
+		String respond(String response) throws Exception {
+			byte[] ba = this.sc.isComplete() ? null : this.sc.evaluateChallenge(challenge(response));
+			return ba != null ? base64(ba) : "";
+		}
+
+		void verify() throws Exception {
+			if (this.sc.isComplete()) {
+				String qop = (String) this.sc.getNegotiatedProperty("javax.security.sasl.qop");
+				if (qop != null && (qop.equalsIgnoreCase("auth-int") || qop.equalsIgnoreCase("auth-conf"))) {
+					throw new AuthenticationFailedException("SASL Mechanism requires integrity or confidentiality");
+				}
+			}
+
+		}
+	}
+}
@@ -46,45 +46,7 @@ public class SMTPSaslAuthenticator implements SaslAuthenticator {
 			this.logger.fine("");
 		}
 
-		CallbackHandler cbh = new CallbackHandler() {
-			public void handle(Callback[] callbacks) {
-				if (SMTPSaslAuthenticator.this.logger.isLoggable(Level.FINE)) {
-					SMTPSaslAuthenticator.this.logger.fine("SASL callback length: " + callbacks.length);
-				}
-
-				for (int i = 0; i < callbacks.length; ++i) {
-					if (SMTPSaslAuthenticator.this.logger.isLoggable(Level.FINE)) {
-						SMTPSaslAuthenticator.this.logger.fine("SASL callback " + i + ": " + callbacks[i]);
-					}
-
-					if (callbacks[i] instanceof NameCallback) {
-						NameCallback ncb = (NameCallback) callbacks[i];
-						ncb.setName(u);
-					} else if (callbacks[i] instanceof PasswordCallback) {
-						PasswordCallback pcb = (PasswordCallback) callbacks[i];
-						pcb.setPassword(p.toCharArray());
-					} else if (callbacks[i] instanceof RealmCallback) {
-						RealmCallback rcb = (RealmCallback) callbacks[i];
-						rcb.setText(realm != null ? realm : rcb.getDefaultText());
-					} else if (callbacks[i] instanceof RealmChoiceCallback) {
-						RealmChoiceCallback rcbx = (RealmChoiceCallback) callbacks[i];
-						if (realm == null) {
-							rcbx.setSelectedIndex(rcbx.getDefaultChoice());
-						} else {
-							String[] choices = rcbx.getChoices();
-
-							for (int k = 0; k < choices.length; ++k) {
-								if (choices[k].equals(realm)) {
-									rcbx.setSelectedIndex(k);
-									break;
-								}
-							}
-						}
-					}
-				}
-
-			}
-		};
+		CallbackHandler cbh = callbackHandler(this.logger, realm, u, p);
 
 		SaslClient sc;
 		try {
@@ -198,6 +160,53 @@ public class SMTPSaslAuthenticator implements SaslAuthenticator {
 		}
 	}
 
+	/**
+	 * Answers SASL callbacks with the given credentials, also used by the non-blocking
+	 * {@link SMTPAsyncClient}.
+	 */
+	static CallbackHandler callbackHandler(final MailLogger logger, final String realm, final String u,
+			final String p) {
+		return new CallbackHandler() {
+			public void handle(Callback[] callbacks) {
+				if (logger.isLoggable(Level.FINE)) {
+					logger.fine("SASL callback length: " + callbacks.length);
+				}
+
+				for (int i = 0; i < callbacks.length; ++i) {
+					if (logger.isLoggable(Level.FINE)) {
+						logger.fine("SASL callback " + i + ": " + callbacks[i]);
+					}
+
+					if (callbacks[i] instanceof NameCallback) {
+						NameCallback ncb = (NameCallback) callbacks[i];
+						ncb.setName(u);
+					} else if (callbacks[i] instanceof PasswordCallback) {
+						PasswordCallback pcb = (PasswordCallback) callbacks[i];
+						pcb.setPassword(p.toCharArray());
+					} else if (callbacks[i] instanceof RealmCallback) {
+						RealmCallback rcb = (RealmCallback) callbacks[i];
+						rcb.setText(realm != null ? realm : rcb.getDefaultText());
+					} else if (callbacks[i] instanceof RealmChoiceCallback) {
+						RealmChoiceCallback rcbx = (RealmChoiceCallback) callbacks[i];
+						if (realm == null) {
+							rcbx.setSelectedIndex(rcbx.getDefaultChoice());
+						} else {
+							String[] choices = rcbx.getChoices();
+
+							for (int k = 0; k < choices.length; ++k) {
+								if (choices[k].equals(realm)) {
+									rcbx.setSelectedIndex(k);
+									break;
+								}
+							}
+						}
+					}
+				}
+
+			}
+		};
+	}
+
 	private static final String responseText(SMTPTransport pr) {
 		String resp = pr.getLastServerResponse().trim();
 		return resp.length() > 4 ? resp.substring(4) : "";
@@ -0,0 +1,63 @@
+package org.eclipse.angus.mail.smtp;
+
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+
+/**
+ * Outcome of one message of a batch sent with
+ * {@link SMTPTransport#sendMessages(java.util.Iterator, int)}.
+ */
+public class SMTPSendResult {
+	private final Message message;
+	private final Address[] addresses;
+	private final MessagingException exception;
+
+	public SMTPSendResult(Message message, Address[] addresses, MessagingException exception) {
+		this.message = message;
+		this.addresses = addresses;
+		this.exception = exception;
+	}
+
+	public Message getMessage() {
+		return this.message;
+	}
+
+	public Address[] getAddresses() {
+		return this.addresses;
+	}
+
+	/**
+	 * @return <code>null</code> if the message was delivered to all its recipients,
+	 *         {@link SendFailedException} (with valid sent, valid unsent and invalid
+	 *         addresses) if the server rejected the message or some of its recipients
+	 */
+	public MessagingException getException() {
+		return this.exception;
+	}
+
+	public boolean isDelivered() {
+		return this.exception == null;
+	}
+
+	/**
+	 * @return addresses the message was delivered to
+	 */
+	public Address[] getValidSentAddresses() {
+		if (this.exception == null) {
+			return this.addresses;
+		} else if (this.exception instanceof SendFailedException) {
+			Address[] sent = ((SendFailedException) this.exception).getValidSentAddresses();
+			return sent != null ? sent : new Address[0];
+		} else {
+			return new Address[0];
+		}
+	}
+
+	public String toString() {
+		return this.exception == null
+				? "delivered"
+				: "failed: " + this.exception.getMessage();
+	}
+}
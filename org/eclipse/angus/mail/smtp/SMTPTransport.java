@@ -28,10 +28,12 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -92,6 +94,17 @@ public class SMTPTransport extends Transport {
 	private boolean debugpassword;
 	private boolean allowutf8;
 	private int chunkSize;
+	private int messageCount;
+	private boolean usePipelining;
+	private boolean pipelining;
+	private boolean dataPipelined;
+	private boolean resetPending;
+	private boolean resetPipelined;
+	private String pipelinedFrom;
+	private String pipelinedMailFrom;
+	private int unreadReplies;
+	private final ArrayDeque<Reply> pipelinedReplies = new ArrayDeque();
+	private static final int PIPELINE_WINDOW = 64;
 	private static final String[] ignoreList = new String[]{"Bcc", "Content-Length"};
 	private static final byte[] CRLF = new byte[]{13, 10};
 	private static final String UNKNOWN = "UNKNOWN";
@@ -176,6 +189,8 @@ public class SMTPTransport extends Transport {
 			this.logger.config("chunk size " + this.chunkSize);
 		}
 
+		this.usePipelining = PropUtil.getBooleanProperty(props, "mail." + name + ".pipelining", true);
+
 		Authenticator[] a = new Authenticator[]{new LoginAuthenticator(), new PlainAuthenticator(),
 				new DigestMD5Authenticator(), new NtlmAuthenticator(), new OAuth2Authenticator()};
 		StringBuilder sb = new StringBuilder();
@@ -394,6 +409,7 @@ public class SMTPTransport extends Transport {
 			}
 
 			boolean connected = false;
+			this.messageCount = 0;
 
 			boolean var10;
 			try {
@@ -640,6 +656,13 @@ public class SMTPTransport extends Transport {
 			}
 
 			try {
+				++this.messageCount;
+				this.pipelining = this.usePipelining && this.supportsExtension("PIPELINING");
+				if (this.resetPending) {
+					this.resetPending = false;
+					this.reset();
+				}
+
 				this.mailFrom();
 				this.rcptTo();
 				if (this.chunkSize > 0 && this.supportsExtension("CHUNKING")) {
@@ -689,12 +712,30 @@ public class SMTPTransport extends Transport {
 						this.message);
 				throw new MessagingException("IOException while sending message", var17);
 			} finally {
+				if (this.unreadReplies > 0 || !this.pipelinedReplies.isEmpty()) {
+					/* replies out of sync with commands, connection can't be reused */
+					this.logger.fine("pipelined replies left unread, closing");
+
+					try {
+						this.closeConnection();
+					} catch (MessagingException var12) {
+					}
+				}
+
 				this.validSentAddr = this.validUnsentAddr = this.invalidAddr = null;
 				this.addresses = null;
 				this.message = null;
 				this.exception = null;
 				this.sendPartiallyFailed = false;
 				this.notificationDone = false;
+				this.pipelining = false;
+				this.dataPipelined = false;
+				this.resetPending = false;
+				this.resetPipelined = false;
+				this.pipelinedFrom = null;
+				this.pipelinedMailFrom = null;
+				this.unreadReplies = 0;
+				this.pipelinedReplies.clear();
 			}
 
 			this.sendMessageEnd();
@@ -703,6 +744,102 @@ public class SMTPTransport extends Transport {
 		}
 	}
 
+	/**
+	 * Sends messages over this connection, in one SMTP session: a RSET is issued between
+	 * transactions (pipelined with the next envelope if the server supports PIPELINING), and
+	 * a failed message doesn't stop the batch, its failure being reported in its result.
+	 * The connection is renewed once <code>maxMessages</code> messages have been sent over
+	 * it, or if it has been lost. The batch stops early if it can't be re-established, the
+	 * remaining messages being left in <code>messages</code>.
+	 *
+	 * @param messages messages with their recipients, <code>null</code> recipients
+	 *        standing for all recipients of the message
+	 * @param maxMessages max nb of messages per connection, -1 for no limit
+	 * @return one result per message taken from <code>messages</code>, in order
+	 */
+	public synchronized List<SMTPSendResult> sendMessages(
+			Iterator<? extends Map.Entry<? extends Message, Address[]>> messages, int maxMessages) {
+		this.checkConnected();
+		List<SMTPSendResult> results = new ArrayList();
+
+		while (messages.hasNext()) {
+			Map.Entry<? extends Message, Address[]> item = (Map.Entry) messages.next();
+			Message message = (Message) item.getKey();
+			Address[] addresses = (Address[]) item.getValue();
+
+			try {
+				if (addresses == null) {
+					addresses = message.getAllRecipients();
+				}
+
+				if (!this.isOpen() || maxMessages > 0 && this.messageCount >= maxMessages) {
+					this.reconnect();
+				}
+			} catch (MessagingException var11) {
+				results.add(new SMTPSendResult(message, addresses, var11));
+				if (this.isOpen()) {
+					continue;
+				}
+				break;
+			}
+
+			int count = this.messageCount;
+			this.resetPending = count > 0;
+
+			try {
+				this.sendMessage(message, addresses);
+				results.add(new SMTPSendResult(message, addresses, (MessagingException) null));
+			} catch (SendFailedException var9) {
+				/* transaction rejected, session was reset */
+				results.add(new SMTPSendResult(message, addresses, var9));
+			} catch (MessagingException var10) {
+				results.add(new SMTPSendResult(message, addresses, var10));
+				if (this.messageCount != count && this.isOpen()) {
+					/* possibly failed while writing data: session state is unknown */
+					this.logger.fine("transaction failed, closing");
+
+					try {
+						this.closeConnection();
+					} catch (MessagingException var8) {
+					}
+				}
+			}
+		}
+
+		return results;
+	}
+
+	private void reconnect() throws MessagingException {
+		URLName u = this.url;
+		if (u == null) {
+			throw new MessagingException("Can't reconnect to SMTP host: not connected by host name");
+		}
+
+		this.logger.fine("renewing connection");
+
+		try {
+			this.close();
+		} catch (MessagingException var3) {
+			this.logger.log(Level.FINE, "close failed", var3);
+		}
+
+		this.connect(u.getHost(), u.getPort(), u.getUsername(), u.getPassword());
+	}
+
+	/**
+	 * Ends the previous transaction of the session. When pipelining, the reply is read with
+	 * the envelope ones.
+	 */
+	private void reset() throws MessagingException {
+		if (this.pipelining) {
+			this.pipelineCommand("RSET");
+			this.resetPipelined = true;
+		} else {
+			this.issueCommand("RSET", 250);
+		}
+
+	}
+
 	private void addressesFailed() {
 		if (this.validSentAddr != null) {
 			if (this.validUnsentAddr != null) {
@@ -758,6 +895,14 @@ public class SMTPTransport extends Transport {
 
 	}
 
+	synchronized boolean isOpen() {
+		return super.isConnected() && this.serverSocket != null;
+	}
+
+	synchronized int getMessageCount() {
+		return this.messageCount;
+	}
+
 	public synchronized boolean isConnected() {
 		if (!super.isConnected()) {
 			return false;
@@ -1075,28 +1220,59 @@ public class SMTPTransport extends Transport {
 			cmd = cmd + " " + submitter;
 		}
 
+		if (this.pipelining) {
+			/* reply is read by rcptTo, after all RCPT TO commands have been sent */
+			this.pipelineCommand(cmd);
+			this.pipelinedFrom = from;
+			this.pipelinedMailFrom = cmd;
+			return;
+		}
+
 		try {
 			this.issueSendCommand(cmd, 250);
 		} catch (SMTPSendFailedException var8) {
-			SMTPSendFailedException ex = var8;
-			int retCode = var8.getReturnCode();
-			switch (retCode) {
-				case 501 :
-				case 503 :
-				case 550 :
-				case 551 :
-				case 553 :
-					try {
-						ex.setNextException(new SMTPSenderFailedException(new InternetAddress(from), cmd, retCode,
-								ex.getMessage()));
-					} catch (AddressException var7) {
-					}
-			}
-
+			this.senderFailed(var8, from, cmd);
 			throw var8;
 		}
 	}
 
+	private void senderFailed(SMTPSendFailedException ex, String from, String cmd) {
+		int retCode = ex.getReturnCode();
+		switch (retCode) {
+			case 501 :
+			case 503 :
+			case 550 :
+			case 551 :
+			case 553 :
+				try {
+					ex.setNextException(
+							new SMTPSenderFailedException(new InternetAddress(from), cmd, retCode, ex.getMessage()));
+				} catch (AddressException var5) {
+				}
+		}
+	}
+
+	private void checkPipelinedMailFrom() throws MessagingException {
+		String from = this.pipelinedFrom;
+		String cmd = this.pipelinedMailFrom;
+		this.pipelinedFrom = this.pipelinedMailFrom = null;
+		int ret = this.nextPipelinedReply();
+		if (ret != 250) {
+			String _lsr = this.lastServerResponse;
+			int _lrc = this.lastReturnCode;
+			this.discardPipelinedReplies();
+			this.lastServerResponse = _lsr;
+			this.lastReturnCode = _lrc;
+
+			try {
+				this.checkSendResponse(cmd, ret, 250);
+			} catch (SMTPSendFailedException var5) {
+				this.senderFailed(var5, from, cmd);
+				throw var5;
+			}
+		}
+	}
+
 	protected void rcptTo() throws MessagingException {
 		List<InternetAddress> valid = new ArrayList();
 		List<InternetAddress> validUnsent = new ArrayList();
@@ -1105,7 +1281,6 @@ public class SMTPTransport extends Transport {
 		MessagingException mex = null;
 		boolean sendFailed = false;
 		MessagingException sfex = null;
-		this.validSentAddr = this.validUnsentAddr = this.invalidAddr = null;
 		boolean sendPartial = false;
 		if (this.message instanceof SMTPMessage) {
 			sendPartial = ((SMTPMessage) this.message).getSendPartial();
@@ -1136,17 +1311,61 @@ public class SMTPTransport extends Transport {
 			}
 		}
 
+		String[] commands = new String[this.addresses.length];
+
 		int k;
 		for (k = 0; k < this.addresses.length; ++k) {
-			sfex = null;
-			InternetAddress ia = (InternetAddress) this.addresses[k];
-			String cmd = "RCPT TO:" + this.normalizeAddress(ia.getAddress());
+			commands[k] = "RCPT TO:" + this.normalizeAddress(((InternetAddress) this.addresses[k]).getAddress());
 			if (dsn) {
-				cmd = cmd + " NOTIFY=" + notify;
+				commands[k] = commands[k] + " NOTIFY=" + notify;
+			}
+		}
+
+		if (this.pipelining) {
+			for (k = 0; k < commands.length; ++k) {
+				this.pipelineCommand(commands[k]);
+			}
+
+			/*
+			 * DATA is only sent ahead when no RCPT TO failure can abort a transaction that
+			 * still has valid recipients: once accepted, the data phase can't be cancelled.
+			 */
+			boolean chunking = this.chunkSize > 0 && this.supportsExtension("CHUNKING");
+			if (!chunking && (sendPartial || this.addresses.length == 1)) {
+				this.pipelineCommand("DATA");
+				this.dataPipelined = true;
+			}
+
+			if (this.resetPipelined) {
+				this.resetPipelined = false;
+				if (this.nextPipelinedReply() != 250) {
+					String _lsr = this.lastServerResponse;
+					int _lrc = this.lastReturnCode;
+					this.discardPipelinedReplies();
+					this.lastServerResponse = _lsr;
+					this.lastReturnCode = _lrc;
+					throw new MessagingException(_lsr);
+				}
+			}
+
+			if (this.pipelinedMailFrom != null) {
+				this.checkPipelinedMailFrom();
 			}
+		}
+
+		this.validSentAddr = this.validUnsentAddr = this.invalidAddr = null;
 
-			this.sendCommand(cmd);
-			int retCode = this.readServerResponse();
+		for (k = 0; k < this.addresses.length; ++k) {
+			sfex = null;
+			InternetAddress ia = (InternetAddress) this.addresses[k];
+			String cmd = commands[k];
+			int retCode;
+			if (this.pipelining) {
+				retCode = this.nextPipelinedReply();
+			} else {
+				this.sendCommand(cmd);
+				retCode = this.readServerResponse();
+			}
 			SMTPAddressSucceededException sfex;
 			switch (retCode) {
 				case 250 :
@@ -1208,6 +1427,7 @@ public class SMTPTransport extends Transport {
 
 							String _lsr = this.lastServerResponse;
 							int _lrc = this.lastReturnCode;
+							this.discardPipelinedReplies();
 							if (this.serverSocket != null) {
 								this.issueCommand("RSET", -1);
 							}
@@ -1307,6 +1527,7 @@ public class SMTPTransport extends Transport {
 			lrc = this.lastReturnCode;
 
 			try {
+				this.discardPipelinedReplies();
 				if (this.serverSocket != null) {
 					this.issueCommand("RSET", -1);
 				}
@@ -1329,7 +1550,13 @@ public class SMTPTransport extends Transport {
 	protected OutputStream data() throws MessagingException {
 		assert Thread.holdsLock(this);
 
-		this.issueSendCommand("DATA", 354);
+		if (this.dataPipelined) {
+			this.dataPipelined = false;
+			this.checkSendResponse("DATA", this.nextPipelinedReply(), 354);
+		} else {
+			this.issueSendCommand("DATA", 354);
+		}
+
 		this.dataStream = new SMTPOutputStream(this.serverOutput);
 		return this.dataStream;
 	}
@@ -1524,8 +1751,11 @@ public class SMTPTransport extends Transport {
 
 	private void issueSendCommand(String cmd, int expect) throws MessagingException {
 		this.sendCommand(cmd);
-		int ret;
-		if ((ret = this.readServerResponse()) != expect) {
+		this.checkSendResponse(cmd, this.readServerResponse(), expect);
+	}
+
+	private void checkSendResponse(String cmd, int ret, int expect) throws MessagingException {
+		if (ret != expect) {
 			int vsl = this.validSentAddr == null ? 0 : this.validSentAddr.length;
 			int vul = this.validUnsentAddr == null ? 0 : this.validUnsentAddr.length;
 			Address[] valid = new Address[vsl + vul];
@@ -1584,6 +1814,98 @@ public class SMTPTransport extends Transport {
 		}
 	}
 
+	private void pipelineCommand(String cmd) throws MessagingException {
+		assert Thread.holdsLock(this);
+
+		try {
+			this.serverOutput.write(this.toBytes(cmd));
+			this.serverOutput.write(CRLF);
+		} catch (IOException var3) {
+			throw new MessagingException("Can't send command to SMTP host", var3);
+		}
+
+		this.commandPipelined();
+	}
+
+	/**
+	 * Accounts for a command written without waiting for its reply (RFC 2920). Replies are
+	 * read once a window of commands is outstanding, so that the server never blocks on
+	 * a full socket writing replies nobody reads.
+	 */
+	private void commandPipelined() throws MessagingException {
+		if (++this.unreadReplies >= PIPELINE_WINDOW) {
+			this.readPipelinedReplies();
+		}
+
+	}
+
+	private void readPipelinedReplies() throws MessagingException {
+		try {
+			this.serverOutput.flush();
+		} catch (IOException var2) {
+			throw new MessagingException("Can't send command to SMTP host", var2);
+		}
+
+		while (this.unreadReplies > 0) {
+			int code = this.readServerResponse();
+			--this.unreadReplies;
+			this.pipelinedReplies.add(new Reply(code, this.lastServerResponse));
+		}
+
+	}
+
+	/**
+	 * Reads the replies to pipelined commands that have already arrived, without waiting
+	 * for the others.
+	 */
+	private void readAvailableReplies() throws MessagingException {
+		try {
+			while (this.unreadReplies > 0 && this.serverInput.available() > 0) {
+				int code = this.readServerResponse();
+				--this.unreadReplies;
+				this.pipelinedReplies.add(new Reply(code, this.lastServerResponse));
+			}
+
+		} catch (IOException var2) {
+			throw new MessagingException("Can't read SMTP server response", var2);
+		}
+	}
+
+	private boolean hasPipelinedReplies() {
+		return this.unreadReplies > 0 || !this.pipelinedReplies.isEmpty();
+	}
+
+	/**
+	 * @return code of the reply to the oldest pipelined command, also set as last server
+	 *         response
+	 */
+	private int nextPipelinedReply() throws MessagingException {
+		if (this.pipelinedReplies.isEmpty()) {
+			this.readPipelinedReplies();
+		}
+
+		Reply reply = (Reply) this.pipelinedReplies.poll();
+		this.lastServerResponse = reply.response;
+		this.lastReturnCode = reply.code;
+		return reply.code;
+	}
+
+	/**
+	 * Reads replies of the transaction being abandoned. If DATA was sent ahead and
+	 * accepted, the connection is closed: ending the data phase would send the message.
+	 */
+	private void discardPipelinedReplies() throws MessagingException {
+		while (this.hasPipelinedReplies()) {
+			int code = this.nextPipelinedReply();
+			if (this.dataPipelined && !this.hasPipelinedReplies() && code == 354) {
+				this.logger.fine("pipelined DATA accepted for an abandoned transaction, closing");
+				this.closeConnection();
+			}
+		}
+
+		this.dataPipelined = false;
+	}
+
 	protected int readServerResponse() throws MessagingException {
 		assert Thread.holdsLock(this);
 
@@ -1757,6 +2079,10 @@ public class SMTPTransport extends Transport {
 	private void sendMessageEnd() {
 	}
 
+	/**
+	 * Sends BDAT chunks of the configured size. Small writes are buffered; larger ones are
+	 * sent straight from the caller's array, after the buffered bytes, without being copied.
+	 */
 	private class ChunkedOutputStream extends OutputStream {
 		private final OutputStream out;
 		private final byte[] buf;
@@ -1776,62 +2102,187 @@ public class SMTPTransport extends Transport {
 		}
 
 		public void write(byte[] b, int off, int len) throws IOException {
-			while (len > 0) {
-				int size = Math.min(this.buf.length - this.count, len);
-				if (size == this.buf.length) {
-					this.bdat(b, off, size, false);
-				} else {
-					System.arraycopy(b, off, this.buf, this.count, size);
-					this.count += size;
-				}
+			if (this.count + len < this.buf.length) {
+				System.arraycopy(b, off, this.buf, this.count, len);
+				this.count += len;
+				return;
+			}
 
-				off += size;
-				len -= size;
-				if (this.count >= this.buf.length) {
-					this.flush();
-				}
+			int size = this.buf.length - this.count;
+			this.bdat(b, off, size, false);
+			this.count = 0;
+			off += size;
+
+			for (len -= size; len >= this.buf.length; len -= this.buf.length) {
+				this.bdat(b, off, this.buf.length, false);
+				off += this.buf.length;
 			}
 
+			System.arraycopy(b, off, this.buf, 0, len);
+			this.count = len;
 		}
 
 		public void flush() throws IOException {
-			this.bdat(this.buf, 0, this.count, false);
+			this.bdat(this.buf, 0, 0, false);
 			this.count = 0;
 		}
 
 		public void close() throws IOException {
-			this.bdat(this.buf, 0, this.count, true);
+			this.bdat(this.buf, 0, 0, true);
 			this.count = 0;
 		}
 
+		/**
+		 * Sends the buffered bytes followed by <code>len</code> bytes of <code>b</code> as
+		 * one chunk.
+		 */
 		private void bdat(byte[] b, int off, int len, boolean last) throws IOException {
-			if (len > 0 || last) {
+			int size = this.count + len;
+			if (size > 0 || last) {
+				if (SMTPTransport.this.pipelining) {
+					this.pipelinedBdat(b, off, len, last);
+					return;
+				}
+
 				try {
 					if (last) {
-						SMTPTransport.this.sendCommand("BDAT " + len + " LAST");
+						SMTPTransport.this.sendCommand("BDAT " + size + " LAST");
 					} else {
-						SMTPTransport.this.sendCommand("BDAT " + len);
+						SMTPTransport.this.sendCommand("BDAT " + size);
 					}
 
-					this.out.write(b, off, len);
+					this.writeChunk(b, off, len);
 					this.out.flush();
 					int ret = SMTPTransport.this.readServerResponse();
 					if (ret != 250) {
 						throw new IOException(SMTPTransport.this.lastServerResponse);
 					}
-				} catch (MessagingException var6) {
-					throw new IOException("BDAT write exception", var6);
+				} catch (MessagingException var7) {
+					throw new IOException("BDAT write exception", var7);
+				}
+			}
+
+		}
+
+		/**
+		 * Chunks are sent without waiting for their replies, which are all checked with the
+		 * last one (RFC 3030). Replies already received are read as chunks are sent.
+		 */
+		private void pipelinedBdat(byte[] b, int off, int len, boolean last) throws IOException {
+			int size = this.count + len;
+
+			try {
+				this.out.write(SMTPTransport.this.toBytes(last ? "BDAT " + size + " LAST" : "BDAT " + size));
+				this.out.write(CRLF);
+				this.writeChunk(b, off, len);
+				SMTPTransport.this.commandPipelined();
+				if (last) {
+					String failure = null;
+					while (SMTPTransport.this.hasPipelinedReplies()) {
+						if (SMTPTransport.this.nextPipelinedReply() != 250 && failure == null) {
+							failure = SMTPTransport.this.lastServerResponse;
+						}
+					}
+
+					if (failure != null) {
+						throw new IOException(failure);
+					}
+				} else {
+					SMTPTransport.this.readAvailableReplies();
 				}
+			} catch (MessagingException var7) {
+				throw new IOException("BDAT write exception", var7);
+			}
+		}
+
+		/**
+		 * Slices larger than the output buffer go directly to the socket.
+		 */
+		private void writeChunk(byte[] b, int off, int len) throws IOException {
+			if (this.count > 0) {
+				this.out.write(this.buf, 0, this.count);
+			}
+
+			if (len > 0) {
+				this.out.write(b, off, len);
 			}
 
 		}
 	}
 
+	private static final class Reply {
+		final int code;
+		final String response;
+
+		Reply(int code, String response) {
+			this.code = code;
+			this.response = response;
+		}
+	}
+
+	/**
+	 * BDAT data isn't dot-stuffed (RFC 3030). Line breaks are canonicalized and runs of
+	 * bytes that don't need it are passed through in a single write, so that a message
+	 * already in canonical form reaches {@link ChunkedOutputStream} in large slices.
+	 */
 	private class BDATOutputStream extends SMTPOutputStream {
 		public BDATOutputStream(OutputStream out, int size) {
 			super(SMTPTransport.this.new ChunkedOutputStream(out, size));
 		}
 
+		public void write(int b) throws IOException {
+			if (b == 13) {
+				this.out.write(CRLF);
+				this.atBOL = true;
+			} else if (b == 10) {
+				if (this.lastb != 13) {
+					this.out.write(CRLF);
+				}
+
+				this.atBOL = true;
+			} else {
+				this.out.write(b);
+				this.atBOL = false;
+			}
+
+			this.lastb = b;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			int start = off;
+			int lastc = this.lastb;
+			len += off;
+
+			for (int i = off; i < len; ++i) {
+				byte c = b[i];
+				if (c == 13 && (i + 1 >= len || b[i + 1] != 10)) {
+					this.out.write(b, start, i - start);
+					this.out.write(CRLF);
+					start = i + 1;
+				} else if (c == 10) {
+					if (lastc != 13) {
+						this.out.write(b, start, i - start);
+						this.out.write(CRLF);
+						start = i + 1;
+					} else if (i == off) {
+						start = i + 1;
+					}
+				}
+
+				lastc = c;
+			}
+
+			if (len - start > 0) {
+				this.out.write(b, start, len - start);
+			}
+
+			if (len > off) {
+				this.lastb = lastc;
+				this.atBOL = lastc == 10 || lastc == 13;
+			}
+
+		}
+
 		public void close() throws IOException {
 			this.out.close();
 		}
@@ -0,0 +1,473 @@
+package org.eclipse.angus.mail.smtp;
+
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import org.eclipse.angus.mail.util.MailLogger;
+import org.eclipse.angus.mail.util.PropUtil;
+
+/**
+ * A pool of connected, authenticated SMTP transports shared by sending threads.
+ *
+ * A transport is leased for one or more messages, then released back to the pool, or
+ * invalidated if it should not be reused. Idle transports are checked with NOOP (or RSET
+ * if <code>mail.smtp.userset</code> is set) before being leased again, and closed once
+ * idle for too long or once they have sent their maximum number of messages.
+ *
+ * Configuration, where <code>smtp</code> is the protocol name:
+ * <ul>
+ * <li><code>mail.smtp.connectionpoolsize</code>: max nb of connections (default 4)</li>
+ * <li><code>mail.smtp.connectionpoolminsize</code>: nb of connections pruning keeps
+ * open (default 0)</li>
+ * <li><code>mail.smtp.connectionpooltimeout</code>: idle time after which a connection is
+ * closed, in ms (default 45000)</li>
+ * <li><code>mail.smtp.connectionpoolcheckinterval</code>: idle time after which a
+ * connection is checked before reuse, in ms (default 1000)</li>
+ * <li><code>mail.smtp.connectionpoolmaxmessages</code>: messages sent over a connection
+ * before it is closed, -1 for no limit (default 100)</li>
+ * <li><code>mail.smtp.connectionpoolwaittimeout</code>: max time to wait for a connection
+ * when all are leased, in ms, -1 to wait forever (default -1)</li>
+ * <li><code>mail.smtp.pruninginterval</code>: min time between two prunings, in ms
+ * (default 60000)</li>
+ * </ul>
+ */
+public class SMTPTransportPool implements AutoCloseable {
+	private final Session session;
+	private final String name;
+	private final String host;
+	private final int port;
+	private final String user;
+	private final String password;
+	private final MailLogger logger;
+	private final int poolSize;
+	private final int minSize;
+	private final long idleTimeout;
+	private final long checkInterval;
+	private final int maxMessages;
+	private final long waitTimeout;
+	private final long pruningInterval;
+	private final ArrayDeque<PooledTransport> idleTransports = new ArrayDeque();
+	private final Map<SMTPTransport, PooledTransport> leasedTransports = new IdentityHashMap();
+	private int nConnecting = 0;
+	private long lastTimePruned = System.currentTimeMillis();
+	private boolean isClosed = false;
+	private long leaseCount = 0L;
+	private long waitCount = 0L;
+	private long waitTime = 0L;
+	private long maxWaitTime = 0L;
+	private long createdCount = 0L;
+	private long closedCount = 0L;
+	private long failedCheckCount = 0L;
+
+	/**
+	 *
+	 * @param session
+	 * @param name protocol name (<code>smtp</code> or <code>smtps</code>)
+	 * @param host server host, <code>null</code> for <code>mail.smtp.host</code>
+	 * @param port server port, -1 for <code>mail.smtp.port</code> or default port
+	 * @param user user name, <code>null</code> for <code>mail.smtp.user</code>
+	 * @param password password, <code>null</code> if not authenticating
+	 */
+	public SMTPTransportPool(Session session, String name, String host, int port, String user, String password) {
+		this.session = session;
+		this.name = name;
+		this.host = host;
+		this.port = port;
+		this.user = user;
+		this.password = password;
+		Properties props = session.getProperties();
+		boolean debug = PropUtil.getBooleanProperty(props, "mail." + name + ".connectionpool.debug", false);
+		this.logger = new MailLogger(this.getClass(), "DEBUG SMTP CP", debug || session.getDebug(),
+				session.getDebugOut());
+		this.poolSize = Math.max(1, PropUtil.getIntProperty(props, "mail." + name + ".connectionpoolsize", 4));
+		this.minSize = Math.min(this.poolSize,
+				Math.max(0, PropUtil.getIntProperty(props, "mail." + name + ".connectionpoolminsize", 0)));
+		this.idleTimeout = (long) PropUtil.getIntProperty(props, "mail." + name + ".connectionpooltimeout", 45000);
+		this.checkInterval = (long) PropUtil.getIntProperty(props, "mail." + name + ".connectionpoolcheckinterval",
+				1000);
+		this.maxMessages = PropUtil.getIntProperty(props, "mail." + name + ".connectionpoolmaxmessages", 100);
+		this.waitTimeout = (long) PropUtil.getIntProperty(props, "mail." + name + ".connectionpoolwaittimeout", -1);
+		this.pruningInterval = (long) PropUtil.getIntProperty(props, "mail." + name + ".pruninginterval", 60000);
+		if (this.logger.isLoggable(Level.CONFIG)) {
+			this.logger.config("pool size: " + this.minSize + ".." + this.poolSize + ", idle timeout: "
+					+ this.idleTimeout + ", max messages: " + this.maxMessages);
+		}
+
+	}
+
+	public SMTPTransportPool(Session session, String name) {
+		this(session, name, (String) null, -1, (String) null, (String) null);
+	}
+
+	/**
+	 * Leases a connected transport, reusing an idle one if any, opening a new one if the
+	 * pool is not full, waiting for one to be released otherwise. The transport must be
+	 * given back with {@link #release(SMTPTransport)} or {@link #invalidate(SMTPTransport)}.
+	 *
+	 * @return connected transport
+	 * @throws MessagingException if no connection could be opened, or if wait timed out
+	 */
+	public SMTPTransport lease() throws MessagingException {
+		long start = System.nanoTime();
+		boolean waited = false;
+
+		while (true) {
+			PooledTransport pooled;
+			List<PooledTransport> expired;
+			synchronized (this) {
+				if (this.isClosed) {
+					throw new IllegalStateException("SMTP transport pool is closed");
+				}
+
+				expired = this.expire(false);
+				pooled = (PooledTransport) this.idleTransports.pollFirst();
+				if (pooled == null) {
+					if (this.size() >= this.poolSize) {
+						long remaining = this.waitTimeout < 0L
+								? 0L
+								: this.waitTimeout - (System.nanoTime() - start) / 1000000L;
+						if (this.waitTimeout >= 0L && remaining <= 0L) {
+							this.recordWait(start, true);
+							throw new MessagingException(
+									"No SMTP connection available after " + this.waitTimeout + " ms");
+						}
+
+						waited = true;
+
+						try {
+							this.wait(remaining);
+						} catch (InterruptedException var10) {
+							Thread.currentThread().interrupt();
+							throw new MessagingException("Interrupted waiting for an SMTP connection", var10);
+						}
+						continue;
+					}
+
+					/* slot reserved, connection opened without holding the pool */
+					++this.nConnecting;
+				} else {
+					this.leasedTransports.put(pooled.transport, pooled);
+				}
+			}
+
+			this.close(expired);
+			if (pooled == null) {
+				pooled = this.open();
+			} else if (System.currentTimeMillis() - pooled.lastUsed > this.checkInterval
+					&& !pooled.transport.isConnected()) {
+				this.logger.fine("idle connection failed liveness check, discarding");
+				synchronized (this) {
+					this.leasedTransports.remove(pooled.transport);
+					++this.failedCheckCount;
+					this.discarded();
+				}
+				continue;
+			}
+
+			synchronized (this) {
+				++this.leaseCount;
+				this.recordWait(start, waited);
+			}
+
+			return pooled.transport;
+		}
+	}
+
+	/**
+	 * Gives back a leased transport, kept for reuse unless it has been disconnected or has
+	 * reached its message limit.
+	 *
+	 * @param transport
+	 */
+	public void release(SMTPTransport transport) {
+		PooledTransport pooled;
+		List<PooledTransport> expired;
+		synchronized (this) {
+			pooled = (PooledTransport) this.leasedTransports.remove(transport);
+			if (pooled == null) {
+				throw new IllegalArgumentException("Transport not leased from this pool");
+			}
+
+			pooled.lastUsed = System.currentTimeMillis();
+			if (!this.isClosed && transport.isOpen()
+					&& (this.maxMessages < 0 || transport.getMessageCount() < this.maxMessages)) {
+				this.idleTransports.addFirst(pooled);
+				this.notifyAll();
+				expired = this.expire(false);
+			} else {
+				if (this.logger.isLoggable(Level.FINE)) {
+					this.logger.fine("not reusing connection, messages sent: " + transport.getMessageCount());
+				}
+
+				this.discarded();
+				expired = null;
+			}
+		}
+
+		if (expired == null) {
+			this.close(pooled);
+		} else {
+			this.close(expired);
+		}
+
+	}
+
+	/**
+	 * Gives back a leased transport that must not be reused (e.g. after an error leaving
+	 * the SMTP session in an unknown state). The transport is closed.
+	 *
+	 * @param transport
+	 */
+	public void invalidate(SMTPTransport transport) {
+		PooledTransport pooled;
+		synchronized (this) {
+			pooled = (PooledTransport) this.leasedTransports.remove(transport);
+			if (pooled == null) {
+				throw new IllegalArgumentException("Transport not leased from this pool");
+			}
+
+			this.discarded();
+		}
+
+		this.close(pooled);
+	}
+
+	/**
+	 * Sends a message over a pooled connection.
+	 *
+	 * @param message
+	 * @param addresses
+	 * @throws MessagingException
+	 */
+	public void sendMessage(Message message, Address[] addresses) throws MessagingException {
+		SMTPTransport transport = this.lease();
+		boolean released = false;
+
+		try {
+			transport.sendMessage(message, addresses);
+		} catch (MessagingException var9) {
+			/* address failures leave the session usable, anything else does not */
+			if (!(var9 instanceof SendFailedException) || !transport.isOpen()) {
+				released = true;
+				this.invalidate(transport);
+			}
+
+			throw var9;
+		} catch (RuntimeException var10) {
+			released = true;
+			this.invalidate(transport);
+			throw var10;
+		} finally {
+			if (!released) {
+				this.release(transport);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Closes idle connections that have timed out, keeping at least the min size of
+	 * connections open.
+	 */
+	public void prune() {
+		List<PooledTransport> expired;
+		synchronized (this) {
+			expired = this.expire(true);
+		}
+
+		this.close(expired);
+	}
+
+	/**
+	 * @return idle connections removed from the pool, to be closed once the pool is no
+	 *         longer locked (QUIT is a round trip)
+	 */
+	private List<PooledTransport> expire(boolean force) {
+		assert Thread.holdsLock(this);
+
+		List<PooledTransport> expired = null;
+		long now = System.currentTimeMillis();
+		if (force || now - this.lastTimePruned >= this.pruningInterval) {
+			this.lastTimePruned = now;
+			Iterator<PooledTransport> iterator = this.idleTransports.descendingIterator();
+
+			/* least recently used first */
+			while (iterator.hasNext() && this.size() > this.minSize) {
+				PooledTransport pooled = (PooledTransport) iterator.next();
+				if (now - pooled.lastUsed <= this.idleTimeout) {
+					break;
+				}
+
+				iterator.remove();
+				++this.closedCount;
+				if (expired == null) {
+					expired = new ArrayList();
+				}
+
+				expired.add(pooled);
+			}
+
+			if (expired != null && this.logger.isLoggable(Level.FINE)) {
+				this.logger.fine("pruning " + expired.size() + " idle connections");
+			}
+		}
+
+		return expired;
+	}
+
+	/**
+	 * Closes idle connections, and leased ones as they are released.
+	 */
+	public void close() {
+		List<PooledTransport> idle;
+		synchronized (this) {
+			this.isClosed = true;
+			idle = new ArrayList(this.idleTransports);
+			this.closedCount += (long) idle.size();
+			this.idleTransports.clear();
+			this.notifyAll();
+		}
+
+		this.close(idle);
+	}
+
+	private PooledTransport open() throws MessagingException {
+		PooledTransport pooled = null;
+
+		try {
+			SMTPTransport transport = (SMTPTransport) this.session.getTransport(this.name);
+			transport.connect(this.host, this.port, this.user, this.password);
+			pooled = new PooledTransport(transport);
+			this.logger.fine("opened a new connection");
+		} finally {
+			synchronized (this) {
+				--this.nConnecting;
+				if (pooled != null) {
+					this.leasedTransports.put(pooled.transport, pooled);
+					++this.createdCount;
+				} else {
+					this.notifyAll();
+				}
+			}
+
+		}
+
+		return pooled;
+	}
+
+	private void discarded() {
+		assert Thread.holdsLock(this);
+
+		++this.closedCount;
+		this.notifyAll();
+	}
+
+	private void close(PooledTransport pooled) {
+		try {
+			pooled.transport.close();
+		} catch (MessagingException var3) {
+			this.logger.log(Level.FINE, "close failed", var3);
+		}
+
+	}
+
+	private void close(List<PooledTransport> pooled) {
+		if (pooled != null) {
+			for (PooledTransport p : pooled) {
+				this.close(p);
+			}
+		}
+
+	}
+
+	private void recordWait(long start, boolean waited) {
+		assert Thread.holdsLock(this);
+
+		if (waited) {
+			long time = System.nanoTime() - start;
+			++this.waitCount;
+			this.waitTime += time;
+			this.maxWaitTime = Math.max(this.maxWaitTime, time);
+		}
+
+	}
+
+	private int size() {
+		return this.idleTransports.size() + this.leasedTransports.size() + this.nConnecting;
+	}
+
+	public synchronized int getIdleCount() {
+		return this.idleTransports.size();
+	}
+
+	public synchronized int getLeasedCount() {
+		return this.leasedTransports.size();
+	}
+
+	public synchronized long getLeaseCount() {
+		return this.leaseCount;
+	}
+
+	/**
+	 * @return nb of leases that had to wait for a connection to be released
+	 */
+	public synchronized long getWaitCount() {
+		return this.waitCount;
+	}
+
+	/**
+	 * @return total time spent waiting for a connection, in ns
+	 */
+	public synchronized long getWaitTime() {
+		return this.waitTime;
+	}
+
+	/**
+	 * @return longest wait for a connection, in ns
+	 */
+	public synchronized long getMaxWaitTime() {
+		return this.maxWaitTime;
+	}
+
+	/**
+	 * @return nb of connections opened (churn, with {@link #getClosedCount()})
+	 */
+	public synchronized long getCreatedCount() {
+		return this.createdCount;
+	}
+
+	/**
+	 * @return nb of connections closed: pruned, failed, invalidated or at message limit
+	 */
+	public synchronized long getClosedCount() {
+		return this.closedCount;
+	}
+
+	/**
+	 * @return nb of idle connections found dead when leased
+	 */
+	public synchronized long getFailedCheckCount() {
+		return this.failedCheckCount;
+	}
+
+	private static final class PooledTransport {
+		final SMTPTransport transport;
+		long lastUsed;
+
+		PooledTransport(SMTPTransport transport) {
+			this.transport = transport;
+			this.lastUsed = System.currentTimeMillis();
+		}
+	}
+}
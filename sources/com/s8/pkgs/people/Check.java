@@ -2,16 +2,95 @@ package com.s8.pkgs.people;
 
 import java.util.regex.Pattern;
 
+
+/**
+ * A named validation rule.
+ *
+ * Rules are either regex-based (legacy) or compiled: character-class, length and
+ * email address rules, meant to be grouped in a {@link CheckSet} which evaluates all
+ * of them in a single linear pass.
+ */
 public class Check {
-	
-	
+
+
+	public enum Kind {
+
+		/** value matches regex */
+		REGEX,
+
+		/** value contains at least one char of class */
+		CONTAINS,
+
+		/** value contains only chars of class */
+		ONLY,
+
+		/** value length (in code points, as regex <code>.{n,}</code>) is at least <code>length</code> */
+		MIN_LENGTH,
+
+		/** value length (in code points) is at most <code>length</code> */
+		MAX_LENGTH,
+
+		/** value is an email address (<code>[\w.-]+@([\w-]+\.)+[\w-]{2,4}</code>) */
+		EMAIL_ADDRESS,
+
+		/** value has no line terminator (every char matches regex <code>.</code>) */
+		SINGLE_LINE;
+	}
+
+
+	/**
+	 *
+	 * @param rule
+	 * @param chars char class, e.g. <code>A-Z</code> or <code>#?!@$%^&amp;*-</code> (ASCII only,
+	 * a '-' being literal when first or last)
+	 * @return check
+	 */
+	public static Check contains(String rule, String chars) {
+		return new Check(rule, Kind.CONTAINS, parseClass(chars), 0);
+	}
+
+	/**
+	 *
+	 * @param rule
+	 * @param chars char class (see {@link #contains(String, String)})
+	 * @return check
+	 */
+	public static Check only(String rule, String chars) {
+		return new Check(rule, Kind.ONLY, parseClass(chars), 0);
+	}
+
+	public static Check minLength(String rule, int length) {
+		return new Check(rule, Kind.MIN_LENGTH, null, length);
+	}
+
+	public static Check maxLength(String rule, int length) {
+		return new Check(rule, Kind.MAX_LENGTH, null, length);
+	}
+
+	public static Check emailAddress(String rule) {
+		return new Check(rule, Kind.EMAIL_ADDRESS, null, 0);
+	}
+
+	public static Check singleLine(String rule) {
+		return new Check(rule, Kind.SINGLE_LINE, null, 0);
+	}
+
+
 	public final String rule;
-	
+
+	/** <code>null</code> unless kind is {@link Kind#REGEX} */
 	public final Pattern pattern;
 
-	
+	public final Kind kind;
+
+	/** ASCII char class, as a 128-bit set */
+	final long[] charClass;
+
+	final int length;
+
+
 	/**
-	 * 
+	 *
 	 * @param rule
 	 * @param pattern
 	 */
@@ -19,12 +98,68 @@ public class Check {
 		super();
 		this.rule = rule;
 		this.pattern = Pattern.compile(regex);
+		this.kind = Kind.REGEX;
+		this.charClass = null;
+		this.length = 0;
+	}
+
+
+	private Check(String rule, Kind kind, long[] charClass, int length) {
+		super();
+		this.rule = rule;
+		this.pattern = null;
+		this.kind = kind;
+		this.charClass = charClass;
+		this.length = length;
+	}
+
+
+	/**
+	 * Evaluate this check alone (prefer {@link CheckSet} for several checks).
+	 *
+	 * @param value
+	 * @return <code>true</code> if passed
+	 */
+	public boolean test(String value) {
+		switch(kind) {
+		case REGEX: return pattern.matcher(value).matches();
+		default: return new CheckSet(this).isValid(value);
+		}
+	}
+
+
+	/** line terminators, as excluded by regex <code>.</code> */
+	static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+
+	boolean isInClass(char c) {
+		return c < 128 && (charClass[c >>> 6] & (1L << c)) != 0;
+	}
+
+
+	private static long[] parseClass(String chars) {
+		long[] set = new long[2];
+		int n = chars.length();
+		for(int i = 0; i < n; i++) {
+			char c = chars.charAt(i);
+			if(i + 2 < n && chars.charAt(i + 1) == '-') {
+				char end = chars.charAt(i + 2);
+				for(char x = c; x <= end; x++) { add(set, x); }
+				i += 2;
+			}
+			else {
+				add(set, c);
+			}
+		}
+		return set;
+	}
+
+
+	private static void add(long[] set, char c) {
+		if(c >= 128) { throw new IllegalArgumentException("Only ASCII char classes are supported"); }
+		set[c >>> 6] |= 1L << c;
 	}
-	
-	
-	
-	
-	
-	//(?=.*[A-Z])(?=.*[0-9])
 
 }
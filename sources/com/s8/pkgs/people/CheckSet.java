@@ -0,0 +1,160 @@
+package com.s8.pkgs.people;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A set of {@link Check}s compiled into a single-pass scanner: per-char class
+ * membership is precomputed as one bit mask, so every char-class, length and email
+ * address rule is evaluated in one linear pass, whatever the input. All failed rules
+ * are reported at once.
+ */
+public class CheckSet {
+
+
+	/* email address automaton states */
+
+	private static final int LOCAL_START = 0, LOCAL = 1, LABEL_START = 2, LABEL = 3, FAILED = 4;
+
+
+	private final Check[] checks;
+
+	/** per ASCII char, bit i set if char is in class of check i */
+	private final long[] masks = new long[128];
+
+	private final long onlyBits;
+
+	private final boolean hasEmailAddressCheck;
+
+
+
+	/**
+	 *
+	 * @param checks (at most 64)
+	 */
+	public CheckSet(Check... checks) {
+		super();
+		if(checks.length > 64) { throw new IllegalArgumentException("At most 64 checks per set"); }
+		this.checks = checks;
+		long onlyBits = 0;
+		boolean hasEmailAddressCheck = false;
+		for(int i = 0; i < checks.length; i++) {
+			Check check = checks[i];
+			switch(check.kind) {
+			case ONLY: onlyBits |= 1L << i; break;
+			case EMAIL_ADDRESS: hasEmailAddressCheck = true; break;
+			default: break;
+			}
+			if(check.charClass != null) {
+				for(char c = 0; c < 128; c++) {
+					if(check.isInClass(c)) { masks[c] |= 1L << i; }
+				}
+			}
+		}
+		this.onlyBits = onlyBits;
+		this.hasEmailAddressCheck = hasEmailAddressCheck;
+	}
+
+
+	/**
+	 *
+	 * @param value
+	 * @return <code>true</code> if all checks pass
+	 */
+	public boolean isValid(String value) {
+		return scan(value, true).isEmpty();
+	}
+
+
+	/**
+	 *
+	 * @param value
+	 * @return all failed checks (empty if value is valid)
+	 */
+	public List<Check> scan(String value) {
+		return scan(value, false);
+	}
+
+
+	/**
+	 *
+	 * @param value
+	 * @param separator
+	 * @return rules of failed checks, joined with separator (empty string if valid)
+	 */
+	public String describeFailures(String value, String separator) {
+		StringBuilder builder = new StringBuilder();
+		for(Check check : scan(value, false)) {
+			if(builder.length() > 0) { builder.append(separator); }
+			builder.append(check.rule);
+		}
+		return builder.toString();
+	}
+
+
+	private List<Check> scan(String value, boolean isStoppingEarly) {
+		if(value == null) { value = ""; }
+
+		long seen = 0, outside = 0;
+		boolean hasLineTerminator = false;
+		int state = LOCAL_START, nLabels = 0, labelLength = 0;
+
+		/* lengths are in code points, as matched by regex: surrogate pairs count once */
+		int n = value.length(), nCodePoints = 0;
+		for(int i = 0; i < n; i++) {
+			char c = value.charAt(i);
+			if(!Character.isLowSurrogate(c) || i == 0 || !Character.isHighSurrogate(value.charAt(i - 1))) { nCodePoints++; }
+			long mask = c < 128 ? masks[c] : 0;
+			seen |= mask;
+			outside |= ~mask & onlyBits;
+			if(Check.isLineTerminator(c)) { hasLineTerminator = true; }
+
+			if(hasEmailAddressCheck) {
+				boolean isWord = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+				switch(state) {
+				case LOCAL_START:
+				case LOCAL:
+					if(isWord || c == '.') { state = LOCAL; }
+					else if(c == '@' && state == LOCAL) { state = LABEL_START; }
+					else { state = FAILED; }
+					break;
+				case LABEL_START:
+					if(isWord) { state = LABEL; labelLength = 1; }
+					else { state = FAILED; }
+					break;
+				case LABEL:
+					if(isWord) { labelLength++; }
+					else if(c == '.') { nLabels++; state = LABEL_START; }
+					else { state = FAILED; }
+					break;
+				default: break;
+				}
+			}
+		}
+
+		List<Check> failures = null;
+		for(int i = 0; i < checks.length; i++) {
+			Check check = checks[i];
+			boolean isPassed;
+			switch(check.kind) {
+			case CONTAINS: isPassed = (seen & (1L << i)) != 0; break;
+			case ONLY: isPassed = (outside & (1L << i)) == 0; break;
+			case MIN_LENGTH: isPassed = nCodePoints >= check.length; break;
+			case MAX_LENGTH: isPassed = nCodePoints <= check.length; break;
+			case EMAIL_ADDRESS: isPassed = state == LABEL && nLabels >= 1 && labelLength >= 2 && labelLength <= 4; break;
+			case SINGLE_LINE: isPassed = !hasLineTerminator; break;
+			case REGEX: isPassed = check.pattern.matcher(value).matches(); break;
+			default: isPassed = false; break;
+			}
+			if(!isPassed) {
+				if(failures == null) { failures = new ArrayList<>(checks.length); }
+				failures.add(check);
+				if(isStoppingEarly) { return failures; }
+			}
+		}
+		return failures != null ? failures : Collections.emptyList();
+	}
+
+}
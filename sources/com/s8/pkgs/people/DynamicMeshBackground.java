@@ -16,7 +16,7 @@ public class DynamicMeshBackground extends S8WebObject {
 	 * @param typeName
 	 */
 	public DynamicMeshBackground(S8WebFront front) {
-		super(front, WebSources.ROOT_PATH + "/DynamicMeshBackground");
+		super(front, WebSources.type("/DynamicMeshBackground"));
 	}
 	
 	
@@ -27,5 +27,34 @@ public class DynamicMeshBackground extends S8WebObject {
 	public void setParticleColor(int[] rgba) {
 		vertex.outbound().setUInt8ArrayField("particleColor", rgba);
 	}
+	
+	
+	/**
+	 * Upper bound: the client animates fewer particles if frames exceed its time budget.
+	 * 
+	 * @param amount nb of particles
+	 */
+	public void setParticleAmount(int amount) {
+		vertex.outbound().setUInt32Field("particleAmount", amount);
+	}
+	
+	
+	/**
+	 * Link cost grows with the square of this distance.
+	 * 
+	 * @param radius max distance between linked particles, in pixels
+	 */
+	public void setLinkRadius(float radius) {
+		vertex.outbound().setFloat32Field("linkRadius", radius);
+	}
+	
+	
+	/**
+	 * 
+	 * @param fps max frames per second (0: no cap, i.e. display refresh rate)
+	 */
+	public void setMaxFPS(int fps) {
+		vertex.outbound().setUInt8Field("maxFPS", fps);
+	}
 
 }
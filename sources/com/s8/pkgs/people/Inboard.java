@@ -1,10 +1,22 @@
 package com.s8.pkgs.people;
 
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.s8.api.flow.S8AsyncFlow;
 import com.s8.api.flow.S8User;
 import com.s8.api.web.S8WebFront;
+import com.s8.pkgs.people.mail.MailOutbox;
+import com.s8.pkgs.people.metrics.PeopleMetrics;
 import com.s8.pkgs.people.process.LoginManager;
 import com.s8.pkgs.people.process.SignupManager;
+import com.s8.pkgs.people.process.UserRowCache;
+import com.s8.pkgs.people.process.UsernameFilter;
+import com.s8.pkgs.people.security.BreachedPasswords;
+import com.s8.pkgs.people.security.LoginThrottle;
+import com.s8.pkgs.people.security.PasswordHashingEngine;
+import com.s8.pkgs.people.security.SessionTokens;
 
 public abstract class Inboard {
 	
@@ -16,12 +28,31 @@ public abstract class Inboard {
 	public final String title;
 	
 	
-	private InboardBox box;
+	/** idle time (ms) after which a session is evicted */
+	private volatile long sessionMaxIdleTime = 30 * 60 * 1000;
+	
+	private final ConcurrentHashMap<S8WebFront, InboardSession> sessions = new ConcurrentHashMap<>();
+	
+	private final AtomicLong lastPruneTime = new AtomicLong(System.currentTimeMillis());
+	
+	
+	private final SignupManager signupModule;
 	
+	private final LoginManager loginModule;
 	
-	private SignupManager signupModule;
+	/** 10 attempts per username, 50 per client, per 5 minutes */
+	private final LoginThrottle loginThrottle = new LoginThrottle(10, 50, 5 * 60 * 1000, 64);
 	
-	private LoginManager loginModule;
+	private final UserRowCache userRowCache = new UserRowCache(10000, 5 * 60 * 1000);
+	
+	/** remember-me tokens: 30 days, current key and previous one accepted */
+	private final SessionTokens sessionTokens = new SessionTokens(30L * 24 * 3600 * 1000, 2);
+	
+	private final PeopleMetrics metrics;
+	
+	private volatile BreachedPasswords breachedPasswords;
+	
+	private volatile MailOutbox mailOutbox;
 	
 	
 	
@@ -33,29 +64,94 @@ public abstract class Inboard {
 		this.usersTableId = usersTableId;
 		this.logoURL = logoURL;
 		this.title = title;
+		this.loginModule = new LoginManager(this);
+		this.signupModule = new SignupManager(this);
+		this.metrics = new PeopleMetrics(this);
 	}
 
 	
 	
-	public InboardBox getBox(S8WebFront front) {
-		if(box == null) {
-			box = new InboardBox(front);
-			box.setLogo(logoURL);
-			box.setTitle(title);
+	/**
+	 * Lock-free on existing sessions, session is otherwise lazily created.
+	 * 
+	 * @param front
+	 * @return the session of this front
+	 */
+	public InboardSession getSession(S8WebFront front) {
+		InboardSession session = sessions.get(front);
+		if(session == null) {
+			session = sessions.computeIfAbsent(front, f -> new InboardSession(this, f));
+			pruneIdleSessions();
+		}
+		session.touch();
+		return session;
+	}
+	
+	
+	/**
+	 * To be called on front disconnection.
+	 * 
+	 * @param front
+	 */
+	public void closeSession(S8WebFront front) {
+		sessions.remove(front);
+	}
+	
+	
+	/**
+	 * 
+	 * @param maxIdleTime in milliseconds
+	 */
+	public void setSessionMaxIdleTime(long maxIdleTime) {
+		this.sessionMaxIdleTime = maxIdleTime;
+	}
+	
+	
+	/**
+	 * 
+	 * @return nb of live sessions
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+	
+	
+	/**
+	 * Evict idle sessions, at most once per minute (piggy-backed on session creation).
+	 */
+	private void pruneIdleSessions() {
+		long now = System.currentTimeMillis();
+		long last = lastPruneTime.get();
+		if(now - last > 60 * 1000 && lastPruneTime.compareAndSet(last, now)) {
+			long threshold = now - sessionMaxIdleTime;
+			sessions.values().removeIf(session -> session.getLastAccessTime() < threshold);
 		}
-		return box;
+	}
+	
+	
+	
+	public InboardBox getBox(S8WebFront front) {
+		return getSession(front).getBox();
 	}
 	
 	
 
 	
+	/**
+	 * Stateless (per-front state being held by sessions), hence shared by all fronts.
+	 * 
+	 * @return log-in module
+	 */
 	public LoginManager getLoginModule() {
-		if(loginModule == null) { loginModule = new LoginManager(this); }
 		return loginModule;
 	}
 
+	/**
+	 * Stateless (per-front state being held by sessions), hence shared by all fronts.
+	 * 
+	 * @return sign-up module
+	 */
 	public SignupManager getSignupModule() {
-		if(signupModule == null) { signupModule = new SignupManager(this); }
 		return signupModule;
 	}
 	
@@ -67,9 +163,203 @@ public abstract class Inboard {
 
 
 	
+	/**
+	 * 
+	 * @return the negative-existence filter of the users table, <code>null</code> if none
+	 */
+	public UsernameFilter getUsersFilter() {
+		return UsernameFilter.get(usersTableId);
+	}
+	
+	
+	/**
+	 * Register (typically at startup) the filter answering for this inboard's users table.
+	 * 
+	 * @param filter built from a full list of usernames or restored from a snapshot
+	 * (see {@link UsernameFilter#restore(java.io.InputStream, long)})
+	 */
+	public void setUsersFilter(UsernameFilter filter) {
+		UsernameFilter.register(usersTableId, filter);
+	}
+	
+	
+	/**
+	 * 
+	 * @param username
+	 * @return <code>true</code> if username is known to be absent from users table (no I/O).
+	 * A hint for availability feedback and failed log-ins, never for account creation.
+	 */
+	public boolean isDefinitelyAbsent(String username) {
+		UsernameFilter filter = getUsersFilter();
+		return filter != null && filter.isDefinitelyAbsent(username);
+	}
+	
+	
+	
+	/**
+	 * 
+	 * @return log-in throttle (thresholds can be adjusted with {@link LoginThrottle#setThresholds})
+	 */
+	public LoginThrottle getLoginThrottle() {
+		return loginThrottle;
+	}
+	
+	
+	/**
+	 * Pull-based: scrape with {@link PeopleMetrics#snapshot()}.
+	 * 
+	 * @return metrics of this inboard
+	 */
+	public PeopleMetrics getMetrics() {
+		return metrics;
+	}
+	
+	
+	/**
+	 * 
+	 * @return cache of user rows read on log-in
+	 */
+	public UserRowCache getUserRowCache() {
+		return userRowCache;
+	}
+	
+	
+	/**
+	 * To be called whenever a user row is modified outside of this inboard (e.g. password
+	 * change), so that next log-in reads it again.
+	 * 
+	 * @param username
+	 */
+	public void onUserChanged(String username) {
+		userRowCache.invalidate(username);
+	}
+	
+	
+	/**
+	 * Keys can be rotated with {@link SessionTokens#rotateKey()}, or shared across nodes
+	 * with {@link SessionTokens#setKey(int, byte[])}.
+	 * 
+	 * @return remember-me tokens issuer and verifier
+	 */
+	public SessionTokens getSessionTokens() {
+		return sessionTokens;
+	}
+	
+	
+	/**
+	 * To be called on password change (or account compromise): all remember-me tokens
+	 * issued so far for this user are revoked.
+	 * 
+	 * @param username
+	 */
+	public void onPasswordChanged(String username) {
+		sessionTokens.revokeAll(username);
+		onUserChanged(username);
+	}
+	
+	
+	/**
+	 * Enable (typically at startup) screening of new passwords against known breached ones.
+	 * 
+	 * @param breachedPasswords mapped index (see {@link BreachedPasswords#open}), 
+	 * <code>null</code> to disable screening
+	 */
+	public void setBreachedPasswords(BreachedPasswords breachedPasswords) {
+		this.breachedPasswords = breachedPasswords;
+	}
+	
+	
+	/**
+	 * 
+	 * @param password
+	 * @return <code>true</code> if password is known to have been breached (no I/O: index is memory-mapped)
+	 */
+	public boolean isBreachedPassword(String password) {
+		BreachedPasswords breachedPasswords = this.breachedPasswords;
+		return breachedPasswords != null && breachedPasswords.isBreached(password);
+	}
+	
+	
+	/**
+	 * Override to return the remote address of the front, when known. Anything the
+	 * client can renew at will (e.g. the front itself, one per page load) would not
+	 * throttle it.
+	 * 
+	 * @param front
+	 * @return key of the client for throttling, <code>null</code> if unknown (log-in 
+	 * attempts are then only throttled by username)
+	 */
+	public String getClientKey(S8WebFront front) {
+		return null;
+	}
+	
+	
+	/**
+	 * Send verification mails through a durable outbox instead of inline with the flow,
+	 * typically at startup. Outbox sends are recorded in this inboard's mail metrics:
+	 * <code>new MailOutbox(journalPath, new SmtpMailSender(..., 4), 4, 32)</code>.
+	 * 
+	 * @param outbox the outbox (started here if not already), <code>null</code> to 
+	 * send inline again
+	 * @throws IOException if the outbox journal could not be opened
+	 */
+	public void setMailOutbox(MailOutbox outbox) throws IOException {
+		if(outbox != null) {
+			outbox.setMetrics(metrics.mailSendLatency, metrics.mailSendFailures);
+			outbox.start();
+		}
+		this.mailOutbox = outbox;
+	}
+	
+	
+	/**
+	 * 
+	 * @return the outbox set with {@link #setMailOutbox}, <code>null</code> if none
+	 */
+	public MailOutbox getMailOutbox() {
+		return mailOutbox;
+	}
+	
+	
+	/**
+	 * Override to use specific hashing parameters or pool sizing.
+	 * 
+	 * @return the engine hashing and verifying passwords
+	 */
+	public PasswordHashingEngine getPasswordHashingEngine() {
+		return PasswordHashingEngine.getDefault();
+	}
+	
+	
+	/**
+	 * Called on successful log-in when stored password was hashed with outdated
+	 * parameters (or not hashed at all). Override to persist the new hash.
+	 * 
+	 * @param front
+	 * @param flow
+	 * @param user
+	 * @param passwordHash encoded hash computed with current parameters
+	 */
+	public void onPasswordRehashed(S8WebFront front, S8AsyncFlow flow, S8User user, String passwordHash) {
+		/* no persistence by default */
+	}
+	
+	
+	
 	public abstract void onLogInSucceed(S8WebFront front, S8AsyncFlow flow, S8User user);
 	
 	
-	public abstract void onSignUpSucceed(S8WebFront front, S8AsyncFlow flow, String username, String password);
+	/**
+	 * Replaces <code>onSignUpSucceed(front, flow, username, password)</code>, which
+	 * received the plain password: the new name makes sub-classes storing it fail to
+	 * compile instead of silently storing a hash where a password was expected.
+	 * 
+	 * @param front
+	 * @param flow
+	 * @param username
+	 * @param passwordHash encoded password hash (never the plain password), to be stored as is
+	 * in the user row, where log-in expects it
+	 */
+	public abstract void onSignUpValidated(S8WebFront front, S8AsyncFlow flow, String username, String passwordHash);
 	
 }
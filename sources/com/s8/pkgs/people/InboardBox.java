@@ -15,7 +15,7 @@ public class InboardBox extends S8WebObject {
 	 * @param session
 	 */
 	public InboardBox(S8WebFront front) {
-		super(front, WebSources.ROOT_PATH + "/InboardBox");
+		super(front, WebSources.type("/InboardBox"));
 	}
 	
 	
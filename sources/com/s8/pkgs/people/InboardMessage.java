@@ -24,7 +24,7 @@ public class InboardMessage extends S8WebObject {
 	 * @param text
 	 */
 	public InboardMessage(S8WebFront front, Mode mode, String text) {
-		super(front, WebSources.ROOT_PATH + "/InboardMessage");
+		super(front, WebSources.type("/InboardMessage"));
 		vertex.outbound().setUInt8Field("mode", mode.code);
 		vertex.outbound().setStringUTF8Field("text", text);
 	}
@@ -0,0 +1,126 @@
+package com.s8.pkgs.people;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.s8.api.web.S8WebFront;
+import com.s8.pkgs.people.InboardMessage.Mode;
+
+
+/**
+ * Interned {@link InboardMessage}s of one message field of a form: showing the same
+ * feedback again in that field reuses the same web object (hence the same client-side
+ * vertex), and lets the form skip the outbound write altogether.
+ *
+ * A message is never shared by two fields or two forms, so that it has one single place
+ * in the client tree. Held by the form, so released with it. Bounded: past capacity,
+ * messages are created without being interned.
+ */
+public class InboardMessages {
+
+
+	private static final LongAdder nCreated = new LongAdder();
+
+	private static final LongAdder nReused = new LongAdder();
+
+
+	/**
+	 *
+	 * @return nb of message objects created (all forms)
+	 */
+	public static long getCreatedCount() {
+		return nCreated.sum();
+	}
+
+	/**
+	 *
+	 * @return nb of message object creations avoided (all forms)
+	 */
+	public static long getAvoidedCount() {
+		return nReused.sum();
+	}
+
+
+	private static final class Key {
+
+		private final Mode mode;
+
+		private final String text;
+
+		private Key(Mode mode, String text) {
+			super();
+			this.mode = mode;
+			this.text = text;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * mode.hashCode() + text.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if(!(object instanceof Key)) { return false; }
+			Key key = (Key) object;
+			return mode == key.mode && text.equals(key.text);
+		}
+	}
+
+
+	public final S8WebFront front;
+
+	public final int capacity;
+
+	private final HashMap<Key, InboardMessage> messages = new HashMap<>();
+
+
+
+	/**
+	 *
+	 * @param front
+	 * @param capacity max nb of interned messages
+	 */
+	public InboardMessages(S8WebFront front, int capacity) {
+		super();
+		this.front = front;
+		this.capacity = capacity;
+	}
+
+
+	/**
+	 *
+	 * @param mode
+	 * @param text
+	 * @return the message interned for this field
+	 */
+	public synchronized InboardMessage get(Mode mode, String text) {
+		Key key = new Key(mode, text);
+		InboardMessage message = messages.get(key);
+		if(message != null) {
+			nReused.increment();
+			return message;
+		}
+		message = new InboardMessage(front, mode, text);
+		nCreated.increment();
+		if(messages.size() < capacity) { messages.put(key, message); }
+		return message;
+	}
+
+
+	/**
+	 *
+	 * @return nb of interned messages
+	 */
+	public synchronized int size() {
+		return messages.size();
+	}
+
+
+	/**
+	 * Release all interned messages.
+	 */
+	public synchronized void clear() {
+		messages.clear();
+	}
+
+}
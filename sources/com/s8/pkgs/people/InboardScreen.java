@@ -6,7 +6,7 @@ import com.s8.api.web.S8WebObject;
 public class InboardScreen extends S8WebObject {
 
 	public InboardScreen(S8WebFront front) {
-		super(front, WebSources.ROOT_PATH + "/InboardScreen");
+		super(front, WebSources.type("/InboardScreen"));
 	}
 	
 	public void setBackground(S8WebObject back) {
@@ -0,0 +1,78 @@
+package com.s8.pkgs.people;
+
+import com.s8.api.web.S8WebFront;
+import com.s8.pkgs.people.process.LoginSession;
+import com.s8.pkgs.people.process.SignupSession;
+
+
+/**
+ * Inboard state of one front: box and forms are never shared across fronts.
+ */
+public class InboardSession {
+
+
+	public final Inboard inboard;
+
+	public final S8WebFront front;
+
+
+	private InboardBox box;
+
+	private LoginSession loginSession;
+
+	private SignupSession signupSession;
+
+
+	private volatile long lastAccessTime;
+
+
+
+	/**
+	 * 
+	 * @param inboard
+	 * @param front
+	 */
+	public InboardSession(Inboard inboard, S8WebFront front) {
+		super();
+		this.inboard = inboard;
+		this.front = front;
+		this.lastAccessTime = System.currentTimeMillis();
+	}
+
+
+	public synchronized InboardBox getBox() {
+		if(box == null) {
+			box = new InboardBox(front);
+			box.setLogo(inboard.logoURL);
+			box.setTitle(inboard.title);
+		}
+		return box;
+	}
+
+
+	public synchronized LoginSession getLoginSession() {
+		if(loginSession == null) { loginSession = new LoginSession(front); }
+		return loginSession;
+	}
+
+
+	public synchronized SignupSession getSignupSession() {
+		if(signupSession == null) { signupSession = new SignupSession(front); }
+		return signupSession;
+	}
+
+
+	void touch() {
+		lastAccessTime = System.currentTimeMillis();
+	}
+
+
+	/**
+	 * 
+	 * @return last time (ms since epoch) this session has been accessed
+	 */
+	public long getLastAccessTime() {
+		return lastAccessTime;
+	}
+
+}
@@ -14,6 +14,25 @@ public class S8People {
 
 
 	public static final Pattern VALID_PASSWORD = Pattern.compile("(?=.*[A-Z])(?=.*[a-z])(?=.*[0-9])(?=.*[#?!@$%^&*-]).{8,}");
+	
+	
+	/**
+	 * Single-pass equivalent of {@link #VALID_EMAIL_ADDRESS}
+	 */
+	public static final CheckSet EMAIL_ADDRESS_CHECKS = new CheckSet(
+			Check.emailAddress("Username MUST be a valid email address"));
+	
+	
+	/**
+	 * Single-pass equivalent of {@link #VALID_PASSWORD}, reporting each missing requirement
+	 */
+	public static final CheckSet PASSWORD_CHECKS = new CheckSet(
+			Check.minLength("at least 8 characters", 8),
+			Check.contains("an uppercase letter", "A-Z"),
+			Check.contains("a lowercase letter", "a-z"),
+			Check.contains("a digit", "0-9"),
+			Check.contains("a special character among #?!@$%^&*-", "#?!@$%^&*-"),
+			Check.singleLine("no line break"));
 
 
 
@@ -1,7 +1,78 @@
 package com.s8.pkgs.people;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+
+/**
+ * Web paths of this package.
+ *
+ * When web sources have been bundled (see <code>web-bundler.js</code>), logical paths are
+ * mapped to content-hashed ones, listed in the generated {@link #MANIFEST}. Without
+ * manifest (development), sources are served as is and paths are left unchanged.
+ */
 public class WebSources {
 
 	public static final String ROOT_PATH = "/S8-pkgs-people";
 
+
+	/** resource generated by <code>web-bundler.js</code>, next to this class */
+	public static final String MANIFEST = "WebSources.properties";
+
+
+	private static final Map<String, String> hashedPaths = loadManifest();
+
+
+	private static Map<String, String> loadManifest() {
+		Map<String, String> paths = new HashMap<>();
+		try(InputStream inputStream = WebSources.class.getResourceAsStream(MANIFEST)) {
+			if(inputStream != null) {
+				Properties properties = new Properties();
+				properties.load(inputStream);
+				for(String name : properties.stringPropertyNames()) { paths.put(name, properties.getProperty(name)); }
+			}
+		}
+		catch (IOException exception) {
+			/* fall back to unbundled sources */
+			exception.printStackTrace();
+			paths.clear();
+		}
+		return Collections.unmodifiableMap(paths);
+	}
+
+
+	/**
+	 *
+	 * @return <code>true</code> if paths are mapped to bundled, content-hashed sources
+	 */
+	public static boolean isBundled() {
+		return !hashedPaths.isEmpty();
+	}
+
+
+	/**
+	 *
+	 * @param path logical path of an asset (e.g. <code>/S8-pkgs-people/inboard.css</code>)
+	 * @return hashed path if bundled, <code>path</code> otherwise
+	 */
+	public static String resolve(String path) {
+		return hashedPaths.getOrDefault(path, path);
+	}
+
+
+	/**
+	 *
+	 * @param name type name, relative to root (e.g. <code>/forms/LogInForm</code>)
+	 * @return web object type name, pointing at the hashed bundle if bundled
+	 */
+	public static String type(String name) {
+		String path = ROOT_PATH + name;
+		String hashedPath = hashedPaths.get(path + ".js");
+		return hashedPath != null ? hashedPath.substring(0, hashedPath.length() - 3) : path;
+	}
+
 }
@@ -1,13 +1,187 @@
 package com.s8.pkgs.people.forms;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
 import com.s8.api.web.S8WebFront;
 import com.s8.api.web.S8WebObject;
+import com.s8.pkgs.people.InboardMessage;
+import com.s8.pkgs.people.InboardMessages;
 import com.s8.pkgs.people.WebSources;
 
+
+/**
+ * Base of Inboard forms.
+ *
+ * Outbound fields are written through {@link #setObjectField(String, Object)} and
+ * {@link #setStringUTF8Field(String, String)}, which skip writes leaving a field
+ * unchanged (e.g. clearing an already cleared message, or showing again the interned
+ * message already shown in that field). Within an update ({@link #update(Runnable)} 
+ * or {@link #beginUpdate()} / {@link #endUpdate()}), writes are staged and coalesced: 
+ * only the last value of each field is written, once, when the outermost update ends, 
+ * so that a flow <code>send()</code> carries one delta per form.
+ *
+ * Feedback messages set through {@link #setMessageField(String, InboardMessage.Mode, String)}
+ * are interned per field (see {@link InboardMessages}).
+ */
 public class Form extends S8WebObject {
 
+
+	private static final LongAdder nSkippedWrites = new LongAdder();
+
+	/** max nb of interned messages per field */
+	private static final int MESSAGES_CAPACITY = 16;
+
+
+	/**
+	 *
+	 * @return nb of outbound field writes avoided (all forms)
+	 */
+	public static long getSkippedWriteCount() {
+		return nSkippedWrites.sum();
+	}
+
+
+	private static final class Write {
+
+		private final boolean isObject;
+
+		private final Object value;
+
+		private Write(boolean isObject, Object value) {
+			super();
+			this.isObject = isObject;
+			this.value = value;
+		}
+	}
+
+
+	/** last value written, per field */
+	private final Map<String, Object> written = new HashMap<>();
+
+	/** staged writes, in order of first write, while updating */
+	private final Map<String, Write> staged = new LinkedHashMap<>();
+
+	private int updateDepth = 0;
+
+	private final S8WebFront front;
+
+	/** interned messages, per message field */
+	private final Map<String, InboardMessages> messages = new HashMap<>();
+
+
+
 	public Form(S8WebFront front, String typeName) {
-		super(front, WebSources.ROOT_PATH + "/forms" + typeName);
+		super(front, WebSources.type("/forms" + typeName));
+		this.front = front;
+	}
+
+
+	/**
+	 * Apply all changes as one single outbound delta.
+	 *
+	 * @param changes
+	 */
+	public void update(Runnable changes) {
+		beginUpdate();
+		try {
+			changes.run();
+		}
+		finally {
+			endUpdate();
+		}
+	}
+
+
+	/**
+	 * Start staging field writes (updates can be nested).
+	 */
+	public synchronized void beginUpdate() {
+		updateDepth++;
+	}
+
+
+	/**
+	 * End of update: if outermost, flush staged writes.
+	 */
+	public synchronized void endUpdate() {
+		if(updateDepth == 0) { throw new IllegalStateException("No update in progress"); }
+		if(--updateDepth == 0 && !staged.isEmpty()) {
+			for(Map.Entry<String, Write> entry : staged.entrySet()) {
+				Write write = entry.getValue();
+				flush(entry.getKey(), write.isObject, write.value);
+			}
+			staged.clear();
+		}
+	}
+
+
+	/**
+	 *
+	 * @param name
+	 * @param value
+	 */
+	protected synchronized void setObjectField(String name, Object value) {
+		write(name, true, value);
+	}
+
+
+	/**
+	 *
+	 * @param name
+	 * @param value
+	 */
+	protected synchronized void setStringUTF8Field(String name, String value) {
+		write(name, false, value);
+	}
+
+
+	/**
+	 * 
+	 * @param name
+	 * @param mode
+	 * @param text message text, <code>null</code> to clear message
+	 */
+	protected synchronized void setMessageField(String name, InboardMessage.Mode mode, String text) {
+		InboardMessage message = null;
+		if(text != null) {
+			message = messages.computeIfAbsent(name, key -> new InboardMessages(front, MESSAGES_CAPACITY)).get(mode, text);
+		}
+		write(name, true, message);
+	}
+
+
+	private void write(String name, boolean isObject, Object value) {
+		if(updateDepth > 0) {
+			Write previous = staged.put(name, new Write(isObject, value));
+			if(previous != null) { nSkippedWrites.increment(); }
+		}
+		else {
+			flush(name, isObject, value);
+		}
+	}
+
+
+	private void flush(String name, boolean isObject, Object value) {
+		if(written.containsKey(name) && isSame(written.get(name), value, isObject)) {
+			nSkippedWrites.increment();
+			return;
+		}
+		written.put(name, value);
+		if(isObject) {
+			vertex.outbound().setObjectField(name, value);
+		}
+		else {
+			vertex.outbound().setStringUTF8Field(name, (String) value);
+		}
+	}
+
+
+	private static boolean isSame(Object current, Object value, boolean isObject) {
+		/* objects are web objects: identity (messages are interned per field) */
+		return isObject ? current == value : (current == null ? value == null : current.equals(value));
 	}
 
 }
@@ -3,8 +3,8 @@ package com.s8.pkgs.people.forms;
 import com.s8.api.web.S8WebFront;
 import com.s8.api.web.functions.arrays.StringUTF8ArrayNeFunction;
 import com.s8.api.web.functions.none.VoidNeFunction;
+import com.s8.api.web.functions.primitives.StringUTF8NeFunction;
 import com.s8.pkgs.people.InboardMessage;
-import com.s8.pkgs.people.WebSources;
 
 
 /**
@@ -28,7 +28,7 @@ public class LogInForm extends Form {
 	 * @param title
 	 */
 	public LogInForm(S8WebFront front, String title) {
-		super(front, WebSources.ROOT_PATH + "/LogInForm");
+		super(front, "/LogInForm");
 		setTitle(title);
 	}
 	
@@ -38,7 +38,7 @@ public class LogInForm extends Form {
 	 * @param title
 	 */
 	public void setTitle(String title) {
-		vertex.outbound().setStringUTF8Field("title", title);
+		setStringUTF8Field("title", title);
 	}
 	
 	
@@ -47,7 +47,17 @@ public class LogInForm extends Form {
 	 * @param message
 	 */
 	public void setMessage(InboardMessage message) {
-		vertex.outbound().setObjectField("message", message);
+		setObjectField("message", message);
+	}
+	
+	
+	/**
+	 * 
+	 * @param mode
+	 * @param text message text, <code>null</code> to clear message
+	 */
+	public void setMessage(InboardMessage.Mode mode, String text) {
+		setMessageField("message", mode, text);
 	}
 	
 	
@@ -60,6 +70,25 @@ public class LogInForm extends Form {
 	}
 	
 	
+	/**
+	 * Client stores it and sends it back on next visit (empty string: forget token).
+	 * 
+	 * @param token
+	 */
+	public void setRememberMeToken(String token) {
+		setStringUTF8Field("rememberMeToken", token);
+	}
+	
+	
+	/**
+	 * 
+	 * @param func
+	 */
+	public void onTryingTokenLogin(StringUTF8NeFunction func) {
+		vertex.inbound().setStringUTF8Method("on-trying-token-login", func);
+	}
+	
+	
 	/**
 	 * 
 	 * @param func
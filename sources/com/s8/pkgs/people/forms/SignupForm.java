@@ -31,7 +31,7 @@ public class SignupForm extends Form {
 
 
 	public void setTitle(String title) {
-		vertex.outbound().setStringUTF8Field("title", title);
+		setStringUTF8Field("title", title);
 	}
 
 
@@ -52,7 +52,11 @@ public class SignupForm extends Form {
 	}
 
 	public void setUsernameFeedbackMessage(InboardMessage message){
-		this.vertex.outbound().setObjectField("usernameFeedbackMessage", message);
+		setObjectField("usernameFeedbackMessage", message);
+	}
+
+	public void setUsernameFeedbackMessage(InboardMessage.Mode mode, String text){
+		setMessageField("usernameFeedbackMessage", mode, text);
 	}
 
 	/**
@@ -64,7 +68,11 @@ public class SignupForm extends Form {
 	}
 	
 	public void setDefinePasswordFeedbackMessage(InboardMessage message){
-		this.vertex.outbound().setObjectField("definePasswordFeedbackMessage", message);
+		setObjectField("definePasswordFeedbackMessage", message);
+	}
+
+	public void setDefinePasswordFeedbackMessage(InboardMessage.Mode mode, String text){
+		setMessageField("definePasswordFeedbackMessage", mode, text);
 	}
 
 	/**
@@ -76,7 +84,11 @@ public class SignupForm extends Form {
 	}
 
 	public void setConfirmPasswordFeedbackMessage(InboardMessage message){
-		this.vertex.outbound().setObjectField("confirmPasswordFeedbackMessage", message);
+		setObjectField("confirmPasswordFeedbackMessage", message);
+	}
+
+	public void setConfirmPasswordFeedbackMessage(InboardMessage.Mode mode, String text){
+		setMessageField("confirmPasswordFeedbackMessage", mode, text);
 	}
 	
 	/**
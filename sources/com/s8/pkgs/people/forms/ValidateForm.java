@@ -4,7 +4,6 @@ import com.s8.api.web.S8WebFront;
 import com.s8.api.web.functions.none.VoidNeFunction;
 import com.s8.api.web.functions.primitives.StringUTF8NeFunction;
 import com.s8.pkgs.people.InboardMessage;
-import com.s8.pkgs.people.WebSources;
 
 
 /**
@@ -27,7 +26,7 @@ public class ValidateForm extends Form {
 	 * @param title
 	 */
 	public ValidateForm(S8WebFront front, String title) {
-		super(front, WebSources.ROOT_PATH + "/ValidateForm");
+		super(front, "/ValidateForm");
 		setTitle(title);
 	}
 	
@@ -37,7 +36,7 @@ public class ValidateForm extends Form {
 	 * @param title
 	 */
 	public void setTitle(String title) {
-		vertex.outbound().setStringUTF8Field("title", title);
+		setStringUTF8Field("title", title);
 	}
 	
 	
@@ -46,7 +45,17 @@ public class ValidateForm extends Form {
 	 * @param message
 	 */
 	public void setMessage(InboardMessage message) {
-		vertex.outbound().setObjectField("message", message);
+		setObjectField("message", message);
+	}
+	
+	
+	/**
+	 * 
+	 * @param mode
+	 * @param text message text, <code>null</code> to clear message
+	 */
+	public void setMessage(InboardMessage.Mode mode, String text) {
+		setMessageField("message", mode, text);
 	}
 	
 	
@@ -0,0 +1,344 @@
+package com.s8.pkgs.people.mail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.s8.pkgs.people.metrics.Counter;
+import com.s8.pkgs.people.metrics.Histogram;
+
+
+/**
+ * Durable local outbox for outbound mails.
+ * 
+ * Mails are appended to an on-disk journal on enqueue (so that enqueuing never waits
+ * for the mail relay), then drained by a fixed number of workers, each holding one
+ * reusable sender connection on which it sends batches of mails in a row. Failed mails are
+ * retried with exponential backoff (and jitter) up to a maximum number of attempts,
+ * except those permanently rejected by the relay (5xx), which are abandoned at once.
+ * Attempt counts are not journaled: they restart from zero after a restart.
+ * 
+ * Non-durable mails (e.g. carrying a secret that only lives in memory, such as a 
+ * verification code) are never written to disk: they are lost on restart.
+ */
+public class MailOutbox {
+
+
+	private final MailOutboxJournal journal;
+
+	private final MailSender sender;
+
+	/** nb of workers, i.e. max nb of simultaneous connections */
+	public final int nConnections;
+
+	/** max nb of mails sent in a row on a connection before polling the queue again */
+	public final int batchSize;
+
+
+	private volatile int maxAttempts = 8;
+
+	private volatile long baseBackoff = 2000;
+
+	private volatile long maxBackoff = 15 * 60 * 1000;
+
+	private volatile long connectionIdleTime = 30 * 1000;
+
+
+	private final DelayQueue<OutboxMail> queue = new DelayQueue<>();
+
+	private final ConcurrentHashMap<Long, OutboxMail> pending = new ConcurrentHashMap<>();
+
+	private final AtomicLong nextId = new AtomicLong(System.currentTimeMillis() << 16);
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private volatile boolean isRunning = false;
+
+
+	/* <metrics> */
+
+	private final LongAdder nSent = new LongAdder();
+
+	private final LongAdder nFailedAttempts = new LongAdder();
+
+	private final LongAdder nAbandoned = new LongAdder();
+
+	private final LongAdder nConnects = new LongAdder();
+
+	private final LongAdder totalSendTime = new LongAdder();
+
+	private final AtomicLong maxSendTime = new AtomicLong();
+
+	/** optional, shared with inline sends */
+	private volatile Histogram sendLatency;
+
+	/** optional, shared with inline sends */
+	private volatile Counter sendFailures;
+
+	/* </metrics> */
+
+
+
+	/**
+	 * 
+	 * @param journalPath
+	 * @param sender
+	 * @param nConnections
+	 * @param batchSize
+	 */
+	public MailOutbox(Path journalPath, MailSender sender, int nConnections, int batchSize) {
+		super();
+		this.journal = new MailOutboxJournal(journalPath, true);
+		this.sender = sender;
+		this.nConnections = nConnections;
+		this.batchSize = batchSize;
+	}
+
+
+	/**
+	 * 
+	 * @param maxAttempts after which a mail is abandoned
+	 * @param baseBackoff delay (ms) before first retry, doubled on each further attempt
+	 * @param maxBackoff max delay (ms) between two attempts
+	 */
+	public void setRetryPolicy(int maxAttempts, long baseBackoff, long maxBackoff) {
+		this.maxAttempts = maxAttempts;
+		this.baseBackoff = baseBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+
+	/**
+	 * 
+	 * @param idleTime (ms) after which an unused connection is closed
+	 */
+	public void setConnectionIdleTime(long idleTime) {
+		this.connectionIdleTime = idleTime;
+	}
+
+
+	/**
+	 * Also record each send attempt (time per mail of its batch) and each failed attempt 
+	 * (including connection failures) into these metrics.
+	 * 
+	 * @param sendLatency
+	 * @param sendFailures
+	 */
+	public void setMetrics(Histogram sendLatency, Counter sendFailures) {
+		this.sendLatency = sendLatency;
+		this.sendFailures = sendFailures;
+	}
+
+
+	/**
+	 * Replay journal and start workers
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void start() throws IOException {
+		if(isRunning) { return; }
+		for(OutboxMail mail : journal.open()) {
+			mail.nextAttemptTime = System.currentTimeMillis();
+			nextId.accumulateAndGet(mail.id + 1, Math::max);
+			pending.put(mail.id, mail);
+			queue.add(mail);
+		}
+		isRunning = true;
+		for(int i = 0; i < nConnections; i++) {
+			Thread worker = new Thread(this::drain, "s8-people-mail-outbox-" + i);
+			worker.setDaemon(true);
+			workers.add(worker);
+			worker.start();
+		}
+	}
+
+
+	/**
+	 * Enqueue mail. Returns as soon as mail is journaled (if durable).
+	 * 
+	 * @param mail
+	 * @throws IOException if mail could not be journaled: it is then not enqueued at
+	 * all (neither sent by the outbox nor after a restart), and must be sent otherwise
+	 */
+	public void enqueue(OutboxMail mail) throws IOException {
+		mail.id = nextId.getAndIncrement();
+		mail.enqueuedTime = System.currentTimeMillis();
+		mail.nextAttemptTime = mail.enqueuedTime;
+		if(mail.isDurable) {
+			/* added to pending by the journal, atomically with respect to compactions */
+			journal.append(mail, pending);
+		}
+		queue.add(mail);
+	}
+
+
+	/**
+	 * Stop workers. Pending durable mails stay in the journal.
+	 */
+	public synchronized void stop() {
+		isRunning = false;
+		for(Thread worker : workers) { worker.interrupt(); }
+		for(Thread worker : workers) {
+			try { worker.join(10000); } catch (InterruptedException exception) { Thread.currentThread().interrupt(); }
+		}
+		workers.clear();
+		sender.close();
+		try { journal.close(); } catch (IOException exception) { exception.printStackTrace(); }
+	}
+
+
+
+	private void drain() {
+		List<OutboxMail> batch = new ArrayList<>(batchSize);
+		MailSender.Connection connection = null;
+		while(isRunning) {
+			try {
+				OutboxMail first = queue.poll(connectionIdleTime, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					/* idle: release connection */
+					if(connection != null) { connection.close(); connection = null; }
+					continue;
+				}
+				batch.clear();
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+
+				if(connection == null || !connection.isAlive()) {
+					if(connection != null) { connection.close(); }
+					try {
+						connection = sender.connect();
+						nConnects.increment();
+					}
+					catch (IOException exception) {
+						connection = null;
+						exception.printStackTrace();
+						for(OutboxMail mail : batch) { onFailed(mail, exception); }
+						continue;
+					}
+				}
+
+				int n = batch.size();
+				long t = System.nanoTime();
+				IOException[] failures = connection.send(batch);
+				long sendTime = (System.nanoTime() - t) / n;
+				Histogram sendLatency = this.sendLatency;
+				for(int i = 0; i < n; i++) {
+					OutboxMail mail = batch.get(i);
+					if(sendLatency != null) { sendLatency.record(sendTime); }
+					if(failures[i] == null) {
+						onSent(mail, sendTime);
+					}
+					else {
+						failures[i].printStackTrace();
+						onFailed(mail, failures[i]);
+					}
+				}
+			}
+			catch (InterruptedException exception) {
+				break;
+			}
+		}
+		if(connection != null) { connection.close(); }
+	}
+
+
+	private void onSent(OutboxMail mail, long sendTime) {
+		nSent.increment();
+		totalSendTime.add(sendTime);
+		maxSendTime.accumulateAndGet(sendTime, Math::max);
+		acknowledge(mail);
+	}
+
+
+	private void onFailed(OutboxMail mail, IOException exception) {
+		nFailedAttempts.increment();
+		Counter sendFailures = this.sendFailures;
+		if(sendFailures != null) { sendFailures.increment(); }
+		mail.attempts++;
+		boolean isPermanent = exception instanceof MailRejectedException && ((MailRejectedException) exception).isPermanent();
+		if(isPermanent || mail.attempts >= maxAttempts) {
+			nAbandoned.increment();
+			acknowledge(mail);
+		}
+		else {
+			long backoff = Math.min(maxBackoff, baseBackoff << Math.min(mail.attempts - 1, 30));
+			long jitter = ThreadLocalRandom.current().nextLong(backoff / 4 + 1);
+			mail.nextAttemptTime = System.currentTimeMillis() + backoff + jitter;
+			queue.add(mail);
+		}
+	}
+
+
+	private void acknowledge(OutboxMail mail) {
+		if(!mail.isDurable) { return; }
+		pending.remove(mail.id);
+		try {
+			journal.acknowledge(mail.id, pending.values());
+		}
+		catch (IOException exception) {
+			/* mail will be sent again after restart */
+			exception.printStackTrace();
+		}
+	}
+
+
+
+	/**
+	 * 
+	 * @return nb of mails waiting to be sent (including those waiting for a retry)
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public long getSentCount() {
+		return nSent.sum();
+	}
+
+	public long getFailedAttemptCount() {
+		return nFailedAttempts.sum();
+	}
+
+	/**
+	 * 
+	 * @return nb of mails given up after max attempts or permanent rejection
+	 */
+	public long getAbandonedCount() {
+		return nAbandoned.sum();
+	}
+
+	/**
+	 * 
+	 * @return nb of connections opened so far
+	 */
+	public long getConnectionCount() {
+		return nConnects.sum();
+	}
+
+	/**
+	 * 
+	 * @return average time (ns) to send one mail on an open connection (batch time shared
+	 * by its mails)
+	 */
+	public long getAverageSendTime() {
+		long n = nSent.sum();
+		return n > 0 ? totalSendTime.sum() / n : 0;
+	}
+
+	/**
+	 * 
+	 * @return max time (ns) to send one mail on an open connection (batch time shared
+	 * by its mails)
+	 */
+	public long getMaxSendTime() {
+		return maxSendTime.get();
+	}
+
+}
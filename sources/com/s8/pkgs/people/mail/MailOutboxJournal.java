@@ -0,0 +1,218 @@
+package com.s8.pkgs.people.mail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Append-only on-disk journal of the outbox: one record per enqueued mail, one record
+ * per acknowledged (sent or abandoned) mail. Compacted when acknowledged records
+ * dominate.
+ */
+class MailOutboxJournal {
+
+
+	private static final byte ENQUEUE = 'E';
+
+	private static final byte ACKNOWLEDGE = 'A';
+
+	private static final int COMPACTION_THRESHOLD = 4096;
+
+
+	private final Path path;
+
+	private final boolean isSyncing;
+
+	private FileChannel channel;
+
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+	private final DataOutputStream output = new DataOutputStream(buffer);
+
+	private int nAcknowledged;
+
+
+
+	/**
+	 * 
+	 * @param path
+	 * @param isSyncing force to disk on each write
+	 */
+	public MailOutboxJournal(Path path, boolean isSyncing) {
+		super();
+		this.path = path;
+		this.isSyncing = isSyncing;
+	}
+
+
+	/**
+	 * Replay journal (if any) and open it for appending.
+	 * 
+	 * @return mails not yet acknowledged, in enqueue order
+	 * @throws IOException
+	 */
+	public synchronized List<OutboxMail> open() throws IOException {
+		Map<Long, OutboxMail> pending = new LinkedHashMap<>();
+		if(Files.exists(path)) {
+			try(InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+				DataInputStream input = new DataInputStream(in);
+				while(true) {
+					int code;
+					try { code = input.readByte(); } catch (EOFException exception) { break; }
+					try {
+						if(code == ENQUEUE) {
+							OutboxMail mail = readMail(input);
+							pending.put(mail.id, mail);
+						}
+						else if(code == ACKNOWLEDGE) {
+							pending.remove(input.readLong());
+							nAcknowledged++;
+						}
+						else {
+							throw new IOException("Corrupted mail outbox journal: " + path);
+						}
+					}
+					catch (EOFException exception) {
+						/* torn last record (crash while appending): ignored */
+						break;
+					}
+				}
+			}
+		}
+		List<OutboxMail> mails = new ArrayList<>(pending.values());
+		rewrite(mails);
+		return mails;
+	}
+
+
+	/**
+	 * Mail is only added to <code>pending</code> once journaled, under the journal's
+	 * lock: a compaction can thus never persist a mail whose append failed.
+	 * 
+	 * @param mail
+	 * @param pending mails still pending, to which mail is added
+	 * @throws IOException if mail could not be journaled (it is then neither in the 
+	 * journal nor in pending)
+	 */
+	public synchronized void append(OutboxMail mail, Map<Long, OutboxMail> pending) throws IOException {
+		if(channel == null) { throw new IOException("Mail outbox journal is not open: " + path); }
+		long position = channel.size();
+		buffer.reset();
+		output.writeByte(ENQUEUE);
+		writeMail(output, mail);
+		try {
+			flush();
+		}
+		catch (IOException exception) {
+			/* drop torn record, so that next appends remain readable */
+			try { channel.truncate(position); } catch (IOException exception2) { exception.addSuppressed(exception2); }
+			throw exception;
+		}
+		pending.put(mail.id, mail);
+	}
+
+
+	/**
+	 * 
+	 * @param id
+	 * @param pending mails still pending, used if compaction is triggered
+	 * @throws IOException
+	 */
+	public synchronized void acknowledge(long id, Collection<OutboxMail> pending) throws IOException {
+		buffer.reset();
+		output.writeByte(ACKNOWLEDGE);
+		output.writeLong(id);
+		flush();
+		if(++nAcknowledged > COMPACTION_THRESHOLD && nAcknowledged > 4 * pending.size()) {
+			rewrite(new ArrayList<>(pending));
+		}
+	}
+
+
+	public synchronized void close() throws IOException {
+		if(channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+
+	/**
+	 * Atomically replace journal with a compacted one holding only <code>mails</code>
+	 */
+	private void rewrite(List<OutboxMail> mails) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try(FileChannel tempChannel = FileChannel.open(temp, 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			DataOutputStream tempOutput = new DataOutputStream(Channels.newOutputStream(tempChannel));
+			for(OutboxMail mail : mails) {
+				tempOutput.writeByte(ENQUEUE);
+				writeMail(tempOutput, mail);
+			}
+			tempOutput.flush();
+			tempChannel.force(true);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		/* previous journal is only released once replaced */
+		if(channel != null) { channel.close(); }
+		channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		nAcknowledged = 0;
+	}
+
+
+	private void flush() throws IOException {
+		output.flush();
+		ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+		while(bytes.hasRemaining()) { channel.write(bytes); }
+		if(isSyncing) { channel.force(false); }
+	}
+
+
+	private static void writeMail(DataOutputStream output, OutboxMail mail) throws IOException {
+		output.writeLong(mail.id);
+		output.writeLong(mail.enqueuedTime);
+		output.writeUTF(mail.type);
+		output.writeUTF(mail.recipient);
+		output.writeUTF(mail.subject);
+		output.writeShort(mail.parameters.size());
+		for(Map.Entry<String, String> entry : mail.parameters.entrySet()) {
+			output.writeUTF(entry.getKey());
+			output.writeUTF(entry.getValue());
+		}
+	}
+
+
+	private static OutboxMail readMail(DataInputStream input) throws IOException {
+		long id = input.readLong();
+		long enqueuedTime = input.readLong();
+		String type = input.readUTF();
+		String recipient = input.readUTF();
+		String subject = input.readUTF();
+		int nParameters = input.readUnsignedShort();
+		Map<String, String> parameters = new LinkedHashMap<>();
+		for(int i = 0; i < nParameters; i++) { parameters.put(input.readUTF(), input.readUTF()); }
+		OutboxMail mail = new OutboxMail(type, recipient, subject, parameters);
+		mail.id = id;
+		mail.enqueuedTime = enqueuedTime;
+		return mail;
+	}
+
+}
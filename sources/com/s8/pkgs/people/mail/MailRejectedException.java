@@ -0,0 +1,41 @@
+package com.s8.pkgs.people.mail;
+
+import java.io.IOException;
+
+
+/**
+ * Mail refused by the relay (or found invalid before being sent). The connection
+ * remains usable. Permanent rejections (5xx reply codes) are not worth retrying.
+ */
+public class MailRejectedException extends IOException {
+
+
+	private static final long serialVersionUID = -3108276401873622512L;
+
+
+	/** SMTP reply code, <code>0</code> if unknown */
+	public final int replyCode;
+
+
+
+	/**
+	 *
+	 * @param message
+	 * @param replyCode
+	 * @param cause
+	 */
+	public MailRejectedException(String message, int replyCode, Throwable cause) {
+		super(message, cause);
+		this.replyCode = replyCode;
+	}
+
+
+	/**
+	 *
+	 * @return <code>true</code> if mail will never be accepted (5xx reply)
+	 */
+	public boolean isPermanent() {
+		return replyCode >= 500 && replyCode < 600;
+	}
+
+}
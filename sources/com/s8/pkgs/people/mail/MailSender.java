@@ -0,0 +1,58 @@
+package com.s8.pkgs.people.mail;
+
+import java.io.IOException;
+import java.util.List;
+
+
+/**
+ * Delivers outbox mails, over reusable connections (e.g. SMTP sessions). Bodies are
+ * typically rendered with <code>MailTemplates.get(mail).renderHTML(...)</code>, as
+ * done by {@link SmtpMailSender}.
+ */
+public interface MailSender {
+
+
+	/**
+	 * A connection able to send several mails in a row.
+	 */
+	public interface Connection {
+
+
+		/**
+		 * Send a batch of mails in a row on this connection.
+		 *
+		 * @param mails
+		 * @return failure of each mail, in order, <code>null</code> for sent ones: a
+		 * {@link MailRejectedException} if the relay refused the mail, any other failure
+		 * being retried
+		 */
+		public IOException[] send(List<OutboxMail> mails);
+
+
+		/**
+		 *
+		 * @return <code>true</code> if connection can still be used
+		 */
+		public boolean isAlive();
+
+
+		public void close();
+
+	}
+
+
+	/**
+	 *
+	 * @return a new connection
+	 * @throws IOException
+	 */
+	public Connection connect() throws IOException;
+
+
+	/**
+	 * Release resources (e.g. pooled connections) once no longer used.
+	 */
+	public default void close() {
+	}
+
+}
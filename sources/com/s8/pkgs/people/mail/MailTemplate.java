@@ -0,0 +1,396 @@
+package com.s8.pkgs.people.mail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.s8.api.flow.mail.S8MailBuilder;
+
+
+/**
+ * Mail body template, parsed once (typically at startup) into an immutable tree of
+ * elements whose texts are made of literal fragments and named slots
+ * (<code>{{code}}</code>, <code>{{username}}</code>, ...).
+ *
+ * A template renders either to HTML, in a single pass into a per-thread reused
+ * buffer, or onto a {@link S8MailBuilder} (constant texts being passed as is).
+ */
+public class MailTemplate {
+
+
+	/**
+	 * A named placeholder
+	 */
+	public static final class Slot {
+
+		public final String name;
+
+		public final int index;
+
+		private Slot(String name, int index) {
+			super();
+			this.name = name;
+			this.index = index;
+		}
+	}
+
+
+	/**
+	 * Slot values for one rendering
+	 */
+	public static final class Bindings {
+
+		private final MailTemplate template;
+
+		private final String[] values;
+
+		private Bindings(MailTemplate template) {
+			super();
+			this.template = template;
+			this.values = new String[template.slots.size()];
+		}
+
+		/**
+		 *
+		 * @param slot
+		 * @param value
+		 * @return this
+		 */
+		public Bindings set(Slot slot, String value) {
+			values[slot.index] = value;
+			return this;
+		}
+
+		/**
+		 *
+		 * @param name
+		 * @param value
+		 * @return this (unknown slot names being ignored)
+		 */
+		public Bindings set(String name, String value) {
+			Slot slot = template.slots.get(name);
+			if(slot != null) { values[slot.index] = value; }
+			return this;
+		}
+	}
+
+
+	/**
+	 * Literal fragments are plain strings, slots are {@link Slot}
+	 */
+	private static final class Text {
+
+		private final Object[] fragments;
+
+		/** non-null if text has no slot */
+		private final String constant;
+
+		private final String escapedConstant;
+
+		private Text(Object[] fragments) {
+			super();
+			this.fragments = fragments;
+			if(fragments.length == 0) {
+				this.constant = "";
+			}
+			else if(fragments.length == 1 && fragments[0] instanceof String) {
+				this.constant = (String) fragments[0];
+			}
+			else {
+				this.constant = null;
+			}
+			this.escapedConstant = constant != null ? escape(constant) : null;
+		}
+
+		private void renderHTML(StringBuilder out, String[] values) {
+			if(escapedConstant != null) {
+				out.append(escapedConstant);
+			}
+			else {
+				for(Object fragment : fragments) {
+					if(fragment instanceof String) {
+						appendEscaped(out, (String) fragment);
+					}
+					else {
+						String value = values[((Slot) fragment).index];
+						if(value != null) { appendEscaped(out, value); }
+					}
+				}
+			}
+		}
+
+		private String resolve(StringBuilder buffer, String[] values) {
+			if(constant != null) { return constant; }
+			buffer.setLength(0);
+			for(Object fragment : fragments) {
+				if(fragment instanceof String) {
+					buffer.append((String) fragment);
+				}
+				else {
+					String value = values[((Slot) fragment).index];
+					if(value != null) { buffer.append(value); }
+				}
+			}
+			return buffer.toString();
+		}
+	}
+
+
+	private static final class Element {
+
+		private final String tag;
+
+		private final String cssClass;
+
+		private final String style;
+
+		private final Text text;
+
+		/** pre-rendered opening tag */
+		private final String openingTag;
+
+		private final String closingTag;
+
+		private Element(String tag, String cssClass, String style, Text text) {
+			super();
+			this.tag = tag;
+			this.cssClass = cssClass;
+			this.style = style;
+			this.text = text;
+
+			StringBuilder builder = new StringBuilder();
+			builder.append('<').append(tag);
+			if(cssClass != null) {
+				/* builder classes are given in selector form: .mg-h1 */
+				builder.append(" class=\"").append(escape(cssClass.startsWith(".") ? cssClass.substring(1) : cssClass)).append('"');
+			}
+			if(style != null) { builder.append(" style=\"").append(escape(style)).append('"'); }
+			builder.append('>');
+			this.openingTag = builder.toString();
+			this.closingTag = "</" + tag + ">";
+		}
+	}
+
+
+	/**
+	 *
+	 */
+	public static class Builder {
+
+		private final Map<String, Slot> slots = new LinkedHashMap<>();
+
+		private Text subject = new Text(new Object[0]);
+
+		private String wrapperClass;
+
+		private String wrapperStyle;
+
+		private final List<Element> elements = new ArrayList<>();
+
+		private Builder() {
+			super();
+		}
+
+		public Builder subject(String subject) {
+			this.subject = parse(subject);
+			return this;
+		}
+
+		public Builder wrapper(String cssClass, String style) {
+			this.wrapperClass = cssClass;
+			this.wrapperStyle = style;
+			return this;
+		}
+
+		/**
+		 *
+		 * @param tag
+		 * @param cssClass
+		 * @param style
+		 * @param text possibly holding <code>{{slot}}</code> placeholders
+		 * @return this
+		 */
+		public Builder element(String tag, String cssClass, String style, String text) {
+			elements.add(new Element(tag, cssClass, style, text != null ? parse(text) : null));
+			return this;
+		}
+
+		public MailTemplate build() {
+			return new MailTemplate(this);
+		}
+
+		private Text parse(String source) {
+			List<Object> fragments = new ArrayList<>();
+			int index = 0, length = source.length();
+			while(index < length) {
+				int start = source.indexOf("{{", index);
+				int end = start >= 0 ? source.indexOf("}}", start + 2) : -1;
+				if(start < 0 || end < 0) {
+					fragments.add(source.substring(index));
+					index = length;
+				}
+				else {
+					if(start > index) { fragments.add(source.substring(index, start)); }
+					String name = source.substring(start + 2, end).trim();
+					fragments.add(slots.computeIfAbsent(name, n -> new Slot(n, slots.size())));
+					index = end + 2;
+				}
+			}
+			return new Text(fragments.toArray());
+		}
+	}
+
+
+	/**
+	 *
+	 * @return a new template builder
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+
+	private static final ThreadLocal<StringBuilder> BUFFERS = ThreadLocal.withInitial(() -> new StringBuilder(2048));
+
+	private static final ThreadLocal<StringBuilder> TEXT_BUFFERS = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+
+	private final Map<String, Slot> slots;
+
+	private final Text subject;
+
+	private final String wrapperClass;
+
+	private final String wrapperStyle;
+
+	private final Element[] elements;
+
+	private final String wrapperOpeningTag;
+
+
+	private MailTemplate(Builder builder) {
+		super();
+		this.slots = new LinkedHashMap<>(builder.slots);
+		this.subject = builder.subject;
+		this.wrapperClass = builder.wrapperClass;
+		this.wrapperStyle = builder.wrapperStyle;
+		this.elements = builder.elements.toArray(new Element[builder.elements.size()]);
+		this.wrapperOpeningTag = new Element("div", wrapperClass, wrapperStyle, null).openingTag;
+	}
+
+
+	/**
+	 *
+	 * @param name
+	 * @return slot, <code>null</code> if undefined
+	 */
+	public Slot getSlot(String name) {
+		return slots.get(name);
+	}
+
+
+	/**
+	 *
+	 * @return new empty bindings
+	 */
+	public Bindings bind() {
+		return new Bindings(this);
+	}
+
+
+	/**
+	 *
+	 * @param parameters
+	 * @return bindings initialized from parameters (e.g. those of an {@link OutboxMail})
+	 */
+	public Bindings bind(Map<String, String> parameters) {
+		Bindings bindings = new Bindings(this);
+		for(Slot slot : slots.values()) { bindings.values[slot.index] = parameters.get(slot.name); }
+		return bindings;
+	}
+
+
+	/**
+	 *
+	 * @param bindings
+	 * @return subject
+	 */
+	public String renderSubject(Bindings bindings) {
+		return subject.resolve(TEXT_BUFFERS.get(), bindings.values);
+	}
+
+
+	/**
+	 * Single pass rendering into the calling thread's reused buffer.
+	 *
+	 * @param bindings
+	 * @return HTML body
+	 */
+	public String renderHTML(Bindings bindings) {
+		StringBuilder out = BUFFERS.get();
+		out.setLength(0);
+		renderHTML(out, bindings);
+		return out.toString();
+	}
+
+
+	/**
+	 *
+	 * @param out
+	 * @param bindings
+	 */
+	public void renderHTML(StringBuilder out, Bindings bindings) {
+		String[] values = bindings.values;
+		out.append(wrapperOpeningTag);
+		for(Element element : elements) {
+			out.append(element.openingTag);
+			if(element.text != null) { element.text.renderHTML(out, values); }
+			out.append(element.closingTag);
+		}
+		out.append("</div>");
+	}
+
+
+	/**
+	 *
+	 * @param mail
+	 * @param bindings
+	 * @throws IOException
+	 */
+	public void compose(S8MailBuilder mail, Bindings bindings) throws IOException {
+		String[] values = bindings.values;
+		StringBuilder buffer = TEXT_BUFFERS.get();
+		mail.setSubject(subject.resolve(buffer, values));
+		mail.html_setWrapperStyle(wrapperClass, wrapperStyle);
+		for(Element element : elements) {
+			mail.html_appendBaseElement(element.tag, element.cssClass, element.style,
+					element.text != null ? element.text.resolve(buffer, values) : null);
+		}
+	}
+
+
+	private static String escape(String value) {
+		StringBuilder builder = new StringBuilder(value.length() + 16);
+		appendEscaped(builder, value);
+		return builder.toString();
+	}
+
+
+	private static void appendEscaped(StringBuilder out, String value) {
+		int length = value.length();
+		for(int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			switch(c) {
+			case '&': out.append("&amp;"); break;
+			case '<': out.append("&lt;"); break;
+			case '>': out.append("&gt;"); break;
+			case '"': out.append("&quot;"); break;
+			case '\'': out.append("&#39;"); break;
+			default: out.append(c); break;
+			}
+		}
+	}
+
+}
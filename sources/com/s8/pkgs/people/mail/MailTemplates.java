@@ -0,0 +1,54 @@
+package com.s8.pkgs.people.mail;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Registry of mail templates, by mail type and locale (language tag).
+ */
+public class MailTemplates {
+
+
+	private static final ConcurrentHashMap<String, MailTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+
+	/**
+	 * 
+	 * @param type
+	 * @param locale language tag (e.g. <code>fr</code>), <code>null</code> for default
+	 * @param template
+	 */
+	public static void register(String type, String locale, MailTemplate template) {
+		TEMPLATES.put(key(type, locale), template);
+	}
+
+
+	/**
+	 * 
+	 * @param type
+	 * @param locale language tag, <code>null</code> for default
+	 * @return template for this locale, falling back to default, <code>null</code> if none
+	 */
+	public static MailTemplate get(String type, String locale) {
+		MailTemplate template = null;
+		if(locale != null) { template = TEMPLATES.get(key(type, locale)); }
+		if(template == null) { template = TEMPLATES.get(type); }
+		return template;
+	}
+
+
+	/**
+	 * 
+	 * @param mail
+	 * @return template of this outbox mail (according to its <code>locale</code> parameter)
+	 */
+	public static MailTemplate get(OutboxMail mail) {
+		return get(mail.type, mail.getParameter("locale"));
+	}
+
+
+	private static String key(String type, String locale) {
+		return locale != null ? type + '/' + locale : type;
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.s8.pkgs.people.mail;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A mail held by the {@link MailOutbox} until sent. Content is described by a
+ * type and parameters (e.g. <code>signup-validation</code>, <code>code</code>),
+ * composed by the sender.
+ */
+public class OutboxMail implements Delayed {
+
+
+	/** set by outbox on enqueue */
+	long id;
+
+	public final String type;
+
+	public final String recipient;
+
+	public final String subject;
+
+	public final Map<String, String> parameters;
+
+	/** journaled, hence sent even after a restart */
+	public final boolean isDurable;
+
+
+	/** enqueue time, ms since epoch */
+	long enqueuedTime;
+
+	/** nb of failed attempts */
+	int attempts;
+
+	/** ms since epoch */
+	long nextAttemptTime;
+
+
+
+	/**
+	 * 
+	 * @param type
+	 * @param recipient
+	 * @param subject
+	 * @param parameters
+	 */
+	public OutboxMail(String type, String recipient, String subject, Map<String, String> parameters) {
+		this(type, recipient, subject, parameters, true);
+	}
+
+
+	/**
+	 * 
+	 * @param type
+	 * @param recipient
+	 * @param subject
+	 * @param parameters
+	 * @param isDurable <code>false</code> to never write mail to disk
+	 */
+	public OutboxMail(String type, String recipient, String subject, Map<String, String> parameters, boolean isDurable) {
+		super();
+		this.type = type;
+		this.recipient = recipient;
+		this.subject = subject;
+		this.parameters = Collections.unmodifiableMap(parameters);
+		this.isDurable = isDurable;
+	}
+
+
+	public long getId() {
+		return id;
+	}
+
+
+	/**
+	 * 
+	 * @param name
+	 * @return parameter value, <code>null</code> if undefined
+	 */
+	public String getParameter(String name) {
+		return parameters.get(name);
+	}
+
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+
+	@Override
+	public long getDelay(TimeUnit unit) {
+		return unit.convert(nextAttemptTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+	}
+
+
+	@Override
+	public int compareTo(Delayed other) {
+		if(other instanceof OutboxMail) {
+			OutboxMail mail = (OutboxMail) other;
+			int comparison = Long.compare(nextAttemptTime, mail.nextAttemptTime);
+			return comparison != 0 ? comparison : Long.compare(id, mail.id);
+		}
+		return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+	}
+
+}
@@ -0,0 +1,262 @@
+package com.s8.pkgs.people.mail;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendResult;
+import org.eclipse.angus.mail.smtp.SMTPSenderFailedException;
+import org.eclipse.angus.mail.smtp.SMTPTransport;
+import org.eclipse.angus.mail.smtp.SMTPTransportPool;
+
+
+/**
+ * Default {@link MailSender}: delivers outbox mails to an SMTP relay through the Angus
+ * Mail SMTP transport, each outbox connection leasing a transport from a
+ * {@link SMTPTransportPool} and sending its batches in one SMTP session (pipelined
+ * envelopes when the relay supports PIPELINING). Bodies are rendered with the mail's
+ * registered template, as UTF-8 HTML.
+ */
+public class SmtpMailSender implements MailSender {
+
+
+	public enum Security {
+
+		/** plain text (local relay only) */
+		NONE,
+
+		/** upgraded with STARTTLS, required */
+		STARTTLS,
+
+		/** implicit TLS (port 465) */
+		TLS;
+	}
+
+
+	/** envelope sender and From header */
+	public final String from;
+
+	private final Session session;
+
+	private final SMTPTransportPool pool;
+
+
+
+	/**
+	 *
+	 * @param host
+	 * @param port
+	 * @param security
+	 * @param username <code>null</code> if relay does not require authentication
+	 * @param password
+	 * @param from
+	 * @param nConnections max nb of connections to the relay (at least the nb of outbox
+	 * connections)
+	 */
+	public SmtpMailSender(String host, int port, Security security, String username, String password, String from,
+			int nConnections) {
+		this(Session.getInstance(properties(host, port, security, username, from, nConnections)),
+				security == Security.TLS ? "smtps" : "smtp", password, from);
+	}
+
+
+	/**
+	 *
+	 * @param session session holding the <code>mail.[protocol].*</code> properties (host,
+	 * port, security, timeouts, <code>connectionpool*</code>)
+	 * @param protocol <code>smtp</code> or <code>smtps</code>
+	 * @param password <code>null</code> if relay does not require authentication
+	 * @param from
+	 */
+	public SmtpMailSender(Session session, String protocol, String password, String from) {
+		super();
+		this.session = session;
+		this.from = from;
+		this.pool = new SMTPTransportPool(session, protocol, null, -1, null, password);
+	}
+
+
+	private static Properties properties(String host, int port, Security security, String username, String from,
+			int nConnections) {
+		String protocol = security == Security.TLS ? "smtps" : "smtp";
+		String prefix = "mail." + protocol + ".";
+		Properties properties = new Properties();
+		properties.setProperty(prefix + "host", host);
+		properties.setProperty(prefix + "port", Integer.toString(port));
+		properties.setProperty(prefix + "from", from);
+		properties.setProperty(prefix + "connectiontimeout", "30000");
+		properties.setProperty(prefix + "timeout", "30000");
+		properties.setProperty(prefix + "writetimeout", "30000");
+		properties.setProperty(prefix + "pipelining", "true");
+		properties.setProperty(prefix + "connectionpoolsize", Integer.toString(nConnections));
+		if(security == Security.STARTTLS) {
+			properties.setProperty(prefix + "starttls.enable", "true");
+			properties.setProperty(prefix + "starttls.required", "true");
+		}
+		if(security != Security.NONE) {
+			properties.setProperty(prefix + "ssl.checkserveridentity", "true");
+		}
+		if(username != null) {
+			properties.setProperty(prefix + "auth", "true");
+			properties.setProperty(prefix + "user", username);
+		}
+		return properties;
+	}
+
+
+	@Override
+	public Connection connect() throws IOException {
+		try {
+			return new SmtpConnection(pool.lease());
+		}
+		catch (MessagingException exception) {
+			throw new IOException("Cannot connect to SMTP relay: " + exception.getMessage(), exception);
+		}
+	}
+
+
+	@Override
+	public void close() {
+		pool.close();
+	}
+
+
+
+	private class SmtpConnection implements Connection {
+
+		private final SMTPTransport transport;
+
+		private boolean isAlive = true;
+
+
+		private SmtpConnection(SMTPTransport transport) {
+			super();
+			this.transport = transport;
+		}
+
+
+		@Override
+		public IOException[] send(List<OutboxMail> mails) {
+			int n = mails.size();
+			IOException[] failures = new IOException[n];
+
+			/* messages that could be composed, with index of their mail */
+			List<Map.Entry<MimeMessage, Address[]>> messages = new ArrayList<>(n);
+			int[] indices = new int[n];
+			for(int i = 0; i < n; i++) {
+				try {
+					indices[messages.size()] = i;
+					messages.add(new SimpleImmutableEntry<>(compose(mails.get(i)), null));
+				}
+				catch (IOException exception) {
+					failures[i] = exception;
+				}
+			}
+			if(messages.isEmpty()) { return failures; }
+
+			List<SMTPSendResult> results;
+			try {
+				results = transport.sendMessages(messages.iterator(), -1);
+			}
+			catch (RuntimeException exception) {
+				/* e.g. transport no longer connected */
+				results = new ArrayList<>();
+				isAlive = false;
+			}
+
+			int k = 0;
+			for(SMTPSendResult result : results) {
+				MessagingException exception = result.getException();
+				if(exception instanceof SendFailedException) {
+					/* rejected: session was reset */
+					failures[indices[k]] = new MailRejectedException(exception.getMessage(), getReplyCode(exception), exception);
+				}
+				else if(exception != null) {
+					/* possibly failed mid-transaction: don't reuse session */
+					failures[indices[k]] = new IOException(exception.getMessage(), exception);
+					isAlive = false;
+				}
+				k++;
+			}
+			if(k < messages.size()) {
+				/* batch stopped: connection could not be re-established */
+				isAlive = false;
+				for(; k < messages.size(); k++) { failures[indices[k]] = new IOException("SMTP connection lost"); }
+			}
+			return failures;
+		}
+
+
+		@Override
+		public boolean isAlive() {
+			return isAlive;
+		}
+
+
+		@Override
+		public void close() {
+			if(isAlive) {
+				pool.release(transport);
+			}
+			else {
+				pool.invalidate(transport);
+			}
+		}
+	}
+
+
+	private MimeMessage compose(OutboxMail mail) throws IOException {
+		MailTemplate template = MailTemplates.get(mail);
+		if(template == null) { throw new IOException("No template registered for mail type: " + mail.type); }
+		MailTemplate.Bindings bindings = template.bind(mail.parameters);
+		try {
+			MimeMessage message = new MimeMessage(session);
+			message.setFrom(new InternetAddress(from, true));
+			message.setRecipient(Message.RecipientType.TO, new InternetAddress(mail.recipient, true));
+			message.setSentDate(new Date());
+			message.setSubject(template.renderSubject(bindings), "UTF-8");
+			message.setText(template.renderHTML(bindings), "UTF-8", "html");
+			message.saveChanges();
+			return message;
+		}
+		catch (AddressException exception) {
+			/* as the relay would: 553, mailbox name not allowed */
+			throw new MailRejectedException("Invalid address: " + mail.recipient, 553, exception);
+		}
+		catch (MessagingException exception) {
+			throw new IOException(exception.getMessage(), exception);
+		}
+	}
+
+
+	/**
+	 *
+	 * @return reply code of the first failed command, <code>0</code> if unknown
+	 */
+	private static int getReplyCode(MessagingException exception) {
+		Exception next = exception;
+		while(next != null) {
+			if(next instanceof SMTPSendFailedException) { return ((SMTPSendFailedException) next).getReturnCode(); }
+			if(next instanceof SMTPSenderFailedException) { return ((SMTPSenderFailedException) next).getReturnCode(); }
+			if(next instanceof SMTPAddressFailedException) { return ((SMTPAddressFailedException) next).getReturnCode(); }
+			next = next instanceof MessagingException ? ((MessagingException) next).getNextException() : null;
+		}
+		return 0;
+	}
+
+}
@@ -18,7 +18,7 @@ public class P8MenuIcon extends S8WebObject {
 	
 	
 	public P8MenuIcon(S8WebFront front) {
-		super(front, WebSources.ROOT_PATH + "/menu/P8MenuIcon");
+		super(front, WebSources.type("/menu/P8MenuIcon"));
 	}
 	
 	
@@ -0,0 +1,46 @@
+package com.s8.pkgs.people.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Monotonic counter (contention-free, allocation-free).
+ */
+public class Counter {
+
+
+	public final String name;
+
+	private final LongAdder value = new LongAdder();
+
+
+
+	/**
+	 * 
+	 * @param name
+	 */
+	public Counter(String name) {
+		super();
+		this.name = name;
+	}
+
+
+	public void increment() {
+		value.increment();
+	}
+
+
+	/**
+	 * 
+	 * @param n
+	 */
+	public void add(long n) {
+		value.add(n);
+	}
+
+
+	public long get() {
+		return value.sum();
+	}
+
+}
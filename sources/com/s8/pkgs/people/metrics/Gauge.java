@@ -0,0 +1,18 @@
+package com.s8.pkgs.people.metrics;
+
+
+/**
+ * Value read on snapshot only (e.g. queue depth, cache size).
+ */
+@FunctionalInterface
+public interface Gauge {
+
+	
+	/**
+	 * Must be cheap and non-blocking.
+	 * 
+	 * @return current value
+	 */
+	public double getValue();
+
+}
@@ -0,0 +1,139 @@
+package com.s8.pkgs.people.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * HDR-style histogram of non-negative long values (typically latencies, in
+ * nanoseconds): log-linear buckets, each power of 2 being split in 32 sub-buckets,
+ * so that any value is recorded with a relative error below 1/32 (~3%) over the whole
+ * long range, in a fixed array. Recording is lock-free and allocation-free.
+ */
+public class Histogram {
+
+
+	public static class Snapshot {
+
+		public final long count;
+
+		public final long max;
+
+		public final double mean;
+
+		public final long p50, p90, p99, p999;
+
+		private Snapshot(long count, long max, double mean, long p50, long p90, long p99, long p999) {
+			super();
+			this.count = count;
+			this.max = max;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+			this.p999 = p999;
+		}
+	}
+
+
+	private static final int SUB_BITS = 5;
+
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	private static final int N_BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+
+	public final String name;
+
+	private final AtomicLongArray counts = new AtomicLongArray(N_BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+
+
+	/**
+	 * 
+	 * @param name
+	 */
+	public Histogram(String name) {
+		super();
+		this.name = name;
+	}
+
+
+	/**
+	 * 
+	 * @param value (negative values are recorded as 0)
+	 */
+	public void record(long value) {
+		if(value < 0) { value = 0; }
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+
+	/**
+	 * 
+	 * @param startTime as returned by {@link System#nanoTime()}
+	 */
+	public void recordSince(long startTime) {
+		record(System.nanoTime() - startTime);
+	}
+
+
+	/**
+	 * Not atomic with concurrent recordings: good enough for scraping.
+	 * 
+	 * @return snapshot
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[N_BUCKETS];
+		long total = 0;
+		for(int i = 0; i < N_BUCKETS; i++) { total += (copy[i] = counts.get(i)); }
+		long max = this.max.get();
+		double mean = total > 0 ? (double) sum.sum() / count.sum() : 0.0;
+		return new Snapshot(total, max, mean,
+				percentile(copy, total, 0.5, max),
+				percentile(copy, total, 0.9, max),
+				percentile(copy, total, 0.99, max),
+				percentile(copy, total, 0.999, max));
+	}
+
+
+	private static long percentile(long[] counts, long total, double quantile, long max) {
+		if(total == 0) { return 0; }
+		long rank = (long) Math.ceil(quantile * total), seen = 0;
+		for(int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if(seen >= rank) { return Math.min(max, highestEquivalent(i)); }
+		}
+		return max;
+	}
+
+
+	static int index(long value) {
+		if(value < SUB_COUNT) { return (int) value; }
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		return ((magnitude - SUB_BITS + 1) << SUB_BITS) + (int) ((value >>> (magnitude - SUB_BITS)) & (SUB_COUNT - 1));
+	}
+
+
+	static long lowestEquivalent(int index) {
+		if(index < SUB_COUNT) { return index; }
+		int magnitude = (index >>> SUB_BITS) + SUB_BITS - 1;
+		return (1L << magnitude) + ((long) (index & (SUB_COUNT - 1)) << (magnitude - SUB_BITS));
+	}
+
+
+	static long highestEquivalent(int index) {
+		return index + 1 < N_BUCKETS ? lowestEquivalent(index + 1) - 1 : Long.MAX_VALUE;
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.s8.pkgs.people.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Named metrics. Lookups by name are meant for registration only: instrumented code
+ * keeps references to its counters and histograms, so that recording never allocates.
+ * Values are pulled with {@link #snapshot()}.
+ */
+public class MetricsRegistry {
+
+
+	private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+
+
+	public MetricsRegistry() {
+		super();
+	}
+
+
+	/**
+	 * 
+	 * @param name
+	 * @return counter (created on first call)
+	 */
+	public Counter counter(String name) {
+		return counters.computeIfAbsent(name, Counter::new);
+	}
+
+
+	/**
+	 * 
+	 * @param name
+	 * @return histogram (created on first call)
+	 */
+	public Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, Histogram::new);
+	}
+
+
+	/**
+	 * 
+	 * @param name
+	 * @param gauge replacing any previous gauge of the same name
+	 */
+	public void gauge(String name, Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+
+	/**
+	 * 
+	 * @return current values of all metrics
+	 */
+	public MetricsSnapshot snapshot() {
+		Map<String, Long> counterValues = new TreeMap<>();
+		counters.forEach((name, counter) -> counterValues.put(name, counter.get()));
+
+		Map<String, Double> gaugeValues = new TreeMap<>();
+		gauges.forEach((name, gauge) -> {
+			try {
+				gaugeValues.put(name, gauge.getValue());
+			}
+			catch(RuntimeException exception) {
+				gaugeValues.put(name, Double.NaN);
+			}
+		});
+
+		Map<String, Histogram.Snapshot> histogramValues = new TreeMap<>();
+		histograms.forEach((name, histogram) -> histogramValues.put(name, histogram.snapshot()));
+
+		return new MetricsSnapshot(System.currentTimeMillis(), counterValues, gaugeValues, histogramValues);
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.s8.pkgs.people.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+
+/**
+ * Point-in-time values of a {@link MetricsRegistry}, sorted by name.
+ */
+public class MetricsSnapshot {
+
+
+	/** in milliseconds */
+	public final long time;
+
+	public final Map<String, Long> counters;
+
+	public final Map<String, Double> gauges;
+
+	public final Map<String, Histogram.Snapshot> histograms;
+
+
+
+	MetricsSnapshot(long time, Map<String, Long> counters, Map<String, Double> gauges, 
+			Map<String, Histogram.Snapshot> histograms) {
+		super();
+		this.time = time;
+		this.counters = Collections.unmodifiableMap(counters);
+		this.gauges = Collections.unmodifiableMap(gauges);
+		this.histograms = Collections.unmodifiableMap(histograms);
+	}
+
+
+	/**
+	 * One <code>name value</code> line per value (histograms being expanded as
+	 * <code>name.count</code>, <code>name.mean</code>, <code>name.p50</code>...), e.g. to
+	 * be served to a scraper.
+	 * 
+	 * @return text
+	 */
+	public String toText() {
+		StringBuilder builder = new StringBuilder();
+		counters.forEach((name, value) -> builder.append(name).append(' ').append(value).append('\n'));
+		gauges.forEach((name, value) -> builder.append(name).append(' ').append(value).append('\n'));
+		histograms.forEach((name, histogram) -> {
+			builder.append(name).append(".count ").append(histogram.count).append('\n');
+			builder.append(name).append(".mean ").append(histogram.mean).append('\n');
+			builder.append(name).append(".p50 ").append(histogram.p50).append('\n');
+			builder.append(name).append(".p90 ").append(histogram.p90).append('\n');
+			builder.append(name).append(".p99 ").append(histogram.p99).append('\n');
+			builder.append(name).append(".p999 ").append(histogram.p999).append('\n');
+			builder.append(name).append(".max ").append(histogram.max).append('\n');
+		});
+		return builder.toString();
+	}
+
+
+	@Override
+	public String toString() {
+		return toText();
+	}
+
+}
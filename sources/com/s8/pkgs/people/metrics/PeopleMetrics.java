@@ -0,0 +1,163 @@
+package com.s8.pkgs.people.metrics;
+
+import com.s8.pkgs.people.Inboard;
+import com.s8.pkgs.people.InboardMessages;
+import com.s8.pkgs.people.forms.Form;
+import com.s8.pkgs.people.mail.MailOutbox;
+
+
+/**
+ * Metrics of one {@link Inboard}: log-in, sign-up funnel, users table, mails and
+ * verification codes, plus gauges over the inboard's caches and pools. Latencies are
+ * in nanoseconds.
+ */
+public class PeopleMetrics {
+
+
+	public final MetricsRegistry registry;
+
+
+	/* <log-in> */
+
+	public final Counter loginAttempts;
+
+	public final Counter loginThrottled;
+
+	public final Counter loginSuccesses;
+
+	/** wrong username or password */
+	public final Counter loginFailures;
+
+	/** server-side errors (users table, hashing pool) */
+	public final Counter loginErrors;
+
+	public final Counter loginTokenSuccesses;
+
+	public final Counter loginTokenFailures;
+
+	/** from attempt to outcome */
+	public final Histogram loginLatency;
+
+
+	/* <users-table> */
+
+	public final Histogram usersLookupLatency;
+
+	public final Counter usersLookupFailures;
+
+
+	/* <sign-up funnel> */
+
+	public final Counter signupStarted;
+
+	public final Counter signupUsernameChecks;
+
+	public final Counter signupSubmits;
+
+	/** submits rejected on username or password */
+	public final Counter signupRejected;
+
+	/** submits rejected on a breached password (also counted as rejected) */
+	public final Counter signupBreachedPasswords;
+
+	public final Counter signupCodesSent;
+
+	public final Counter signupCompleted;
+
+
+	/* <mails> */
+
+	/** 
+	 * inline sends, from request to server acknowledgement, and outbox sends (time per
+	 * mail of a batch) 
+	 */
+	public final Histogram mailSendLatency;
+
+	/** failed inline sends and outbox attempts */
+	public final Counter mailSendFailures;
+
+
+	/* <verification codes> */
+
+	public final Counter verificationValid;
+
+	public final Counter verificationInvalid;
+
+	public final Counter verificationExhausted;
+
+	public final Counter verificationUnknown;
+
+
+
+	/**
+	 *
+	 * @param inboard
+	 */
+	public PeopleMetrics(Inboard inboard) {
+		super();
+		MetricsRegistry registry = new MetricsRegistry();
+		this.registry = registry;
+
+		loginAttempts = registry.counter("people.login.attempts");
+		loginThrottled = registry.counter("people.login.throttled");
+		loginSuccesses = registry.counter("people.login.successes");
+		loginFailures = registry.counter("people.login.failures");
+		loginErrors = registry.counter("people.login.errors");
+		loginTokenSuccesses = registry.counter("people.login.token.successes");
+		loginTokenFailures = registry.counter("people.login.token.failures");
+		loginLatency = registry.histogram("people.login.latency");
+
+		usersLookupLatency = registry.histogram("people.users.lookup.latency");
+		usersLookupFailures = registry.counter("people.users.lookup.failures");
+
+		signupStarted = registry.counter("people.signup.started");
+		signupUsernameChecks = registry.counter("people.signup.username.checks");
+		signupSubmits = registry.counter("people.signup.submits");
+		signupRejected = registry.counter("people.signup.rejected");
+		signupBreachedPasswords = registry.counter("people.signup.breached");
+		signupCodesSent = registry.counter("people.signup.codes.sent");
+		signupCompleted = registry.counter("people.signup.completed");
+
+		mailSendLatency = registry.histogram("people.mail.send.latency");
+		mailSendFailures = registry.counter("people.mail.send.failures");
+
+		verificationValid = registry.counter("people.verification.valid");
+		verificationInvalid = registry.counter("people.verification.invalid");
+		verificationExhausted = registry.counter("people.verification.exhausted");
+		verificationUnknown = registry.counter("people.verification.unknown");
+
+		registry.gauge("people.sessions", inboard::getSessionCount);
+		registry.gauge("people.users.cache.size", () -> inboard.getUserRowCache().size());
+		registry.gauge("people.users.cache.hit.ratio", () -> inboard.getUserRowCache().getHitRatio());
+		registry.gauge("people.users.cache.load.mean", () -> inboard.getUserRowCache().getAverageLoadTime());
+		registry.gauge("people.users.cache.coalesced", () -> inboard.getUserRowCache().getCoalescedCount());
+		registry.gauge("people.login.throttle.blocked", () -> inboard.getLoginThrottle().getBlockedCount());
+		registry.gauge("people.hashing.queue", () -> inboard.getPasswordHashingEngine().getQueueDepth());
+		registry.gauge("people.hashing.active", () -> inboard.getPasswordHashingEngine().getActiveCount());
+		registry.gauge("people.verification.pending", () -> inboard.getSignupModule().verificationCodes.size());
+		registry.gauge("people.outbox.queue", () -> {
+			MailOutbox outbox = inboard.getMailOutbox();
+			return outbox != null ? outbox.getQueueDepth() : 0;
+		});
+		registry.gauge("people.outbox.sent", () -> {
+			MailOutbox outbox = inboard.getMailOutbox();
+			return outbox != null ? outbox.getSentCount() : 0;
+		});
+		registry.gauge("people.outbox.abandoned", () -> {
+			MailOutbox outbox = inboard.getMailOutbox();
+			return outbox != null ? outbox.getAbandonedCount() : 0;
+		});
+		registry.gauge("people.messages.avoided", InboardMessages::getAvoidedCount);
+		registry.gauge("people.forms.skipped.writes", Form::getSkippedWriteCount);
+	}
+
+
+	/**
+	 *
+	 * @return current values, to be scraped
+	 */
+	public MetricsSnapshot snapshot() {
+		return registry.snapshot();
+	}
+
+}
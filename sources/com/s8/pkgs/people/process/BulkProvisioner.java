@@ -0,0 +1,368 @@
+package com.s8.pkgs.people.process;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.s8.pkgs.people.Inboard;
+import com.s8.pkgs.people.S8People;
+import com.s8.pkgs.people.mail.MailOutbox;
+import com.s8.pkgs.people.mail.MailTemplate;
+import com.s8.pkgs.people.mail.MailTemplates;
+import com.s8.pkgs.people.mail.OutboxMail;
+import com.s8.pkgs.people.security.PasswordHashingEngine;
+
+
+/**
+ * Programmatic bulk sign-up (e.g. enterprise onboarding).
+ *
+ * Records are streamed through a pipeline: validation, existence check, password
+ * hashing, account creation, then invitation mail enqueueing. Records are processed
+ * in parallel, but at most <code>maxInFlight</code> at a time (and never more than the
+ * hashing workers): the feeding thread blocks beyond that, so that neither the users
+ * table nor the hashing engine (shared with interactive log-ins, whose requests would
+ * otherwise be rejected once its queue is full) are flooded, whatever the size of the input.
+ */
+public class BulkProvisioner {
+
+
+	/** outbox mail type of invitation mails (parameter: <code>username</code>) */
+	public static final String INVITATION_MAIL_TYPE = "account-invitation";
+
+	public static final String INVITATION_MAIL_SUBJECT = "Your account has been created";
+
+	public static final MailTemplate INVITATION_MAIL_TEMPLATE = MailTemplate.builder()
+			.subject(INVITATION_MAIL_SUBJECT)
+			.wrapper(".mg-mail-wrapper", null)
+			.element("div", ".mg-mail-banner",
+					"background-image: url(https://alphaventor.com/assets/logos/AlphaventorLogo-1024px-black-text.png);", null)
+			.element("h1", ".mg-h1", null, "Hello dear AlphaVentor user!")
+			.element("h2", ".mg-h2", null, "Welcome to a world of designs")
+			.element("p", ".mg-p", null, "An account has been created for you, you can now log in with:")
+			.element("div", ".mg-code-wrapper", null, "{{username}}")
+			.element("p", ".mg-p", null, "If you're not expecting this, please report to pierre.convert@alphaventor.com")
+			.build();
+
+	static {
+		MailTemplates.register(INVITATION_MAIL_TYPE, null, INVITATION_MAIL_TEMPLATE);
+	}
+
+
+	/**
+	 * Users table access, provided by the application (no front, hence no flow, here).
+	 */
+	public interface Backend {
+
+		/**
+		 *
+		 * @param username
+		 * @return future <code>true</code> if a user row already exists
+		 */
+		public CompletableFuture<Boolean> exists(String username);
+
+		/**
+		 *
+		 * @param username
+		 * @param passwordHash encoded hash
+		 * @return future completing once the user row is created
+		 */
+		public CompletableFuture<Void> create(String username, String passwordHash);
+	}
+
+
+	public static class Record {
+
+		public final String username;
+
+		public final String password;
+
+		public Record(String username, String password) {
+			super();
+			this.username = username;
+			this.password = password;
+		}
+	}
+
+
+	public enum Status {
+
+		CREATED,
+
+		/** username or password not valid */
+		INVALID,
+
+		/** same username earlier in the same run */
+		DUPLICATE,
+
+		ALREADY_EXISTS,
+
+		FAILED;
+	}
+
+
+	public static class Result {
+
+		public final String username;
+
+		public final Status status;
+
+		/** <code>null</code> if nothing to report */
+		public final String message;
+
+		public Result(String username, Status status, String message) {
+			super();
+			this.username = username;
+			this.status = status;
+			this.message = message;
+		}
+
+		@Override
+		public String toString() {
+			return username + ": " + status + (message != null ? " (" + message + ")" : "");
+		}
+	}
+
+
+	public static class Report {
+
+		private final long[] counts;
+
+		/** in nanoseconds */
+		public final long elapsed;
+
+		private Report(long[] counts, long elapsed) {
+			super();
+			this.counts = counts;
+			this.elapsed = elapsed;
+		}
+
+		public long getCount(Status status) {
+			return counts[status.ordinal()];
+		}
+
+		public long getTotal() {
+			long total = 0;
+			for(long count : counts) { total += count; }
+			return total;
+		}
+
+		/**
+		 *
+		 * @return records per second
+		 */
+		public double getThroughput() {
+			return elapsed > 0 ? getTotal() * 1e9 / elapsed : 0.0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			for(Status status : Status.values()) { builder.append(status).append('=').append(getCount(status)).append(' '); }
+			builder.append(String.format("in %.1f s (%.1f records/s)", elapsed / 1e9, getThroughput()));
+			return builder.toString();
+		}
+	}
+
+
+	public final Inboard inboard;
+
+	public final Backend backend;
+
+	/** max nb of records in flight, before clamping to the nb of hashing workers */
+	public final int maxInFlight;
+
+	private boolean isSendingInvitations = true;
+
+
+
+	/**
+	 *
+	 * @param inboard
+	 * @param backend
+	 * @param maxInFlight max nb of records in flight, clamped on each run to the nb of
+	 * workers of the inboard's hashing engine, so that its queue is left to interactive log-ins
+	 */
+	public BulkProvisioner(Inboard inboard, Backend backend, int maxInFlight) {
+		super();
+		this.inboard = inboard;
+		this.backend = backend;
+		this.maxInFlight = maxInFlight;
+	}
+
+
+	/**
+	 *
+	 * @param isSendingInvitations
+	 */
+	public void setSendingInvitations(boolean isSendingInvitations) {
+		this.isSendingInvitations = isSendingInvitations;
+	}
+
+
+	/**
+	 * Blocking: returns once all records have been processed.
+	 *
+	 * @param records
+	 * @param onResult called (from pipeline threads) with the outcome of each record
+	 * @return report
+	 * @throws InterruptedException
+	 */
+	public Report provision(Iterator<Record> records, Consumer<Result> onResult) throws InterruptedException {
+		int maxInFlight = Math.max(1, Math.min(this.maxInFlight, inboard.getPasswordHashingEngine().getWorkerCount()));
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		Set<String> seen = ConcurrentHashMap.newKeySet();
+		LongAdder[] counts = new LongAdder[Status.values().length];
+		for(int i = 0; i < counts.length; i++) { counts[i] = new LongAdder(); }
+
+		long t0 = System.nanoTime();
+		while(records.hasNext()) {
+			Record record = records.next();
+			inFlight.acquire();
+			process(record, seen).whenComplete((result, exception) -> {
+				try {
+					counts[result.status.ordinal()].increment();
+					if(onResult != null) { onResult.accept(result); }
+				}
+				catch(RuntimeException callbackException) {
+					callbackException.printStackTrace();
+				}
+				finally {
+					inFlight.release();
+				}
+			});
+		}
+
+		/* drain */
+		inFlight.acquire(maxInFlight);
+		inFlight.release(maxInFlight);
+
+		long[] totals = new long[counts.length];
+		for(int i = 0; i < counts.length; i++) { totals[i] = counts[i].sum(); }
+		return new Report(totals, System.nanoTime() - t0);
+	}
+
+
+	/** never completes exceptionally */
+	private CompletableFuture<Result> process(Record record, Set<String> seen) {
+		String username = record.username;
+		if(username == null || !S8People.EMAIL_ADDRESS_CHECKS.isValid(username)) {
+			return CompletableFuture.completedFuture(new Result(username, Status.INVALID, "Username MUST be a valid email address"));
+		}
+		String passwordFailures = S8People.PASSWORD_CHECKS.describeFailures(record.password, ", ");
+		if(!passwordFailures.isEmpty()) {
+			return CompletableFuture.completedFuture(new Result(username, Status.INVALID, "Password must contain " + passwordFailures));
+		}
+		if(inboard.isBreachedPassword(record.password)) {
+			return CompletableFuture.completedFuture(new Result(username, Status.INVALID, SignupManager.BREACHED_PASSWORD_MESSAGE));
+		}
+		if(!seen.add(username)) {
+			return CompletableFuture.completedFuture(new Result(username, Status.DUPLICATE, null));
+		}
+
+		PasswordHashingEngine engine = inboard.getPasswordHashingEngine();
+		CompletableFuture<Boolean> exists;
+		try {
+			exists = backend.exists(username);
+		}
+		catch(RuntimeException exception) {
+			exists = CompletableFuture.failedFuture(exception);
+		}
+
+		return exists.thenCompose(isExisting -> {
+			if(isExisting) {
+				return CompletableFuture.completedFuture(new Result(username, Status.ALREADY_EXISTS, null));
+			}
+			return engine.hash(record.password)
+					.thenCompose(hash -> backend.create(username, hash))
+					.thenApply(none -> onCreated(username));
+		})
+		.exceptionally(exception -> {
+			Throwable cause = exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+			return new Result(username, Status.FAILED, cause.toString());
+		});
+	}
+
+
+	private Result onCreated(String username) {
+		inboard.getSignupModule().availabilityCache.put(username, false);
+		UsernameFilter usersFilter = inboard.getUsersFilter();
+		if(usersFilter != null) { usersFilter.add(username); }
+		inboard.onUserChanged(username);
+
+		if(!isSendingInvitations) {
+			return new Result(username, Status.CREATED, null);
+		}
+		MailOutbox outbox = inboard.getMailOutbox();
+		if(outbox == null) {
+			return new Result(username, Status.CREATED, "No outbox: invitation not sent");
+		}
+		try {
+			outbox.enqueue(new OutboxMail(INVITATION_MAIL_TYPE, username, INVITATION_MAIL_SUBJECT, Map.of("username", username)));
+			return new Result(username, Status.CREATED, null);
+		}
+		catch (IOException exception) {
+			return new Result(username, Status.CREATED, "Invitation not sent: " + exception.getMessage());
+		}
+	}
+
+
+	/**
+	 * Lazily parse CSV lines <code>username,password</code>. Blank lines, lines starting
+	 * with <code>#</code> and a leading <code>username,password</code> header are skipped.
+	 * Usernames are trimmed, passwords are taken verbatim (up to the end of line).
+	 *
+	 * @param reader
+	 * @return records (throwing {@link UncheckedIOException} on read failure)
+	 */
+	public static Iterator<Record> parseCSV(BufferedReader reader) {
+		return new Iterator<Record>() {
+
+			private Record next;
+
+			private boolean isFirst = true;
+
+			@Override
+			public boolean hasNext() {
+				if(next != null) { return true; }
+				try {
+					String line;
+					while((line = reader.readLine()) != null) {
+						String trimmed = line.trim();
+						boolean isHeader = isFirst && trimmed.equalsIgnoreCase("username,password");
+						isFirst = false;
+						if(trimmed.isEmpty() || trimmed.charAt(0) == '#' || isHeader) { continue; }
+						/* spaces are legal in passwords: only the username is trimmed */
+						int comma = line.indexOf(',');
+						next = comma < 0 ?
+								new Record(trimmed, null) :
+								new Record(line.substring(0, comma).trim(), line.substring(comma + 1));
+						return true;
+					}
+					return false;
+				}
+				catch (IOException exception) {
+					throw new UncheckedIOException(exception);
+				}
+			}
+
+			@Override
+			public Record next() {
+				if(!hasNext()) { throw new NoSuchElementException(); }
+				Record record = next;
+				next = null;
+				return record;
+			}
+		};
+	}
+
+}
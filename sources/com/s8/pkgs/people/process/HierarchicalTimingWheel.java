@@ -0,0 +1,185 @@
+package com.s8.pkgs.people.process;
+
+import java.util.function.Consumer;
+
+
+/**
+ * Hierarchical timing wheel (4 levels of 256, 64, 64 and 64 slots), giving O(1)
+ * scheduling, cancellation and (amortized) expiry. Not thread-safe: callers hold
+ * their own lock.
+ *
+ * The wheel is advanced lazily, by the caller, on each operation.
+ *
+ * @param <N> node type
+ */
+public class HierarchicalTimingWheel<N extends HierarchicalTimingWheel.Node> {
+
+
+	/**
+	 * Intrusive node: to be extended by scheduled entries
+	 */
+	public static abstract class Node {
+
+		Node previous, next;
+
+		long deadlineTick;
+
+		boolean isScheduled = false;
+
+		public boolean isScheduled() {
+			return isScheduled;
+		}
+	}
+
+
+	private static final int[] SHIFTS = new int[] { 0, 8, 14, 20 };
+
+	private static final int[] MASKS = new int[] { 255, 63, 63, 63 };
+
+	/** total span, in ticks */
+	private static final long SPAN = 1L << 26;
+
+
+	/** tick duration, in milliseconds */
+	public final long tickDuration;
+
+	/** sentinel heads of slot lists */
+	private final Node[][] slots;
+
+	private long currentTick;
+
+	private int size = 0;
+
+
+
+	/**
+	 *
+	 * @param tickDuration in milliseconds
+	 * @param now current time, in milliseconds
+	 */
+	public HierarchicalTimingWheel(long tickDuration, long now) {
+		super();
+		this.tickDuration = tickDuration;
+		this.currentTick = now / tickDuration;
+		slots = new Node[SHIFTS.length][];
+		for(int level = 0; level < SHIFTS.length; level++) {
+			int nSlots = MASKS[level] + 1;
+			slots[level] = new Node[nSlots];
+			for(int i = 0; i < nSlots; i++) {
+				Node head = new Node() {};
+				head.previous = head;
+				head.next = head;
+				slots[level][i] = head;
+			}
+		}
+	}
+
+
+	/**
+	 *
+	 * @param node
+	 * @param deadline in milliseconds
+	 */
+	public void schedule(N node, long deadline) {
+		if(node.isScheduled) { cancel(node); }
+		long deadlineTick = (deadline + tickDuration - 1) / tickDuration;
+		node.deadlineTick = Math.min(Math.max(deadlineTick, currentTick + 1), currentTick + SPAN - 1);
+		node.isScheduled = true;
+		place(node);
+		size++;
+	}
+
+
+	/**
+	 *
+	 * @param node
+	 */
+	public void cancel(N node) {
+		if(node.isScheduled) {
+			unlink(node);
+			node.isScheduled = false;
+			size--;
+		}
+	}
+
+
+	/**
+	 * Expire all nodes whose deadline is passed.
+	 *
+	 * @param now in milliseconds
+	 * @param onExpired called for each expired node (already removed from wheel)
+	 */
+	@SuppressWarnings("unchecked")
+	public void advance(long now, Consumer<N> onExpired) {
+		long targetTick = now / tickDuration;
+		while(currentTick < targetTick) {
+			if(size == 0) {
+				/* nothing to expire: jump */
+				currentTick = targetTick;
+				return;
+			}
+			currentTick++;
+
+			/* cascade higher levels whose lower bits just wrapped, top-down */
+			for(int level = SHIFTS.length - 1; level > 0; level--) {
+				if((currentTick & ((1L << SHIFTS[level]) - 1)) == 0) {
+					Node head = slots[level][(int) ((currentTick >>> SHIFTS[level]) & MASKS[level])];
+					Node node = head.next;
+					head.next = head;
+					head.previous = head;
+					while(node != head) {
+						Node next = node.next;
+						place(node);
+						node = next;
+					}
+				}
+			}
+
+			/* expire current level-0 slot */
+			Node head = slots[0][(int) (currentTick & MASKS[0])];
+			Node node = head.next;
+			while(node != head) {
+				Node next = node.next;
+				if(node.deadlineTick <= currentTick) {
+					unlink(node);
+					node.isScheduled = false;
+					size--;
+					onExpired.accept((N) node);
+				}
+				node = next;
+			}
+		}
+	}
+
+
+	/**
+	 *
+	 * @return nb of scheduled nodes
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	private void place(Node node) {
+		long delta = node.deadlineTick - currentTick;
+		int level = 0;
+		while(level < SHIFTS.length - 1 && delta >= (1L << SHIFTS[level + 1])) { level++; }
+		Node head = slots[level][(int) ((node.deadlineTick >>> SHIFTS[level]) & MASKS[level])];
+
+		/* append */
+		node.previous = head.previous;
+		node.next = head;
+		head.previous.next = node;
+		head.previous = node;
+	}
+
+
+	private static void unlink(Node node) {
+		node.previous.next = node.next;
+		node.next.previous = node.previous;
+		node.previous = null;
+		node.next = null;
+	}
+
+}
@@ -1,5 +1,7 @@
 package com.s8.pkgs.people.process;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.s8.api.flow.S8AsyncFlow;
 import com.s8.api.flow.S8User;
 import com.s8.api.flow.table.objects.RowS8Object;
@@ -7,9 +9,10 @@ import com.s8.api.flow.table.requests.GetRowS8Request;
 import com.s8.api.web.S8WebFront;
 import com.s8.api.web.functions.arrays.StringUTF8ArrayNeFunction;
 import com.s8.pkgs.people.Inboard;
-import com.s8.pkgs.people.InboardMessage;
 import com.s8.pkgs.people.InboardMessage.Mode;
 import com.s8.pkgs.people.forms.LogInForm;
+import com.s8.pkgs.people.metrics.PeopleMetrics;
+import com.s8.pkgs.people.security.SessionTokens;
 
 
 /**
@@ -22,10 +25,6 @@ public class LoginManager {
 	public final Inboard inboard;
 	
 	
-	/** form0 */
-	private LogInForm form0;
-
-	
 	/**
 	 * 
 	 */
@@ -36,9 +35,13 @@ public class LoginManager {
 	
 	
 	public void start(S8WebFront front) {
-		if(form0 == null) {
+		
+		LoginSession session = inboard.getSession(front).getLoginSession();
+		
+		if(session.form == null) {
 			
-			form0 = new LogInForm(front);
+			LogInForm form0 = new LogInForm(front);
+			session.form = form0;
 			
 			form0.onTyringLogin(new StringUTF8ArrayNeFunction() {
 				
@@ -46,48 +49,191 @@ public class LoginManager {
 				public void run(S8AsyncFlow flow, String[] credentials) {
 					
 					String username = credentials[0];
-					String password = credentials[1];
 					
+					PeopleMetrics metrics = inboard.getMetrics();
+					metrics.loginAttempts.increment();
+					long t0 = System.nanoTime();
+					
+					/* throttling happens before any I/O */
+					if(!inboard.getLoginThrottle().tryAcquire(username, inboard.getClientKey(front))) {
+						metrics.loginThrottled.increment();
+						form0.setMessage(Mode.ERROR, "Too many attempts, please retry later");
+						flow.send();
+						return;
+					}
+					
+					if(inboard.isDefinitelyAbsent(username)) {
+						metrics.loginFailures.increment();
+						metrics.loginLatency.recordSince(t0);
+						form0.setMessage(Mode.WARNING, "Invalid Username or Password");
+						flow.send();
+						return;
+					}
 				
-					flow.getRow(new GetRowS8Request(inboard.usersTableId, username){
-						public @Override void onSucceed(Status status, RowS8Object row) {
-							if(status == Status.OK) {
-								S8User user = (S8User) row;
-								if(row != null) {
-									if(user.getPassword().equals(password)) {
-										flow.setMe(user);
-										inboard.onLogInSucceed(front, flow, user);
-									}
-									else {
-										form0.setMessage(new InboardMessage(front, Mode.WARNING, "Invalid Username or Password"));
-									}	
-								}
-								else {
-									form0.setMessage(new InboardMessage(front, Mode.WARNING, "Invalid Username or Password"));
-								}
-							}
-						}
-						public @Override void onFailed(Exception exception) {
+					/* cached rows skip the users table: outcome is applied once known, then sent once */
+					getUser(flow, username).whenComplete((user, exception) -> {
+						if(exception != null) {
 							exception.printStackTrace();
+							metrics.loginErrors.increment();
+							metrics.loginLatency.recordSince(t0);
+							form0.setMessage(Mode.ERROR, "Server is busy, please retry");
+							flow.send();
+						}
+						else if(user != null) {
+							checkPassword(front, flow, form0, credentials, user, t0);
+						}
+						else {
+							metrics.loginFailures.increment();
+							metrics.loginLatency.recordSince(t0);
+							form0.setMessage(Mode.WARNING, "Invalid Username or Password");
+							flow.send();
 						}
 					});
-				
-					/* flow send */
-					flow.send();	
 				}
 			});
 			
 			
 			
+			form0.onTryingTokenLogin((flow, token) -> {
+				
+				/* signature, expiry and revocation are checked in memory */
+				PeopleMetrics metrics = inboard.getMetrics();
+				SessionTokens.Claims claims = inboard.getSessionTokens().verify(token);
+				if(claims == null) {
+					metrics.loginTokenFailures.increment();
+					form0.setRememberMeToken(""); /* forget stale token */
+					flow.send();
+					return;
+				}
+				
+				S8User cached = inboard.getUserRowCache().getIfPresent(claims.username);
+				if(cached != null) {
+					/* no I/O at all */
+					metrics.loginTokenSuccesses.increment();
+					flow.setMe(cached);
+					inboard.onLogInSucceed(front, flow, cached);
+					flow.send();
+				}
+				else {
+					/* one row read, but no password hashing */
+					getUser(flow, claims.username).whenComplete((user, exception) -> {
+						if(exception != null) {
+							exception.printStackTrace();
+							metrics.loginErrors.increment();
+						}
+						else if(user != null) {
+							metrics.loginTokenSuccesses.increment();
+							flow.setMe(user);
+							inboard.onLogInSucceed(front, flow, user);
+						}
+						else {
+							metrics.loginTokenFailures.increment();
+							form0.setRememberMeToken("");
+						}
+						flow.send();
+					});
+				}
+			});
+			
+			
 			form0.onGoToSignUp(f5 -> {
 				inboard.getSignupModule().start(front);
 				f5.send();
 			});
 		}
 		
-		inboard.getBox(front).setForm(form0);
+		inboard.getBox(front).setForm(session.form);
 		
 	}
 	
+	
+	/**
+	 * Key derivation runs on a hashing worker: its outcome is applied from the worker
+	 * (no flow thread waits for it), then sent.
+	 * 
+	 * @param front
+	 * @param flow
+	 * @param form0
+	 * @param credentials
+	 * @param user
+	 * @param t0
+	 */
+	private void checkPassword(S8WebFront front, S8AsyncFlow flow, LogInForm form0, String[] credentials, S8User user, long t0) {
+		PeopleMetrics metrics = inboard.getMetrics();
+		String username = credentials[0];
+		
+		inboard.getPasswordHashingEngine().verify(credentials[1], user.getPassword()).whenComplete((verification, exception) -> {
+			metrics.loginLatency.recordSince(t0);
+			if(exception != null) {
+				metrics.loginErrors.increment();
+				form0.setMessage(Mode.ERROR, "Server is busy, please retry");
+			}
+			else if(verification.isValid) {
+				if(verification.rehash != null) {
+					inboard.onUserChanged(username);
+					inboard.onPasswordRehashed(front, flow, user, verification.rehash);
+				}
+				inboard.getLoginThrottle().reset(username);
+				if(credentials.length > 2 && "true".equals(credentials[2])) {
+					form0.setRememberMeToken(inboard.getSessionTokens().issue(username));
+				}
+				metrics.loginSuccesses.increment();
+				flow.setMe(user);
+				inboard.onLogInSucceed(front, flow, user);
+			}
+			else {
+				metrics.loginFailures.increment();
+				form0.setMessage(Mode.WARNING, "Invalid Username or Password");
+			}
+			flow.send();
+		});
+	}
+	
+	
+	/**
+	 * Completes immediately on cache hit. Otherwise, concurrent log-ins of the same cold
+	 * username share one single row read (issued by the first flow): the returned future
+	 * then completes from that read's callback, callers applying the outcome to their own
+	 * form and sending their own flow.
+	 * 
+	 * @param flow
+	 * @param username
+	 * @return user, completing with <code>null</code> if not existing
+	 */
+	private CompletableFuture<S8User> getUser(S8AsyncFlow flow, String username) {
+		return inboard.getUserRowCache().get(username, key -> load(flow, key));
+	}
+	
+	
+	/**
+	 * 
+	 * @param flow
+	 * @param username
+	 * @return user row, completing with <code>null</code> if not existing
+	 */
+	private CompletableFuture<S8User> load(S8AsyncFlow flow, String username) {
+		PeopleMetrics metrics = inboard.getMetrics();
+		long t0 = System.nanoTime();
+		CompletableFuture<S8User> loading = new CompletableFuture<>();
+		flow.getRow(new GetRowS8Request(inboard.usersTableId, username){
+			public @Override void onSucceed(Status status, RowS8Object row) {
+				metrics.usersLookupLatency.recordSince(t0);
+				if(status == Status.OK) {
+					loading.complete((S8User) row);
+				}
+				else {
+					metrics.usersLookupFailures.increment();
+					loading.completeExceptionally(new IllegalStateException("Failed to get user row: " + status));
+				}
+			}
+			public @Override void onFailed(Exception exception) {
+				metrics.usersLookupLatency.recordSince(t0);
+				metrics.usersLookupFailures.increment();
+				loading.completeExceptionally(exception);
+			}
+		});
+		return loading;
+	}
+	
 
 }
@@ -0,0 +1,28 @@
+package com.s8.pkgs.people.process;
+
+import com.s8.api.web.S8WebFront;
+import com.s8.pkgs.people.forms.LogInForm;
+
+
+/**
+ * Log-in state of one front. Only ever touched by this front's flows.
+ */
+public class LoginSession {
+
+
+	public final S8WebFront front;
+
+	LogInForm form;
+
+
+
+	/**
+	 * 
+	 * @param front
+	 */
+	public LoginSession(S8WebFront front) {
+		super();
+		this.front = front;
+	}
+
+}
@@ -1,6 +1,9 @@
 package com.s8.pkgs.people.process;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import com.s8.api.flow.S8AsyncFlow;
 import com.s8.api.flow.mail.S8MailBuilder;
@@ -9,22 +12,54 @@ import com.s8.api.flow.table.objects.RowS8Object;
 import com.s8.api.flow.table.requests.GetRowS8Request;
 import com.s8.api.web.S8WebFront;
 import com.s8.pkgs.people.Inboard;
-import com.s8.pkgs.people.InboardMessage;
 import com.s8.pkgs.people.S8People;
 import com.s8.pkgs.people.InboardMessage.Mode;
 import com.s8.pkgs.people.forms.SignupForm;
 import com.s8.pkgs.people.forms.ValidateForm;
+import com.s8.pkgs.people.mail.MailOutbox;
+import com.s8.pkgs.people.mail.MailTemplate;
+import com.s8.pkgs.people.mail.MailTemplates;
+import com.s8.pkgs.people.mail.OutboxMail;
+import com.s8.pkgs.people.metrics.PeopleMetrics;
 
 public class SignupManager {
 	
+	
+	/** outbox mail type of sign-up validation mails (parameter: <code>code</code>) */
+	public static final String VALIDATION_MAIL_TYPE = "signup-validation";
+	
+	public static final String VALIDATION_MAIL_SUBJECT = "Sign-Up email confirmation";
+	
+	/** parsed once, shared by inline and outbox sending */
+	public static final MailTemplate VALIDATION_MAIL_TEMPLATE = MailTemplate.builder()
+			.subject(VALIDATION_MAIL_SUBJECT)
+			.wrapper(".mg-mail-wrapper", null)
+			.element("div", ".mg-mail-banner", 
+					"background-image: url(https://alphaventor.com/assets/logos/AlphaventorLogo-1024px-black-text.png);", null)
+			.element("h1", ".mg-h1", null, "Hello dear AlphaVentor user!")
+			.element("h2", ".mg-h2", null, "Welcome to a world of designs")
+			.element("p", ".mg-p", null, "Please find below your validation code for the creation of your account:")
+			.element("div", ".mg-code-wrapper", null, "{{code}}")
+			.element("p", ".mg-p", null, "If you're not the initiator of this, please report to pierre.convert@alphaventor.com")
+			.build();
+	
+	public static final String BREACHED_PASSWORD_MESSAGE = "This password appears in known data breaches, please choose another one";
+	
+	private static final MailTemplate.Slot VALIDATION_CODE_SLOT = VALIDATION_MAIL_TEMPLATE.getSlot("code");
+	
+	static {
+		MailTemplates.register(VALIDATION_MAIL_TYPE, null, VALIDATION_MAIL_TEMPLATE);
+	}
+	
+	
 	public final Inboard inboard;
 	
-	private SignupForm signUpForm;
 	
-	private ValidateForm validationForm;
+	/** shared by username change checks and sign-up submits */
+	public final UsernameAvailabilityCache availabilityCache = new UsernameAvailabilityCache(4096, 30000);
 	
-
-	private String validationCode;
+	/** pending verifications: 15 min TTL, 5 attempts, 6 digits */
+	public final VerificationCodeStore verificationCodes = new VerificationCodeStore(500000, 15 * 60 * 1000, 5, 6);
 	
 	
 
@@ -40,37 +75,37 @@ public class SignupManager {
 	
 	public void start(S8WebFront front) {
 		
-		if(signUpForm == null) {
+		SignupSession session = inboard.getSession(front).getSignupSession();
+		inboard.getMetrics().signupStarted.increment();
+		
+		if(session.signUpForm == null) {
 			
-			signUpForm = new SignupForm(front);
+			SignupForm signUpForm = new SignupForm(front);
+			session.signUpForm = signUpForm;
 
 			signUpForm.onUsernameChange((f4, username) -> {
 				
-				boolean isValidEmailAddress = S8People.VALID_EMAIL_ADDRESS.matcher(username).matches();
+				inboard.getMetrics().signupUsernameChecks.increment();
+				boolean isValidEmailAddress = S8People.EMAIL_ADDRESS_CHECKS.isValid(username);
 				
 				if(isValidEmailAddress) {
-					f4.getRow(new GetRowS8Request(S8People.USERS_TABLE_ID, username){
-						public @Override void onSucceed(Status status, RowS8Object row) {
-							if(status == Status.OK) {
-								if(row != null) {
-									signUpForm.setUsernameFeedbackMessage(
-											new InboardMessage(front, Mode.WARNING, "Username is already reserved"));
-								}
-								else {
-									signUpForm.setUsernameFeedbackMessage(
-											new InboardMessage(front, Mode.VALIDATE, "Username is available!"));
-								}
-							}
-						}
-						public @Override void onFailed(Exception exception) {
-							exception.printStackTrace();
-						}
-					});
-					
+					Boolean isAvailable = availabilityCache.get(username);
+					if(isAvailable != null) {
+						session.usernameDebouncer.supersede(username);
+						setUsernameAvailabilityFeedback(session, isAvailable);
+					}
+					else if(inboard.isDefinitelyAbsent(username)) {
+						session.usernameDebouncer.supersede(username);
+						availabilityCache.put(username, true);
+						setUsernameAvailabilityFeedback(session, true);
+					}
+					else if(session.usernameDebouncer.submit(username)) {
+						lookUpUsername(session, f4, username);
+					}
 				}
 				else {
-					signUpForm.setUsernameFeedbackMessage(
-							new InboardMessage(front, Mode.WARNING, "Username MUST be a valid email address"));
+					session.usernameDebouncer.supersede(username);
+					signUpForm.setUsernameFeedbackMessage(Mode.WARNING, "Username MUST be a valid email address");
 				}
 				f4.send();
 			});
@@ -79,53 +114,44 @@ public class SignupManager {
 			signUpForm.onSignUp((f4, credentials) -> {
 				
 				String username = credentials[0];
-				boolean isValidEmailAddress = S8People.VALID_EMAIL_ADDRESS.matcher(username).matches();
+				boolean isValidEmailAddress = S8People.EMAIL_ADDRESS_CHECKS.isValid(username);
 				
-				if(isValidEmailAddress) {
+				PeopleMetrics metrics = inboard.getMetrics();
+				metrics.signupSubmits.increment();
+				
+				if(isValidEmailAddress && Boolean.FALSE.equals(availabilityCache.get(username))) {
+					metrics.signupRejected.increment();
+					signUpForm.setUsernameFeedbackMessage(Mode.ERROR, "Username is not available");
+				}
+				else if(isValidEmailAddress) {
+					/* never trust hints (filter, cache) to create an account: read the table */
+					long t0 = System.nanoTime();
 					f4.getRow(new GetRowS8Request(S8People.USERS_TABLE_ID, username){
 						public @Override void onSucceed(Status status, RowS8Object row) {
+							metrics.usersLookupLatency.recordSince(t0);
 							if(status == Status.OK) {
+								availabilityCache.put(username, row == null);
 								if(row != null) {
-									signUpForm.setUsernameFeedbackMessage(
-											new InboardMessage(front, Mode.ERROR, "Username is not available"));
+									metrics.signupRejected.increment();
+									signUpForm.setUsernameFeedbackMessage(Mode.ERROR, "Username is not available");
 								}
 								else {
-									signUpForm.setUsernameFeedbackMessage(null); /* clear message */
-									
-									/* then */
-									
-									String passwordDefinition = credentials[1];
-									if(passwordDefinition != null && 
-											S8People.VALID_PASSWORD.matcher(passwordDefinition).matches()) {
-										signUpForm.setDefinePasswordFeedbackMessage(null); /* clear message */
-										
-										String passwordConfirmation = credentials[2];
-										if(passwordDefinition.equals(passwordConfirmation)) {
-											signUpForm.setConfirmPasswordFeedbackMessage(null);
-											onSignUpSucceed(front, f4, username, passwordDefinition);
-										}
-										else {
-											signUpForm.setConfirmPasswordFeedbackMessage(
-													new InboardMessage(front, Mode.WARNING, "Password recopy is not matching"));
-										}
-									}
-									else {
-										signUpForm.setDefinePasswordFeedbackMessage(
-												new InboardMessage(front, Mode.WARNING, "Password is not valid"));
-									}
+									onUsernameAvailable(session, f4, credentials);
 								}
 							}
 						}
 						
 						public @Override void onFailed(Exception exception) {
+							metrics.usersLookupLatency.recordSince(t0);
+							metrics.usersLookupFailures.increment();
 							exception.printStackTrace();
 						}
 					});
 					
 				}
 				else {
-					signUpForm.setUsernameFeedbackMessage(
-							new InboardMessage(front, Mode.WARNING, "Username MUST be a valid email address"));
+					metrics.signupRejected.increment();
+					signUpForm.setUsernameFeedbackMessage(Mode.WARNING, "Username MUST be a valid email address");
 				}
 				f4.send();
 				
@@ -139,68 +165,261 @@ public class SignupManager {
 			
 		}
 		
-		inboard.getBox(front).setForm(signUpForm);
+		inboard.getBox(front).setForm(session.signUpForm);
 	}
 	
 	
 	
-	private void onSignUpSucceed(S8WebFront front, S8AsyncFlow f4, 
-			String username,
-			String password) {
+	/**
+	 * 
+	 * @param session
+	 * @param f4
+	 * @param credentials
+	 */
+	private void onUsernameAvailable(SignupSession session, S8AsyncFlow f4, String[] credentials) {
+		/* coalesced: one delta for all feedback messages */
+		session.signUpForm.update(() -> {
+			String username = credentials[0];
 		
-		validationCode = Long.toHexString(System.nanoTime() & 0xffffffffL);
+			session.signUpForm.setUsernameFeedbackMessage(null); /* clear message */
 		
-		f4.sendEMail(new SendMailS8Request(true) {
-			public @Override void compose(S8MailBuilder mail) throws IOException {
-				mail.setRecipient(username);
-				
-				mail.setSubject("Sign-Up email confirmation");
-				
-				mail.html_setWrapperStyle(".mg-mail-wrapper", null);
-				mail.html_appendBaseElement("div", 
-						".mg-mail-banner", 
-						"background-image: url(https://alphaventor.com/assets/logos/AlphaventorLogo-1024px-black-text.png);", 
-						null);
-				
-				mail.html_appendBaseElement("h1", ".mg-h1", null, "Hello dear AlphaVentor user!");
-				mail.html_appendBaseElement("h2", ".mg-h2", null, "Welcome to a world of designs");
-				mail.html_appendBaseElement("p", ".mg-p", null, 
-						"Please find below your validation code for the creation of your account:");
-				
-				mail.html_appendBaseElement("div", ".mg-code-wrapper", null, validationCode);
-				
-				mail.html_appendBaseElement("p", ".mg-p", null, 
-						"If you're not the initiator of this, please report to pierre.convert@alphaventor.com");
-				
+			/* then */
+		
+			String passwordDefinition = credentials[1];
+			String passwordFailures = S8People.PASSWORD_CHECKS.describeFailures(passwordDefinition, ", ");
+			if(passwordFailures.isEmpty() && inboard.isBreachedPassword(passwordDefinition)) {
+				inboard.getMetrics().signupRejected.increment();
+				inboard.getMetrics().signupBreachedPasswords.increment();
+				session.signUpForm.setDefinePasswordFeedbackMessage(Mode.WARNING, BREACHED_PASSWORD_MESSAGE);
 			}
+			else if(passwordFailures.isEmpty()) {
+				session.signUpForm.setDefinePasswordFeedbackMessage(null); /* clear message */
 			
-			@Override
-			public void onSent(Status status, String message) {
-				
+				String passwordConfirmation = credentials[2];
+				if(passwordDefinition.equals(passwordConfirmation)) {
+					session.signUpForm.setConfirmPasswordFeedbackMessage(null);
+					onSignUpSucceed(session, f4, username, passwordDefinition);
+				}
+				else {
+					inboard.getMetrics().signupRejected.increment();
+					session.signUpForm.setConfirmPasswordFeedbackMessage(Mode.WARNING, "Password recopy is not matching");
+				}
 			}
-			
-			@Override
-			public void onFailed(Exception exception) {
-				// TODO Auto-generated method stub
-				
+			else {
+				inboard.getMetrics().signupRejected.increment();
+				session.signUpForm.setDefinePasswordFeedbackMessage(Mode.WARNING, "Password must contain " + passwordFailures);
 			}
 		});
+	}
+	
+	
+	/**
+	 * Must only be called while holding the debouncer's in-flight lookup.
+	 * 
+	 * @param session
+	 * @param flow
+	 * @param username
+	 */
+	private void lookUpUsername(SignupSession session, S8AsyncFlow flow, String username) {
+		PeopleMetrics metrics = inboard.getMetrics();
+		long t0 = System.nanoTime();
+		flow.getRow(new GetRowS8Request(S8People.USERS_TABLE_ID, username){
+			public @Override void onSucceed(Status status, RowS8Object row) {
+				metrics.usersLookupLatency.recordSince(t0);
+				if(status == Status.OK) {
+					availabilityCache.put(username, row == null);
+					if(session.usernameDebouncer.isLatest(username)) {
+						setUsernameAvailabilityFeedback(session, row == null);
+					}
+				}
+				resolvePendingUsername(session, flow, username);
+			}
+			public @Override void onFailed(Exception exception) {
+				metrics.usersLookupLatency.recordSince(t0);
+				metrics.usersLookupFailures.increment();
+				exception.printStackTrace();
+				resolvePendingUsername(session, flow, username);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Keystrokes collapsed while <code>username</code> was looked up are resolved here:
+	 * from the cache if possible, otherwise with one single additional lookup.
+	 * 
+	 * @param session
+	 * @param flow
+	 * @param username the username whose lookup just completed
+	 */
+	private void resolvePendingUsername(SignupSession session, S8AsyncFlow flow, String username) {
+		String next = session.usernameDebouncer.complete(username);
+		while(next != null) {
+			if(!S8People.EMAIL_ADDRESS_CHECKS.isValid(next)) {
+				/* feedback already given by change handler */
+				next = session.usernameDebouncer.complete(next);
+			}
+			else {
+				Boolean isAvailable = availabilityCache.get(next);
+				if(isAvailable != null) {
+					setUsernameAvailabilityFeedback(session, isAvailable);
+					next = session.usernameDebouncer.complete(next);
+				}
+				else {
+					lookUpUsername(session, flow, next);
+					flow.send();
+					next = null;
+				}
+			}
+		}
+	}
+	
+	
+	private void setUsernameAvailabilityFeedback(SignupSession session, boolean isAvailable) {
+		if(isAvailable) {
+			session.signUpForm.setUsernameFeedbackMessage(Mode.VALIDATE, "Username is available!");
+		}
+		else {
+			session.signUpForm.setUsernameFeedbackMessage(Mode.WARNING, "Username is already reserved");
+		}
+	}
+	
+	
+	
+	private void onSignUpSucceed(SignupSession session, S8AsyncFlow f4, 
+			String username,
+			String password) {
+		
+		String validationCode = verificationCodes.create(username);
+		inboard.getMetrics().signupCodesSent.increment();
+		
+		/* pending validation is held by session, so that concurrent sign-ups never share it */
+		session.username = username;
+		session.password = password;
+		
+		/* hashing overlaps with user reading the validation mail */
+		session.passwordHash = inboard.getPasswordHashingEngine().hash(password);
+		
+		MailOutbox outbox = inboard.getMailOutbox();
+		boolean isEnqueued = false;
+		if(outbox != null) {
+			Map<String, String> parameters = new HashMap<>();
+			parameters.put("code", validationCode);
+			try {
+				/* code only lives in memory: never written to disk, and useless after a restart */
+				outbox.enqueue(new OutboxMail(VALIDATION_MAIL_TYPE, username, VALIDATION_MAIL_SUBJECT, parameters, false));
+				isEnqueued = true;
+			}
+			catch (IOException exception) {
+				/* fall back to inline sending */
+				exception.printStackTrace();
+			}
+		}
+		if(!isEnqueued) {
+			sendValidationMail(f4, username, validationCode);
+		}
 		
 		
-		if(validationForm == null) {
-			validationForm = new ValidateForm(front);
+		if(session.validationForm == null) {
+			ValidateForm validationForm = new ValidateForm(session.front);
+			session.validationForm = validationForm;
 			validationForm.onTyringValidate((f5, codeRecopy) -> {
-				if(validationCode.equals(codeRecopy)) {
-					inboard.onSignUpSucceed(front, f5, username, password);
+				String pendingUsername = session.username;
+				CompletableFuture<String> pendingHash = session.passwordHash;
+				PeopleMetrics metrics = inboard.getMetrics();
+				/* code is only consumed once the account can actually be created */
+				switch(verificationCodes.check(pendingUsername, codeRecopy)) {
+				
+				case VALID:
+					/* started on sign-up submit, typically done by now: applied once completed, then sent */
+					pendingHash.whenComplete((hash, exception) -> {
+						if(exception != null) {
+							exception.printStackTrace();
+							/* code left pending: retry hashes again */
+							if(session.passwordHash == pendingHash && session.password != null) {
+								session.passwordHash = inboard.getPasswordHashingEngine().hash(session.password);
+							}
+							validationForm.setMessage(Mode.ERROR, "Server is busy, please retry");
+						}
+						else if(verificationCodes.validate(pendingUsername, codeRecopy) == VerificationCodeStore.Outcome.VALID) {
+							metrics.verificationValid.increment();
+							if(session.passwordHash == pendingHash) { session.clearPendingValidation(); }
+							metrics.signupCompleted.increment();
+							availabilityCache.put(pendingUsername, false);
+							inboard.onUserChanged(pendingUsername);
+							UsernameFilter usersFilter = inboard.getUsersFilter();
+							if(usersFilter != null) { usersFilter.add(pendingUsername); }
+							inboard.onSignUpValidated(session.front, f5, pendingUsername, hash);
+						}
+						else {
+							/* expired, or consumed by a concurrent submit, meanwhile */
+							metrics.verificationUnknown.increment();
+							validationForm.setMessage(Mode.ERROR, "Validation code has expired, please sign up again");
+						}
+						f5.send();
+					});
+					break;
+					
+				case INVALID:
+					metrics.verificationInvalid.increment();
+					validationForm.setMessage(Mode.WARNING, "Invalid validation code");
+					f5.send();
+					break;
+					
+				case TOO_MANY_ATTEMPTS:
+					metrics.verificationExhausted.increment();
+					session.clearPendingValidation();
+					validationForm.setMessage(Mode.ERROR, "Too many attempts, please sign up again");
+					f5.send();
+					break;
+					
+				case UNKNOWN:
+				default:
+					metrics.verificationUnknown.increment();
+					validationForm.setMessage(Mode.ERROR, "Validation code has expired, please sign up again");
+					f5.send();
+					break;
 				}
 			});
 		}
 		
 		
 		
-		inboard.getBox(front).setForm(validationForm);
+		inboard.getBox(session.front).setForm(session.validationForm);
 	}
 	
 	
+	
+	/**
+	 * Inline sending, when no outbox is available.
+	 * 
+	 * @param flow
+	 * @param username
+	 * @param validationCode
+	 */
+	private void sendValidationMail(S8AsyncFlow flow, String username, String validationCode) {
+		PeopleMetrics metrics = inboard.getMetrics();
+		long t0 = System.nanoTime();
+		flow.sendEMail(new SendMailS8Request(true) {
+			public @Override void compose(S8MailBuilder mail) throws IOException {
+				mail.setRecipient(username);
+				VALIDATION_MAIL_TEMPLATE.compose(mail, VALIDATION_MAIL_TEMPLATE.bind().set(VALIDATION_CODE_SLOT, validationCode));
+			}
+			
+			@Override
+			public void onSent(Status status, String message) {
+				metrics.mailSendLatency.recordSince(t0);
+				if(status != Status.OK) { metrics.mailSendFailures.increment(); }
+			}
+			
+			@Override
+			public void onFailed(Exception exception) {
+				metrics.mailSendLatency.recordSince(t0);
+				metrics.mailSendFailures.increment();
+				exception.printStackTrace();
+			}
+		});
+	}
+	
 
 }
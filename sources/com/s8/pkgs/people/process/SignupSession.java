@@ -0,0 +1,54 @@
+package com.s8.pkgs.people.process;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.s8.api.web.S8WebFront;
+import com.s8.pkgs.people.forms.SignupForm;
+import com.s8.pkgs.people.forms.ValidateForm;
+
+
+/**
+ * Sign-up state of one front. Only ever touched by this front's flows.
+ */
+public class SignupSession {
+
+
+	public final S8WebFront front;
+
+	SignupForm signUpForm;
+
+	ValidateForm validationForm;
+
+	final UsernameDebouncer usernameDebouncer = new UsernameDebouncer();
+
+
+	/* <pending-validation> */
+
+	String username;
+
+	/** kept to restart hashing if it failed, so that the pending code can be retried */
+	String password;
+
+	CompletableFuture<String> passwordHash;
+
+	/* </pending-validation> */
+
+
+
+	/**
+	 * 
+	 * @param front
+	 */
+	public SignupSession(S8WebFront front) {
+		super();
+		this.front = front;
+	}
+
+
+	void clearPendingValidation() {
+		username = null;
+		password = null;
+		passwordHash = null;
+	}
+
+}
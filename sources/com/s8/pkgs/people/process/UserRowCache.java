@@ -0,0 +1,410 @@
+package com.s8.pkgs.people.process;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.s8.api.flow.S8User;
+
+
+/**
+ * Read-through cache of user rows, keyed by username.
+ *
+ * Bounded with a W-TinyLFU-like policy: new entries land in a small LRU window, and
+ * are only admitted to the main segmented LRU (probation / protected) if their
+ * estimated access frequency (count-min sketch, periodically halved) beats the one of
+ * the main victim. Entries also expire after a TTL. Concurrent loads of the same cold
+ * username are coalesced into one single load.
+ *
+ * Hits are lock-free: entries are looked up in a concurrent map, and accesses are
+ * recorded in a lossy ring buffer, replayed on the policy (sketch and segments) by
+ * whichever thread next holds the policy lock. Under contention, some accesses are
+ * dropped: they only make frequencies and recencies approximate.
+ *
+ * Absent users are not cached. Entries must be invalidated when the row changes
+ * (sign-up, password change).
+ */
+public class UserRowCache {
+
+
+	private static final class Entry {
+
+		private final S8User user;
+
+		private final long expiresAt;
+
+		private Entry(S8User user, long expiresAt) {
+			super();
+			this.user = user;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+
+	/**
+	 * 4-bit count-min sketch, 4 rows folded in one table
+	 */
+	private static final class FrequencySketch {
+
+		private final long[] table;
+
+		private final int mask;
+
+		private final int sampleSize;
+
+		private int size = 0;
+
+		private FrequencySketch(int capacity) {
+			super();
+			int n = Integer.highestOneBit(Math.max(8, capacity - 1)) << 1;
+			this.table = new long[n];
+			this.mask = n - 1;
+			this.sampleSize = 10 * Math.max(capacity, 1);
+		}
+
+		private int frequency(int hash) {
+			int frequency = 15;
+			for(int i = 0; i < 4; i++) {
+				frequency = Math.min(frequency, (int) ((table[index(hash, i)] >>> offset(hash, i)) & 0xfL));
+			}
+			return frequency;
+		}
+
+		private void increment(int hash) {
+			boolean isAdded = false;
+			for(int i = 0; i < 4; i++) {
+				int index = index(hash, i), offset = offset(hash, i);
+				if(((table[index] >>> offset) & 0xfL) < 15) {
+					table[index] += 1L << offset;
+					isAdded = true;
+				}
+			}
+			if(isAdded && ++size >= sampleSize) {
+				/* aging: halve all counters */
+				for(int i = 0; i < table.length; i++) { table[i] = (table[i] >>> 1) & 0x7777777777777777L; }
+				size /= 2;
+			}
+		}
+
+		private int index(int hash, int i) {
+			int h = hash * (0x9E3779B9 + 2 * i) + i;
+			return (h ^ (h >>> 17)) & mask;
+		}
+
+		private static int offset(int hash, int i) {
+			/* one of 16 counters of the word, distinct row per i */
+			return (((hash >>> (8 * i)) & 3) + (i << 2)) << 2;
+		}
+	}
+
+
+	/** nb of slots of the access buffer (power of 2) */
+	private static final int READ_BUFFER_SIZE = 64;
+
+	/** 1 in this many accesses tries to replay the access buffer (power of 2) */
+	private static final int DRAIN_PERIOD = 32;
+
+
+	/** max nb of entries */
+	public final int capacity;
+
+	/** time-to-live of an entry, in milliseconds */
+	public final long ttl;
+
+
+	private final int windowCapacity;
+
+	private final int protectedCapacity;
+
+	private final int mainCapacity;
+
+	/** lookups: mirrors the three segments, only modified under lock */
+	private final ConcurrentHashMap<String, Entry> data = new ConcurrentHashMap<>();
+
+	/** usernames accessed since last drain, slots overwritten when racing */
+	private final AtomicReferenceArray<String> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+
+	private final AtomicBoolean isDraining = new AtomicBoolean(false);
+
+	/* under lock, insertion ordered: eldest first, refreshed on access by re-insertion */
+
+	private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>();
+
+	private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>();
+
+	private final LinkedHashMap<String, Entry> protectedSegment = new LinkedHashMap<>();
+
+	private final FrequencySketch sketch;
+
+	private final ConcurrentHashMap<String, CompletableFuture<S8User>> loads = new ConcurrentHashMap<>();
+
+
+	private final LongAdder nHits = new LongAdder();
+
+	private final LongAdder nMisses = new LongAdder();
+
+	private final LongAdder nCoalesced = new LongAdder();
+
+	private final LongAdder nLoads = new LongAdder();
+
+	private final LongAdder nLoadFailures = new LongAdder();
+
+	private final LongAdder totalLoadTime = new LongAdder();
+
+	private final LongAdder nEvictions = new LongAdder();
+
+
+
+	/**
+	 *
+	 * @param capacity
+	 * @param ttl in milliseconds
+	 */
+	public UserRowCache(int capacity, long ttl) {
+		super();
+		this.capacity = capacity;
+		this.ttl = ttl;
+		this.windowCapacity = Math.max(1, capacity / 100);
+		this.mainCapacity = Math.max(1, capacity - windowCapacity);
+		this.protectedCapacity = (int) (0.8 * mainCapacity);
+		this.sketch = new FrequencySketch(capacity);
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @param loader called on miss, at most once for concurrent requests of the same
+	 * username, completing with <code>null</code> if user does not exist
+	 * @return user, <code>null</code> if not existing
+	 */
+	public CompletableFuture<S8User> get(String username, Function<String, CompletableFuture<S8User>> loader) {
+		S8User user = getIfPresent(username);
+		if(user != null) {
+			nHits.increment();
+			return CompletableFuture.completedFuture(user);
+		}
+		nMisses.increment();
+
+		CompletableFuture<S8User> load = new CompletableFuture<>();
+		CompletableFuture<S8User> existing = loads.putIfAbsent(username, load);
+		if(existing != null) {
+			nCoalesced.increment();
+			return existing;
+		}
+
+		long t0 = System.nanoTime();
+		CompletableFuture<S8User> loading;
+		try {
+			loading = loader.apply(username);
+		}
+		catch(RuntimeException exception) {
+			loading = CompletableFuture.failedFuture(exception);
+		}
+		loading.whenComplete((loaded, exception) -> {
+			nLoads.increment();
+			totalLoadTime.add(System.nanoTime() - t0);
+			/* only a load that has not been invalidated meanwhile may populate */
+			boolean isCurrent = loads.remove(username, load);
+			if(exception != null) {
+				nLoadFailures.increment();
+				load.completeExceptionally(exception);
+			}
+			else {
+				if(isCurrent && loaded != null) { put(username, loaded); }
+				load.complete(loaded);
+			}
+		});
+		return load;
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @return cached user, <code>null</code> if not cached (or expired)
+	 */
+	public S8User getIfPresent(String username) {
+		Entry entry = data.get(username);
+		recordAccess(username);
+		return entry != null && entry.expiresAt >= System.currentTimeMillis() ? entry.user : null;
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @param user
+	 */
+	public void put(String username, S8User user) {
+		Entry entry = new Entry(user, System.currentTimeMillis() + ttl);
+		synchronized (this) {
+			data.put(username, entry);
+			if(protectedSegment.containsKey(username)) { protectedSegment.put(username, entry); return; }
+			if(probation.containsKey(username)) { probation.put(username, entry); return; }
+			window.remove(username);
+			window.put(username, entry);
+			if(window.size() > windowCapacity) { evictWindow(); }
+		}
+	}
+
+
+	/**
+	 * To be called whenever the user row changes (sign-up, password change...).
+	 *
+	 * @param username
+	 */
+	public void invalidate(String username) {
+		loads.remove(username);
+		synchronized (this) {
+			data.remove(username);
+			if(window.remove(username) == null && probation.remove(username) == null) {
+				protectedSegment.remove(username);
+			}
+		}
+	}
+
+
+	/**
+	 *
+	 * @return nb of entries currently held (including not yet purged expired ones)
+	 */
+	public int size() {
+		return data.size();
+	}
+
+
+	private void recordAccess(String username) {
+		int random = ThreadLocalRandom.current().nextInt();
+		readBuffer.lazySet(random & (READ_BUFFER_SIZE - 1), username);
+		/* other readers never touch the lock: at most one at a time replays the buffer */
+		if((random >>> 24 & (DRAIN_PERIOD - 1)) == 0 && isDraining.compareAndSet(false, true)) {
+			try {
+				synchronized (this) { drainReadBuffer(); }
+			}
+			finally {
+				isDraining.set(false);
+			}
+		}
+	}
+
+
+	/** under lock */
+	private void drainReadBuffer() {
+		for(int i = 0; i < READ_BUFFER_SIZE; i++) {
+			String username = readBuffer.get(i);
+			if(username != null && readBuffer.compareAndSet(i, username, null)) {
+				sketch.increment(spread(username.hashCode()));
+				Entry entry;
+				if((entry = window.remove(username)) != null) { window.put(username, entry); }
+				else if((entry = probation.remove(username)) != null) { promote(username, entry); }
+				else if((entry = protectedSegment.remove(username)) != null) { protectedSegment.put(username, entry); }
+			}
+		}
+	}
+
+
+	/** under lock */
+	private void promote(String username, Entry entry) {
+		protectedSegment.put(username, entry);
+		if(protectedSegment.size() > protectedCapacity) {
+			/* demote eldest protected back to probation */
+			Iterator<Map.Entry<String, Entry>> iterator = protectedSegment.entrySet().iterator();
+			Map.Entry<String, Entry> eldest = iterator.next();
+			iterator.remove();
+			probation.put(eldest.getKey(), eldest.getValue());
+		}
+	}
+
+
+	/** under lock */
+	private void evictWindow() {
+		Iterator<Map.Entry<String, Entry>> iterator = window.entrySet().iterator();
+		Map.Entry<String, Entry> candidate = iterator.next();
+		iterator.remove();
+
+		if(probation.size() + protectedSegment.size() < mainCapacity) {
+			probation.put(candidate.getKey(), candidate.getValue());
+			return;
+		}
+
+		/* main is full: candidate competes with probation's eldest (or protected's) */
+		LinkedHashMap<String, Entry> victimSegment = probation.isEmpty() ? protectedSegment : probation;
+		Iterator<Map.Entry<String, Entry>> victims = victimSegment.entrySet().iterator();
+		Map.Entry<String, Entry> victim = victims.next();
+
+		int candidateFrequency = sketch.frequency(spread(candidate.getKey().hashCode()));
+		int victimFrequency = sketch.frequency(spread(victim.getKey().hashCode()));
+		if(candidateFrequency > victimFrequency) {
+			victims.remove();
+			data.remove(victim.getKey());
+			probation.put(candidate.getKey(), candidate.getValue());
+		}
+		else {
+			data.remove(candidate.getKey());
+		}
+		nEvictions.increment();
+	}
+
+
+	private static int spread(int h) {
+		h ^= h >>> 16;
+		h *= 0x45d9f3b;
+		return h ^ (h >>> 16);
+	}
+
+
+	public long getHitCount() {
+		return nHits.sum();
+	}
+
+	public long getMissCount() {
+		return nMisses.sum();
+	}
+
+	/**
+	 *
+	 * @return hit ratio, in [0, 1]
+	 */
+	public double getHitRatio() {
+		long hits = nHits.sum(), total = hits + nMisses.sum();
+		return total > 0 ? (double) hits / total : 0.0;
+	}
+
+	/**
+	 *
+	 * @return nb of misses served by an already in-flight load
+	 */
+	public long getCoalescedCount() {
+		return nCoalesced.sum();
+	}
+
+	public long getLoadCount() {
+		return nLoads.sum();
+	}
+
+	public long getLoadFailureCount() {
+		return nLoadFailures.sum();
+	}
+
+	/**
+	 *
+	 * @return average load latency, in nanoseconds
+	 */
+	public double getAverageLoadTime() {
+		long n = nLoads.sum();
+		return n > 0 ? (double) totalLoadTime.sum() / n : 0.0;
+	}
+
+	public long getEvictionCount() {
+		return nEvictions.sum();
+	}
+
+}
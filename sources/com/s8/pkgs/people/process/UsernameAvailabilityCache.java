@@ -0,0 +1,134 @@
+package com.s8.pkgs.people.process;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Bounded, TTL-evicting cache of username availability, shared by all sign-up
+ * fronts so that repeated checks do not hit the users table.
+ */
+public class UsernameAvailabilityCache {
+
+
+	private static class Entry {
+
+		public final boolean isAvailable;
+
+		public final long expiresAt;
+
+		public Entry(boolean isAvailable, long expiresAt) {
+			super();
+			this.isAvailable = isAvailable;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+
+	/** max number of entries */
+	public final int capacity;
+
+	/** time-to-live of an entry, in milliseconds */
+	public final long ttl;
+
+
+	private final LinkedHashMap<String, Entry> entries;
+
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+
+
+	/**
+	 *
+	 * @param capacity
+	 * @param ttl in milliseconds
+	 */
+	public UsernameAvailabilityCache(int capacity, long ttl) {
+		super();
+		this.capacity = capacity;
+		this.ttl = ttl;
+		this.entries = new LinkedHashMap<String, Entry>(capacity, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected @Override boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > UsernameAvailabilityCache.this.capacity;
+			}
+		};
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @return <code>null</code> if not cached (or expired), availability otherwise
+	 */
+	public Boolean get(String username) {
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(username);
+			if(entry != null && entry.expiresAt < System.currentTimeMillis()) {
+				entries.remove(username);
+				entry = null;
+			}
+		}
+		if(entry != null) {
+			hits.increment();
+			return entry.isAvailable;
+		}
+		else {
+			misses.increment();
+			return null;
+		}
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @param isAvailable
+	 */
+	public void put(String username, boolean isAvailable) {
+		Entry entry = new Entry(isAvailable, System.currentTimeMillis() + ttl);
+		synchronized (entries) { entries.put(username, entry); }
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 */
+	public void invalidate(String username) {
+		synchronized (entries) { entries.remove(username); }
+	}
+
+
+	/**
+	 *
+	 * @return number of entries currently held (including not yet purged expired ones)
+	 */
+	public int size() {
+		synchronized (entries) { return entries.size(); }
+	}
+
+
+	/**
+	 *
+	 * @return number of lookups answered without a users table read
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+
+	/**
+	 *
+	 * @return number of lookups that required a users table read
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+}
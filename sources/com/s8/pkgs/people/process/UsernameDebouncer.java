@@ -0,0 +1,81 @@
+package com.s8.pkgs.people.process;
+
+
+/**
+ * Per-front debouncer for username change events.
+ *
+ * At most one users table lookup is in flight per front: changes arriving while a
+ * lookup is pending only replace the latest username, which is then looked up (once)
+ * when the pending lookup completes. Intermediate keystrokes are therefore collapsed
+ * and stale results are never shown.
+ */
+public class UsernameDebouncer {
+
+
+	private String latest;
+
+	private boolean isInFlight = false;
+
+
+	public UsernameDebouncer() {
+		super();
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @return <code>true</code> if caller must start a lookup for this username,
+	 * <code>false</code> if it has been queued behind the pending lookup.
+	 */
+	public synchronized boolean submit(String username) {
+		latest = username;
+		if(isInFlight) {
+			return false;
+		}
+		else {
+			isInFlight = true;
+			return true;
+		}
+	}
+
+
+	/**
+	 * Record a username answered without lookup (invalid or cached), so that
+	 * pending results for previous usernames are discarded.
+	 *
+	 * @param username
+	 */
+	public synchronized void supersede(String username) {
+		latest = username;
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @return <code>true</code> if username is still the latest typed
+	 */
+	public synchronized boolean isLatest(String username) {
+		return username.equals(latest);
+	}
+
+
+	/**
+	 * To be called when lookup for <code>username</code> has completed.
+	 *
+	 * @param username
+	 * @return the next username to look up (lookup is then still considered in flight),
+	 * or <code>null</code> if nothing left to do.
+	 */
+	public synchronized String complete(String username) {
+		if(latest == null || latest.equals(username)) {
+			isInFlight = false;
+			return null;
+		}
+		else {
+			return latest;
+		}
+	}
+
+}
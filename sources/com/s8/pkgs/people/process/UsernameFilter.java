@@ -0,0 +1,291 @@
+package com.s8.pkgs.people.process;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * In-memory Bloom filter of the usernames held by a users table. Answers
+ * "definitely absent" without any table round trip.
+ *
+ * A filter only answers once populated (built from a full list of usernames, or
+ * restored from a snapshot taken at the current watermark of the table), and must
+ * then be kept up to date with every sign-up so that it never produces false negatives.
+ * Answers are hints (availability feedback, failed log-ins): account creation always
+ * reads the table.
+ */
+public class UsernameFilter {
+
+
+	private static final int MAGIC = 0x53384246; /* S8BF */
+
+	private static final int VERSION = 2;
+
+	private static final int MAX_NB_HASHES = 16;
+
+
+	private static final ConcurrentHashMap<String, UsernameFilter> TABLES = new ConcurrentHashMap<>();
+
+
+	/**
+	 *
+	 * @param usersTableId
+	 * @return the filter registered for this table, <code>null</code> if none
+	 */
+	public static UsernameFilter get(String usersTableId) {
+		return TABLES.get(usersTableId);
+	}
+
+
+	/**
+	 *
+	 * @param usersTableId
+	 * @param filter
+	 */
+	public static void register(String usersTableId, UsernameFilter filter) {
+		TABLES.put(usersTableId, filter);
+	}
+
+
+	/**
+	 *
+	 * @param expectedInsertions
+	 * @param falsePositiveRate e.g. 0.01
+	 * @param maxBytes memory budget of the bit array
+	 * @param usernames all usernames currently in the table
+	 * @return a populated filter
+	 */
+	public static UsernameFilter build(long expectedInsertions, double falsePositiveRate, long maxBytes,
+			Iterable<String> usernames) {
+		UsernameFilter filter = new UsernameFilter(expectedInsertions, falsePositiveRate, maxBytes);
+		for(String username : usernames) { filter.add(username); }
+		filter.isPopulated = true;
+		return filter;
+	}
+
+
+	/** nb of bits */
+	public final long nbBits;
+
+	/** nb of hash functions */
+	public final int nbHashes;
+
+	private final AtomicLongArray words;
+
+	private final LongAdder nbInsertions = new LongAdder();
+
+	private volatile boolean isPopulated = false;
+
+	/** watermark of the table at snapshot time, if restored */
+	private long watermark = -1;
+
+
+
+	/**
+	 * Create an empty, not yet populated filter.
+	 *
+	 * @param expectedInsertions
+	 * @param falsePositiveRate
+	 * @param maxBytes
+	 */
+	public UsernameFilter(long expectedInsertions, double falsePositiveRate, long maxBytes) {
+		super();
+		if(expectedInsertions <= 0) { expectedInsertions = 1; }
+		if(falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate must be in ]0, 1[");
+		}
+
+		long optimalNbBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		long nbBits = Math.min(optimalNbBits, maxBytes * 8);
+
+		/* round up to whole words, array size is bounded by int */
+		int nbWords = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (nbBits + 63) / 64));
+		this.nbBits = nbWords * 64L;
+		this.nbHashes = (int) Math.max(1, Math.min(MAX_NB_HASHES,
+				Math.round((double) this.nbBits / expectedInsertions * Math.log(2))));
+		this.words = new AtomicLongArray(nbWords);
+	}
+
+
+	private UsernameFilter(int nbHashes, long[] words) {
+		super();
+		this.nbBits = words.length * 64L;
+		this.nbHashes = nbHashes;
+		this.words = new AtomicLongArray(words);
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 */
+	public void add(String username) {
+		long hash = hash(username);
+		for(int i = 1; i <= nbHashes; i++) { setBit(index(hash, i)); }
+		nbInsertions.increment();
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @return <code>false</code> if username has definitely never been added
+	 */
+	public boolean mightContain(String username) {
+		long hash = hash(username);
+		for(int i = 1; i <= nbHashes; i++) {
+			long index = index(hash, i);
+			if((words.get((int) (index >>> 6)) & (1L << index)) == 0) { return false; }
+		}
+		return true;
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @return <code>true</code> only if filter is populated and username is absent from it.
+	 */
+	public boolean isDefinitelyAbsent(String username) {
+		return isPopulated && !mightContain(username);
+	}
+
+
+	/**
+	 * Mark filter as holding all usernames of the table.
+	 */
+	public void setPopulated() {
+		isPopulated = true;
+	}
+
+
+	public boolean isPopulated() {
+		return isPopulated;
+	}
+
+
+	/**
+	 *
+	 * @return nb of usernames added since creation (or restoration)
+	 */
+	public long getInsertionCount() {
+		return nbInsertions.sum();
+	}
+
+
+	/**
+	 *
+	 * @return size of the bit array, in bytes
+	 */
+	public long getMemoryFootprint() {
+		return nbBits / 8;
+	}
+
+
+	/**
+	 *
+	 * @return watermark of the table the restored snapshot was taken at, 
+	 * <code>-1</code> if not restored
+	 */
+	public long getWatermark() {
+		return watermark;
+	}
+
+
+	/**
+	 * Write filter along with its populated state and the watermark of the table it
+	 * reflects (e.g. a row count or version maintained by the caller, which must not
+	 * advance without the filter being updated).
+	 * 
+	 * @param out
+	 * @param watermark
+	 * @throws IOException
+	 */
+	public void snapshot(OutputStream out, long watermark) throws IOException {
+		DataOutputStream output = new DataOutputStream(out);
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeBoolean(isPopulated);
+		output.writeLong(watermark);
+		output.writeInt(nbHashes);
+		int nbWords = words.length();
+		output.writeInt(nbWords);
+		for(int i = 0; i < nbWords; i++) { output.writeLong(words.get(i)); }
+		output.flush();
+	}
+
+
+	/**
+	 * Restore a filter, populated only if it was when snapshot and the table has not
+	 * moved since. Otherwise, usernames added after {@link #getWatermark()} must be 
+	 * added before calling {@link #setPopulated()}.
+	 * 
+	 * @param in
+	 * @param watermark current watermark of the table
+	 * @return the restored filter
+	 * @throws IOException
+	 */
+	public static UsernameFilter restore(InputStream in, long watermark) throws IOException {
+		DataInputStream input = new DataInputStream(in);
+		if(input.readInt() != MAGIC) { throw new IOException("Not a username filter snapshot"); }
+		int version = input.readInt();
+		if(version != VERSION) { throw new IOException("Unsupported username filter snapshot version: " + version); }
+		boolean isPopulated = input.readBoolean();
+		long snapshotWatermark = input.readLong();
+		int nbHashes = input.readInt();
+		int nbWords = input.readInt();
+		if(nbHashes < 1 || nbHashes > MAX_NB_HASHES || nbWords < 1) {
+			throw new IOException("Corrupted username filter snapshot");
+		}
+		long[] words = new long[nbWords];
+		for(int i = 0; i < nbWords; i++) { words[i] = input.readLong(); }
+		UsernameFilter filter = new UsernameFilter(nbHashes, words);
+		filter.watermark = snapshotWatermark;
+		filter.isPopulated = isPopulated && snapshotWatermark == watermark;
+		return filter;
+	}
+
+
+	/**
+	 * Kirsch-Mitzenmacher double hashing
+	 */
+	private long index(long hash, int i) {
+		long h2 = Long.rotateLeft(hash, 32) | 1L;
+		return ((hash + i * h2) & Long.MAX_VALUE) % nbBits;
+	}
+
+
+	private void setBit(long index) {
+		int i = (int) (index >>> 6);
+		long mask = 1L << index;
+		long word;
+		while(((word = words.get(i)) & mask) == 0 && !words.compareAndSet(i, word, word | mask));
+	}
+
+
+	/**
+	 * 64-bit FNV-1a over UTF-8 bytes, finalized with murmur3 mixer
+	 */
+	private static long hash(String username) {
+		byte[] bytes = username.getBytes(StandardCharsets.UTF_8);
+		long h = 0xcbf29ce484222325L;
+		for(byte b : bytes) {
+			h ^= (b & 0xff);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
@@ -0,0 +1,281 @@
+package com.s8.pkgs.people.process;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Pending sign-up verifications, keyed by username.
+ *
+ * Codes are drawn from a {@link SecureRandom}, expire after a TTL (driven by a
+ * {@link HierarchicalTimingWheel}, so expiry is O(1) whatever the number of pending
+ * entries), allow a limited number of attempts, and memory is bounded: once capacity
+ * is reached, the oldest pending entries are evicted.
+ */
+public class VerificationCodeStore {
+
+
+	public enum Outcome {
+
+		/** code matches, entry is consumed (unless only checked) */
+		VALID,
+
+		/** code does not match, attempts left */
+		INVALID,
+
+		/** code does not match and no attempts left: entry is dropped */
+		TOO_MANY_ATTEMPTS,
+
+		/** no pending verification (never created, expired or evicted) */
+		UNKNOWN;
+	}
+
+
+	private static final class Entry extends HierarchicalTimingWheel.Node {
+
+		private final String username;
+
+		private final byte[] code;
+
+		private int attempts = 0;
+
+		/** insertion-ordered list, for eviction of oldest */
+		private Entry older, newer;
+
+		private Entry(String username, byte[] code) {
+			super();
+			this.username = username;
+			this.code = code;
+		}
+	}
+
+
+	/** max nb of pending verifications */
+	public final int capacity;
+
+	/** time-to-live, in milliseconds */
+	public final long ttl;
+
+	public final int maxAttempts;
+
+	/** nb of digits */
+	public final int codeLength;
+
+
+	private final SecureRandom random = new SecureRandom();
+
+	private final HashMap<String, Entry> entries;
+
+	private final HierarchicalTimingWheel<Entry> wheel;
+
+	private Entry oldest, newest;
+
+
+	private final LongAdder nCreated = new LongAdder();
+
+	private final LongAdder nValidated = new LongAdder();
+
+	private final LongAdder nRejected = new LongAdder();
+
+	private final LongAdder nExhausted = new LongAdder();
+
+	private final LongAdder nExpired = new LongAdder();
+
+	private final LongAdder nEvicted = new LongAdder();
+
+
+
+	/**
+	 *
+	 * @param capacity
+	 * @param ttl in milliseconds
+	 * @param maxAttempts
+	 * @param codeLength nb of digits
+	 */
+	public VerificationCodeStore(int capacity, long ttl, int maxAttempts, int codeLength) {
+		super();
+		this.capacity = capacity;
+		this.ttl = ttl;
+		this.maxAttempts = maxAttempts;
+		this.codeLength = codeLength;
+		this.entries = new HashMap<>(Math.min(capacity, 1 << 16));
+		this.wheel = new HierarchicalTimingWheel<>(1000, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Create a new pending verification, replacing any previous one for this username.
+	 *
+	 * @param username
+	 * @return the code
+	 */
+	public String create(String username) {
+		char[] digits = new char[codeLength];
+		for(int i = 0; i < codeLength; i++) { digits[i] = (char) ('0' + random.nextInt(10)); }
+		String code = new String(digits);
+
+		Entry entry = new Entry(username, code.getBytes(StandardCharsets.US_ASCII));
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			wheel.advance(now, this::expire);
+			Entry previous = entries.remove(username);
+			if(previous != null) { drop(previous); }
+			while(entries.size() >= capacity && oldest != null) {
+				Entry evicted = oldest;
+				entries.remove(evicted.username);
+				drop(evicted);
+				nEvicted.increment();
+			}
+			entries.put(username, entry);
+			if(newest != null) { newest.newer = entry; entry.older = newest; } else { oldest = entry; }
+			newest = entry;
+			wheel.schedule(entry, now + ttl);
+		}
+		nCreated.increment();
+		return code;
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @param code
+	 * @return outcome
+	 */
+	public Outcome validate(String username, String code) {
+		return validate(username, code, true);
+	}
+
+
+	/**
+	 * Same as {@link #validate(String, String)} (wrong codes count as attempts), except that
+	 * a matching code is left pending, to be consumed with {@link #validate(String, String)} 
+	 * once acted upon.
+	 *
+	 * @param username
+	 * @param code
+	 * @return outcome
+	 */
+	public Outcome check(String username, String code) {
+		return validate(username, code, false);
+	}
+
+
+	private Outcome validate(String username, String code, boolean isConsuming) {
+		if(username == null || code == null) { return Outcome.UNKNOWN; }
+		byte[] candidate = code.trim().getBytes(StandardCharsets.US_ASCII);
+		Outcome outcome;
+		synchronized (this) {
+			wheel.advance(System.currentTimeMillis(), this::expire);
+			Entry entry = entries.get(username);
+			if(entry == null) {
+				outcome = Outcome.UNKNOWN;
+			}
+			else if(MessageDigest.isEqual(entry.code, candidate)) {
+				if(isConsuming) {
+					entries.remove(username);
+					drop(entry);
+				}
+				outcome = Outcome.VALID;
+			}
+			else if(++entry.attempts >= maxAttempts) {
+				entries.remove(username);
+				drop(entry);
+				outcome = Outcome.TOO_MANY_ATTEMPTS;
+			}
+			else {
+				outcome = Outcome.INVALID;
+			}
+		}
+		switch(outcome) {
+		case VALID: if(isConsuming) { nValidated.increment(); } break;
+		case INVALID: nRejected.increment(); break;
+		case TOO_MANY_ATTEMPTS: nRejected.increment(); nExhausted.increment(); break;
+		default: break;
+		}
+		return outcome;
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 */
+	public synchronized void remove(String username) {
+		Entry entry = entries.remove(username);
+		if(entry != null) { drop(entry); }
+	}
+
+
+	/**
+	 *
+	 * @return nb of pending verifications
+	 */
+	public synchronized int size() {
+		wheel.advance(System.currentTimeMillis(), this::expire);
+		return entries.size();
+	}
+
+
+	/** called under lock, entry already unscheduled */
+	private void expire(Entry entry) {
+		entries.remove(entry.username);
+		unlinkOrder(entry);
+		nExpired.increment();
+	}
+
+
+	private void drop(Entry entry) {
+		wheel.cancel(entry);
+		unlinkOrder(entry);
+	}
+
+
+	private void unlinkOrder(Entry entry) {
+		if(entry.older != null) { entry.older.newer = entry.newer; } else { oldest = entry.newer; }
+		if(entry.newer != null) { entry.newer.older = entry.older; } else { newest = entry.older; }
+		entry.older = null;
+		entry.newer = null;
+	}
+
+
+	public long getCreatedCount() {
+		return nCreated.sum();
+	}
+
+	public long getValidatedCount() {
+		return nValidated.sum();
+	}
+
+	/**
+	 *
+	 * @return nb of wrong codes submitted
+	 */
+	public long getRejectedCount() {
+		return nRejected.sum();
+	}
+
+	/**
+	 *
+	 * @return nb of verifications dropped after max attempts
+	 */
+	public long getExhaustedCount() {
+		return nExhausted.sum();
+	}
+
+	public long getExpiredCount() {
+		return nExpired.sum();
+	}
+
+	/**
+	 *
+	 * @return nb of verifications evicted to respect capacity
+	 */
+	public long getEvictedCount() {
+		return nEvicted.sum();
+	}
+
+}
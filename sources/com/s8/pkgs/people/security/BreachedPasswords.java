@@ -0,0 +1,236 @@
+package com.s8.pkgs.people.security;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Offline screening of passwords against a locally provisioned list of breached
+ * password SHA-1 hashes (e.g. the "ordered by hash" Pwned Passwords dump), without any
+ * network call.
+ *
+ * The index file is memory-mapped and never loaded on heap: records are read in place
+ * by the OS page cache. Each hash is stored as its first 16 bits (prefix, implicit: a
+ * 2^16 entries fan-out table gives the records range of each prefix) and the next 64
+ * bits (suffix, the record itself, sorted). A lookup is then one binary search within
+ * one prefix range. Keeping 80 bits out of 160 gives a false positive rate of about
+ * <code>n / 2^80</code>, negligible for any real dump.
+ *
+ * File layout: magic, version, prefix bits, suffix bytes (4 ints), nb of records
+ * (long), fan-out table (<code>2^16 + 1</code> longs: index of first record of each
+ * prefix, then nb of records), records (longs, big-endian).
+ */
+public class BreachedPasswords {
+
+
+	private static final int MAGIC = 0x53384250; /* S8BP */
+
+	private static final int VERSION = 1;
+
+	private static final int PREFIX_BITS = 16;
+
+	private static final int SUFFIX_BYTES = 8;
+
+	private static final int NB_PREFIXES = 1 << PREFIX_BITS;
+
+	private static final int HEADER_LENGTH = 4 * 4 + 8 + (NB_PREFIXES + 1) * 8;
+
+	/** records per mapped segment (1 GiB) */
+	private static final int SEGMENT_SHIFT = 27;
+
+	private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+
+	private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException exception) {
+			throw new IllegalStateException(exception);
+		}
+	});
+
+
+
+	/**
+	 * Map an index file.
+	 *
+	 * @param path
+	 * @return screening
+	 * @throws IOException if file is missing or not a valid index
+	 */
+	public static BreachedPasswords open(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_LENGTH));
+			if(header.capacity() < HEADER_LENGTH || header.getInt() != MAGIC) {
+				throw new IOException("Not a breached passwords index: " + path);
+			}
+			int version = header.getInt(), prefixBits = header.getInt(), suffixBytes = header.getInt();
+			if(version != VERSION || prefixBits != PREFIX_BITS || suffixBytes != SUFFIX_BYTES) {
+				throw new IOException("Unsupported breached passwords index (version " + version + "): " + path);
+			}
+			long size = header.getLong();
+			if(channel.size() != HEADER_LENGTH + size * SUFFIX_BYTES) {
+				throw new IOException("Truncated breached passwords index: " + path);
+			}
+			long[] fanOut = new long[NB_PREFIXES + 1];
+			header.asLongBuffer().get(fanOut);
+
+			/* channel can be closed once mapped */
+			int nSegments = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+			MappedByteBuffer[] segments = new MappedByteBuffer[nSegments];
+			for(int i = 0; i < nSegments; i++) {
+				long first = (long) i << SEGMENT_SHIFT;
+				long length = Math.min(size - first, 1L << SEGMENT_SHIFT) * SUFFIX_BYTES;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH + first * SUFFIX_BYTES, length);
+			}
+			return new BreachedPasswords(size, fanOut, segments);
+		}
+	}
+
+
+	/**
+	 * Convert a text dump (one <code>SHA1-HEX[:count]</code> per line, sorted by hash) into
+	 * an index file.
+	 *
+	 * @param reader dump
+	 * @param path index file to write
+	 * @param minCount entries seen fewer times than this are skipped (1 to keep all)
+	 * @return nb of records written
+	 * @throws IOException on read/write failure, or if dump is malformed or not sorted
+	 */
+	public static long convert(BufferedReader reader, Path path, int minCount) throws IOException {
+		long[] fanOut = new long[NB_PREFIXES + 1];
+		long size = 0;
+		int lastPrefix = -1;
+		long lastSuffix = 0;
+
+		try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 20))) {
+			/* header placeholder, written once counts are known */
+			output.write(new byte[HEADER_LENGTH]);
+
+			String line;
+			long lineNumber = 0;
+			while((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if(line.isEmpty()) { continue; }
+				int colon = line.indexOf(':');
+				String hex = colon < 0 ? line : line.substring(0, colon);
+				if(hex.length() != 40) { throw new IOException("Not a SHA-1 hash at line " + lineNumber + ": " + hex); }
+				if(minCount > 1 && (colon < 0 || Long.parseLong(line.substring(colon + 1).trim()) < minCount)) { continue; }
+
+				int prefix = Integer.parseInt(hex.substring(0, 4), 16);
+				long suffix = Long.parseUnsignedLong(hex.substring(4, 20), 16);
+				int order = lastPrefix != prefix ? Integer.compare(prefix, lastPrefix) : Long.compareUnsigned(suffix, lastSuffix);
+				if(order < 0) { throw new IOException("Dump is not sorted by hash at line " + lineNumber); }
+				if(order == 0) { continue; } /* same 80 bits */
+
+				output.writeLong(suffix);
+				fanOut[prefix + 1]++;
+				size++;
+				lastPrefix = prefix;
+				lastSuffix = suffix;
+			}
+		}
+
+		/* counts to first indices */
+		for(int i = 1; i <= NB_PREFIXES; i++) { fanOut[i] += fanOut[i - 1]; }
+
+		try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			header.putInt(MAGIC).putInt(VERSION).putInt(PREFIX_BITS).putInt(SUFFIX_BYTES).putLong(size);
+			header.asLongBuffer().put(fanOut);
+			file.write(header.array());
+		}
+		return size;
+	}
+
+
+
+	/** nb of records */
+	public final long size;
+
+	private final long[] fanOut;
+
+	private final MappedByteBuffer[] segments;
+
+
+	private final LongAdder nLookups = new LongAdder();
+
+	private final LongAdder nHits = new LongAdder();
+
+
+
+	private BreachedPasswords(long size, long[] fanOut, MappedByteBuffer[] segments) {
+		super();
+		this.size = size;
+		this.fanOut = fanOut;
+		this.segments = segments;
+	}
+
+
+	/**
+	 *
+	 * @param password
+	 * @return <code>true</code> if password appears in breached passwords list
+	 */
+	public boolean isBreached(String password) {
+		return contains(SHA1.get().digest(password.getBytes(StandardCharsets.UTF_8)));
+	}
+
+
+	/**
+	 *
+	 * @param sha1 20 bytes hash
+	 * @return <code>true</code> if hash is in index
+	 */
+	public boolean contains(byte[] sha1) {
+		nLookups.increment();
+		int prefix = ((sha1[0] & 0xff) << 8) | (sha1[1] & 0xff);
+		long suffix = 0;
+		for(int i = 2; i < 2 + SUFFIX_BYTES; i++) { suffix = (suffix << 8) | (sha1[i] & 0xff); }
+
+		long low = fanOut[prefix], high = fanOut[prefix + 1] - 1;
+		while(low <= high) {
+			long middle = (low + high) >>> 1;
+			int order = Long.compareUnsigned(record(middle), suffix);
+			if(order < 0) { low = middle + 1; }
+			else if(order > 0) { high = middle - 1; }
+			else {
+				nHits.increment();
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/** absolute reads: safe for concurrent lookups */
+	private long record(long index) {
+		return segments[(int) (index >>> SEGMENT_SHIFT)].getLong((int) (index & SEGMENT_MASK) * SUFFIX_BYTES);
+	}
+
+
+	public long getLookupCount() {
+		return nLookups.sum();
+	}
+
+	public long getHitCount() {
+		return nHits.sum();
+	}
+
+}
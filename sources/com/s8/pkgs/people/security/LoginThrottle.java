@@ -0,0 +1,216 @@
+package com.s8.pkgs.people.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * In-process log-in throttling, by username and by client (remote address).
+ *
+ * Each key has a sliding-window counter, approximated from the counts of the current
+ * and previous fixed windows. Counters are spread across lock stripes, so that
+ * unrelated keys never contend, and bounded per stripe (least recently used keys being
+ * evicted). Rejected attempts are not counted: a blocked key recovers as its window
+ * slides.
+ */
+public class LoginThrottle {
+
+
+	private static final class Window {
+
+		private long start;
+
+		private int current;
+
+		private int previous;
+
+		private Window(long start) {
+			super();
+			this.start = start;
+		}
+
+		/**
+		 * @return estimated nb of attempts in the last <code>length</code> ms
+		 */
+		private double estimate(long now, long length) {
+			if(now - start >= 2 * length) {
+				start = now - (now - start) % length;
+				previous = 0;
+				current = 0;
+			}
+			else if(now - start >= length) {
+				start += length;
+				previous = current;
+				current = 0;
+			}
+			double weight = 1.0 - (double) (now - start) / length;
+			return previous * weight + current;
+		}
+	}
+
+
+	/**
+	 * Least recently used keys are evicted beyond {@link #MAX_KEYS_PER_STRIPE}, so that
+	 * keys cycled by an attacker cannot grow memory. Keys under attack keep being used,
+	 * hence are not the ones evicted.
+	 */
+	private static final class Stripe {
+
+		private final LinkedHashMap<String, Window> windows = new LinkedHashMap<String, Window>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Window> eldest) {
+				return size() > MAX_KEYS_PER_STRIPE;
+			}
+		};
+
+		/** under lock */
+		private double estimate(String key, long now, long length) {
+			Window window = windows.get(key);
+			return window != null ? window.estimate(now, length) : 0.0;
+		}
+
+		/** under lock, after {@link #estimate} */
+		private void count(String key, long now) {
+			Window window = windows.get(key);
+			if(window == null) { windows.put(key, window = new Window(now)); }
+			window.current++;
+		}
+
+		private synchronized void reset(String key) {
+			windows.remove(key);
+		}
+	}
+
+
+	private static final int MAX_KEYS_PER_STRIPE = 4096;
+
+
+	private final Stripe[] stripes;
+
+	private final int mask;
+
+
+	private volatile int maxAttemptsPerUsername;
+
+	private volatile int maxAttemptsPerClient;
+
+	/** in milliseconds */
+	private volatile long window;
+
+
+	private final LongAdder nAllowed = new LongAdder();
+
+	private final LongAdder nBlockedByUsername = new LongAdder();
+
+	private final LongAdder nBlockedByClient = new LongAdder();
+
+
+
+	/**
+	 *
+	 * @param maxAttemptsPerUsername within window
+	 * @param maxAttemptsPerClient within window
+	 * @param window in milliseconds
+	 * @param nStripes rounded up to a power of 2
+	 */
+	public LoginThrottle(int maxAttemptsPerUsername, int maxAttemptsPerClient, long window, int nStripes) {
+		super();
+		this.maxAttemptsPerUsername = maxAttemptsPerUsername;
+		this.maxAttemptsPerClient = maxAttemptsPerClient;
+		this.window = window;
+		int n = Integer.highestOneBit(Math.max(1, nStripes - 1)) << 1;
+		this.stripes = new Stripe[n];
+		for(int i = 0; i < n; i++) { stripes[i] = new Stripe(); }
+		this.mask = n - 1;
+	}
+
+
+	/**
+	 *
+	 * @param maxAttemptsPerUsername
+	 * @param maxAttemptsPerClient
+	 * @param window in milliseconds
+	 */
+	public void setThresholds(int maxAttemptsPerUsername, int maxAttemptsPerClient, long window) {
+		this.maxAttemptsPerUsername = maxAttemptsPerUsername;
+		this.maxAttemptsPerClient = maxAttemptsPerClient;
+		this.window = window;
+	}
+
+
+	/**
+	 * To be called before any I/O. Both limits are checked before any counter is
+	 * incremented: a rejected attempt counts for neither the client nor the username.
+	 *
+	 * @param username
+	 * @param client key of the client (remote address), <code>null</code> if unknown
+	 * @return <code>true</code> if attempt is allowed
+	 */
+	public boolean tryAcquire(String username, String client) {
+		long now = System.currentTimeMillis();
+		long window = this.window;
+		String usernameKey = "u:" + username;
+		String clientKey = client != null ? "c:" + client : null;
+		int usernameIndex = index(usernameKey);
+		int clientIndex = clientKey != null ? index(clientKey) : usernameIndex;
+		Stripe usernameStripe = stripes[usernameIndex], clientStripe = stripes[clientIndex];
+
+		/* both stripes locked, in index order */
+		synchronized (stripes[Math.min(usernameIndex, clientIndex)]) {
+			synchronized (stripes[Math.max(usernameIndex, clientIndex)]) {
+				if(clientKey != null && clientStripe.estimate(clientKey, now, window) >= maxAttemptsPerClient) {
+					nBlockedByClient.increment();
+					return false;
+				}
+				if(usernameStripe.estimate(usernameKey, now, window) >= maxAttemptsPerUsername) {
+					nBlockedByUsername.increment();
+					return false;
+				}
+				if(clientKey != null) { clientStripe.count(clientKey, now); }
+				usernameStripe.count(usernameKey, now);
+			}
+		}
+		nAllowed.increment();
+		return true;
+	}
+
+
+	/**
+	 * Clear username counter (typically on successful log-in).
+	 *
+	 * @param username
+	 */
+	public void reset(String username) {
+		String key = "u:" + username;
+		stripes[index(key)].reset(key);
+	}
+
+
+	private int index(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return h & mask;
+	}
+
+
+	public long getAllowedCount() {
+		return nAllowed.sum();
+	}
+
+	public long getBlockedCount() {
+		return nBlockedByUsername.sum() + nBlockedByClient.sum();
+	}
+
+	public long getBlockedByUsernameCount() {
+		return nBlockedByUsername.sum();
+	}
+
+	public long getBlockedByClientCount() {
+		return nBlockedByClient.sum();
+	}
+
+}
@@ -0,0 +1,144 @@
+package com.s8.pkgs.people.security;
+
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Encoded password hash, in PHC-like string format:
+ * <code>$algorithm$param0=v0,param1=v1$salt$hash</code> (salt and hash being
+ * unpadded base64).
+ */
+public class PasswordHash {
+
+
+	private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+
+	private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+
+	/**
+	 * Structural check only: legacy plain passwords may start with '$' too, so callers 
+	 * must also check that {@link #algorithm} is a known one.
+	 * 
+	 * @param encoded
+	 * @return <code>true</code> if the stored value is a well-formed encoded hash (as opposed to a legacy plain password)
+	 */
+	public static boolean isEncoded(String encoded) {
+		return tryParse(encoded) != null;
+	}
+
+
+	/**
+	 * 
+	 * @param encoded
+	 * @return parsed hash
+	 * @throws IllegalArgumentException if malformed
+	 */
+	public static PasswordHash parse(String encoded) {
+		PasswordHash hash = tryParse(encoded);
+		if(hash == null) { throw new IllegalArgumentException("Malformed password hash"); }
+		return hash;
+	}
+
+
+	/**
+	 * 
+	 * @param encoded
+	 * @return parsed hash, <code>null</code> if not a well-formed encoded hash
+	 */
+	public static PasswordHash tryParse(String encoded) {
+		if(encoded == null || encoded.length() == 0 || encoded.charAt(0) != '$') { return null; }
+		String[] parts = encoded.split("\\$", -1);
+		/* leading '$' gives an empty first part */
+		if(parts.length != 5 || !isAlgorithmId(parts[1]) || parts[3].isEmpty() || parts[4].isEmpty()) { return null; }
+
+		Map<String, Integer> parameters = new LinkedHashMap<>();
+		try {
+			if(!parts[2].isEmpty()) {
+				for(String parameter : parts[2].split(",", -1)) {
+					int i = parameter.indexOf('=');
+					if(i < 1) { return null; }
+					parameters.put(parameter.substring(0, i), Integer.parseInt(parameter.substring(i + 1)));
+				}
+			}
+			return new PasswordHash(parts[1], parameters, DECODER.decode(parts[3]), DECODER.decode(parts[4]));
+		}
+		catch (IllegalArgumentException exception) {
+			/* bad number or bad base64 */
+			return null;
+		}
+	}
+
+
+	private static boolean isAlgorithmId(String id) {
+		if(id.isEmpty()) { return false; }
+		for(int i = 0; i < id.length(); i++) {
+			char c = id.charAt(i);
+			if(!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-')) { return false; }
+		}
+		return true;
+	}
+
+
+	public final String algorithm;
+
+	public final Map<String, Integer> parameters;
+
+	public final byte[] salt;
+
+	public final byte[] hash;
+
+
+	/**
+	 * 
+	 * @param algorithm
+	 * @param parameters
+	 * @param salt
+	 * @param hash
+	 */
+	public PasswordHash(String algorithm, Map<String, Integer> parameters, byte[] salt, byte[] hash) {
+		super();
+		this.algorithm = algorithm;
+		this.parameters = parameters;
+		this.salt = salt;
+		this.hash = hash;
+	}
+
+
+	/**
+	 * 
+	 * @param name
+	 * @return parameter value, <code>-1</code> if not defined
+	 */
+	public int getParameter(String name) {
+		Integer value = parameters.get(name);
+		return value != null ? value : -1;
+	}
+
+
+	/**
+	 * 
+	 * @return encoded string
+	 */
+	public String encode() {
+		StringBuilder builder = new StringBuilder(96);
+		builder.append('$').append(algorithm).append('$');
+		boolean isFirst = true;
+		for(Map.Entry<String, Integer> entry : parameters.entrySet()) {
+			if(!isFirst) { builder.append(','); } else { isFirst = false; }
+			builder.append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		builder.append('$').append(ENCODER.encodeToString(salt));
+		builder.append('$').append(ENCODER.encodeToString(hash));
+		return builder.toString();
+	}
+
+
+	@Override
+	public String toString() {
+		return encode();
+	}
+
+}
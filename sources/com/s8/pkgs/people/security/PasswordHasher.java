@@ -0,0 +1,43 @@
+package com.s8.pkgs.people.security;
+
+
+/**
+ * A password key derivation function, with its current cost parameters.
+ */
+public interface PasswordHasher {
+
+
+	/**
+	 * 
+	 * @return algorithm id, as found in encoded hashes
+	 */
+	public String getAlgorithm();
+
+
+	/**
+	 * CPU (and possibly memory) intensive.
+	 * 
+	 * @param password
+	 * @return hash computed with current parameters and a fresh salt
+	 */
+	public PasswordHash hash(String password);
+
+
+	/**
+	 * CPU (and possibly memory) intensive. Comparison MUST be constant-time.
+	 * 
+	 * @param password
+	 * @param hash a hash of this hasher's algorithm, possibly with other parameters
+	 * @return <code>true</code> if password matches
+	 */
+	public boolean verify(String password, PasswordHash hash);
+
+
+	/**
+	 * 
+	 * @param hash
+	 * @return <code>true</code> if hash has been computed with current parameters
+	 */
+	public boolean isUpToDate(PasswordHash hash);
+
+}
@@ -0,0 +1,201 @@
+package com.s8.pkgs.people.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs password hashing and verification on a dedicated, bounded pool of workers, so
+ * that the number of concurrent key derivations (hence CPU and memory) is bounded
+ * whatever the number of flows.
+ * 
+ * Backpressure: when all workers are busy and the waiting queue is full, requests
+ * are rejected immediately (futures completing with {@link RejectedExecutionException})
+ * instead of piling up.
+ * 
+ * Futures complete on hashing workers: flows apply outcomes from their callbacks (as
+ * from row callbacks), then send, and never wait for them.
+ */
+public class PasswordHashingEngine {
+
+
+	/**
+	 * Outcome of a password verification.
+	 */
+	public static class Verification {
+
+		public final boolean isValid;
+
+		/** 
+		 * when valid, a new hash computed with current parameters if stored one 
+		 * was outdated, <code>null</code> otherwise. 
+		 */
+		public final String rehash;
+
+		public Verification(boolean isValid, String rehash) {
+			super();
+			this.isValid = isValid;
+			this.rehash = rehash;
+		}
+	}
+
+
+	private static PasswordHashingEngine defaultEngine;
+
+
+	/**
+	 * 
+	 * @return engine with default parameters: scrypt ln=14, r=8, p=1 (16 MiB per hash) 
+	 * on one worker per core, PBKDF2 hashes being still verified.
+	 */
+	public static synchronized PasswordHashingEngine getDefault() {
+		if(defaultEngine == null) {
+			int nWorkers = Runtime.getRuntime().availableProcessors();
+			defaultEngine = new PasswordHashingEngine(new ScryptPasswordHasher(14, 8, 1), nWorkers, 16 * nWorkers, 
+					new Pbkdf2PasswordHasher(210000));
+		}
+		return defaultEngine;
+	}
+
+
+	/** hasher used for new hashes */
+	public final PasswordHasher current;
+
+	private final Map<String, PasswordHasher> hashers = new HashMap<>();
+
+	private final ThreadPoolExecutor executor;
+
+
+
+	/**
+	 * 
+	 * @param current hasher used for new hashes
+	 * @param nWorkers nb of hashing threads
+	 * @param queueCapacity max nb of pending requests before rejecting
+	 * @param others hashers only used to verify (then rehash) existing hashes
+	 */
+	public PasswordHashingEngine(PasswordHasher current, int nWorkers, int queueCapacity, PasswordHasher... others) {
+		super();
+		this.current = current;
+		for(PasswordHasher hasher : others) { hashers.put(hasher.getAlgorithm(), hasher); }
+		hashers.put(current.getAlgorithm(), current);
+
+		AtomicInteger index = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(nWorkers, nWorkers, 60, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<>(queueCapacity), 
+				runnable -> {
+					Thread thread = new Thread(runnable, "s8-people-password-hashing-" + index.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, 
+				new ThreadPoolExecutor.AbortPolicy());
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+
+	/**
+	 * 
+	 * @param password
+	 * @return future encoded hash
+	 */
+	public CompletableFuture<String> hash(String password) {
+		return submit(() -> current.hash(password).encode());
+	}
+
+
+	/**
+	 * Verify password against stored value, which can be an encoded hash of any known
+	 * algorithm or a legacy plain password. Valid passwords with outdated (or no) hash
+	 * are transparently rehashed on the same worker. Hashes of unknown algorithms never
+	 * verify.
+	 * 
+	 * @param password
+	 * @param stored
+	 * @return future verification
+	 */
+	public CompletableFuture<Verification> verify(String password, String stored) {
+		return submit(() -> {
+			if(password == null || stored == null) { return new Verification(false, null); }
+			
+			/* legacy plain passwords may start with '$': only well-formed hashes are hashes */
+			PasswordHash hash = PasswordHash.tryParse(stored);
+			if(hash != null) {
+				/* never compared as plain text, or the stored hash itself would be accepted as password */
+				PasswordHasher hasher = hashers.get(hash.algorithm);
+				if(hasher == null || !hasher.verify(password, hash)) {
+					return new Verification(false, null); 
+				}
+				boolean isUpToDate = hasher == current && current.isUpToDate(hash);
+				return new Verification(true, isUpToDate ? null : current.hash(password).encode());
+			}
+			else {
+				/* legacy plain password */
+				boolean isValid = MessageDigest.isEqual(
+						password.getBytes(StandardCharsets.UTF_8), 
+						stored.getBytes(StandardCharsets.UTF_8));
+				return new Verification(isValid, isValid ? current.hash(password).encode() : null);
+			}
+		});
+	}
+
+
+	/**
+	 * 
+	 * @return nb of hashing threads
+	 */
+	public int getWorkerCount() {
+		return executor.getCorePoolSize();
+	}
+
+
+	/**
+	 * 
+	 * @return nb of requests waiting for a worker
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+
+	/**
+	 * 
+	 * @return nb of workers currently hashing
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+
+	private <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(task.call());
+				}
+				catch (Throwable exception) {
+					future.completeExceptionally(exception);
+				}
+			});
+		}
+		catch (RejectedExecutionException exception) {
+			future.completeExceptionally(exception);
+		}
+		return future;
+	}
+
+}
@@ -0,0 +1,99 @@
+package com.s8.pkgs.people.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * PBKDF2 (RFC 8018) over HMAC-SHA256, operating on raw bytes (as required by scrypt).
+ */
+public class Pbkdf2 {
+
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+
+	/**
+	 * 
+	 * @param length
+	 * @return random salt
+	 */
+	public static byte[] salt(int length) {
+		byte[] salt = new byte[length];
+		RANDOM.nextBytes(salt);
+		return salt;
+	}
+
+
+	/**
+	 * 
+	 * @param password
+	 * @return HMAC-SHA256 keyed with password (a zero byte standing for the empty password,
+	 * which is equivalent for HMAC)
+	 */
+	public static Mac hmac(byte[] password) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(password.length > 0 ? password : new byte[1], "HmacSHA256"));
+			return mac;
+		} 
+		catch (GeneralSecurityException exception) {
+			throw new IllegalStateException("HmacSHA256 is not available", exception);
+		}
+	}
+
+
+	/**
+	 * 
+	 * @param password
+	 * @return UTF-8 bytes
+	 */
+	public static byte[] bytes(String password) {
+		return password.getBytes(StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * 
+	 * @param mac keyed with password
+	 * @param salt
+	 * @param iterations
+	 * @param length
+	 * @return derived key
+	 */
+	public static byte[] derive(Mac mac, byte[] salt, int iterations, int length) {
+		int hLength = mac.getMacLength();
+		byte[] output = new byte[length];
+		byte[] u = new byte[hLength], t = new byte[hLength];
+		byte[] blockIndex = new byte[4];
+		int nBlocks = (length + hLength - 1) / hLength;
+		try {
+			for(int i = 1; i <= nBlocks; i++) {
+				blockIndex[0] = (byte) (i >>> 24);
+				blockIndex[1] = (byte) (i >>> 16);
+				blockIndex[2] = (byte) (i >>> 8);
+				blockIndex[3] = (byte) i;
+				mac.update(salt);
+				mac.update(blockIndex);
+				mac.doFinal(u, 0);
+				System.arraycopy(u, 0, t, 0, hLength);
+				for(int c = 1; c < iterations; c++) {
+					mac.update(u);
+					mac.doFinal(u, 0);
+					for(int k = 0; k < hLength; k++) { t[k] ^= u[k]; }
+				}
+				int offset = (i - 1) * hLength;
+				System.arraycopy(t, 0, output, offset, Math.min(hLength, length - offset));
+			}
+		}
+		catch (GeneralSecurityException exception) {
+			throw new IllegalStateException(exception);
+		}
+		return output;
+	}
+
+}
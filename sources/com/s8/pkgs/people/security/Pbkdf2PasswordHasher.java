@@ -0,0 +1,66 @@
+package com.s8.pkgs.people.security;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * PBKDF2-HMAC-SHA256 password hasher. CPU-hard only: prefer {@link ScryptPasswordHasher}
+ * for new hashes, this one being kept for compatibility.
+ */
+public class Pbkdf2PasswordHasher implements PasswordHasher {
+
+
+	public static final String ALGORITHM = "pbkdf2-sha256";
+
+	private static final int SALT_LENGTH = 16;
+
+	private static final int HASH_LENGTH = 32;
+
+
+	/** nb of iterations */
+	public final int iterations;
+
+
+	/**
+	 * 
+	 * @param iterations
+	 */
+	public Pbkdf2PasswordHasher(int iterations) {
+		super();
+		this.iterations = iterations;
+	}
+
+
+	@Override
+	public String getAlgorithm() {
+		return ALGORITHM;
+	}
+
+
+	@Override
+	public PasswordHash hash(String password) {
+		byte[] salt = Pbkdf2.salt(SALT_LENGTH);
+		byte[] hash = Pbkdf2.derive(Pbkdf2.hmac(Pbkdf2.bytes(password)), salt, iterations, HASH_LENGTH);
+		Map<String, Integer> parameters = new LinkedHashMap<>();
+		parameters.put("i", iterations);
+		return new PasswordHash(ALGORITHM, parameters, salt, hash);
+	}
+
+
+	@Override
+	public boolean verify(String password, PasswordHash hash) {
+		int iterations = hash.getParameter("i");
+		if(iterations < 1 || hash.hash.length == 0) { return false; }
+		byte[] candidate = Pbkdf2.derive(Pbkdf2.hmac(Pbkdf2.bytes(password)), hash.salt, iterations, hash.hash.length);
+		return MessageDigest.isEqual(candidate, hash.hash);
+	}
+
+
+	@Override
+	public boolean isUpToDate(PasswordHash hash) {
+		return hash.getParameter("i") == iterations && hash.hash.length == HASH_LENGTH;
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.s8.pkgs.people.security;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+
+
+/**
+ * scrypt (RFC 7914) memory-hard password hasher. 
+ * 
+ * Memory used per hash is <code>128 * r * 2^ln</code> bytes (16 MiB for 
+ * <code>ln=14, r=8</code>), so the number of hashing workers bounds memory as well.
+ */
+public class ScryptPasswordHasher implements PasswordHasher {
+
+
+	public static final String ALGORITHM = "scrypt";
+
+	private static final int SALT_LENGTH = 16;
+
+	private static final int HASH_LENGTH = 32;
+
+	/** max memory per hash (bytes), so that stored parameters cannot exhaust the heap */
+	public static final long MAX_MEMORY = 256L << 20;
+
+
+	/** log2 of CPU/memory cost N */
+	public final int ln;
+
+	/** block size */
+	public final int r;
+
+	/** parallelization */
+	public final int p;
+
+
+	/**
+	 * 
+	 * @param ln log2 of N
+	 * @param r
+	 * @param p
+	 */
+	public ScryptPasswordHasher(int ln, int r, int p) {
+		super();
+		if(!isSupported(ln, r, p)) {
+			throw new IllegalArgumentException("Invalid scrypt parameters (ln=" + ln + ", r=" + r + ", p=" + p + ")");
+		}
+		this.ln = ln;
+		this.r = r;
+		this.p = p;
+	}
+
+
+	@Override
+	public String getAlgorithm() {
+		return ALGORITHM;
+	}
+
+
+	@Override
+	public PasswordHash hash(String password) {
+		byte[] salt = Pbkdf2.salt(SALT_LENGTH);
+		byte[] hash = scrypt(Pbkdf2.bytes(password), salt, ln, r, p, HASH_LENGTH);
+		Map<String, Integer> parameters = new LinkedHashMap<>();
+		parameters.put("ln", ln);
+		parameters.put("r", r);
+		parameters.put("p", p);
+		return new PasswordHash(ALGORITHM, parameters, salt, hash);
+	}
+
+
+	@Override
+	public boolean verify(String password, PasswordHash hash) {
+		int ln = hash.getParameter("ln"), r = hash.getParameter("r"), p = hash.getParameter("p");
+		if(!isSupported(ln, r, p) || hash.hash.length == 0) { return false; }
+		byte[] candidate = scrypt(Pbkdf2.bytes(password), hash.salt, ln, r, p, hash.hash.length);
+		return MessageDigest.isEqual(candidate, hash.hash);
+	}
+
+
+	@Override
+	public boolean isUpToDate(PasswordHash hash) {
+		return hash.getParameter("ln") == ln 
+				&& hash.getParameter("r") == r 
+				&& hash.getParameter("p") == p
+				&& hash.hash.length == HASH_LENGTH;
+	}
+
+
+
+	/**
+	 * 
+	 * @param ln
+	 * @param r
+	 * @param p
+	 * @return <code>true</code> if parameters are valid and both the <code>128 * r * N</code>
+	 * bytes of V and the <code>128 * r * p</code> bytes of B fit in {@link #MAX_MEMORY}
+	 */
+	public static boolean isSupported(int ln, int r, int p) {
+		return ln >= 1 && ln <= 24 && r >= 1 && p >= 1 
+				&& ((long) 128 * r << ln) <= MAX_MEMORY 
+				&& (long) 128 * r * p <= MAX_MEMORY;
+	}
+
+
+
+	/**
+	 * 
+	 * @param password
+	 * @param salt
+	 * @param ln
+	 * @param r
+	 * @param p
+	 * @param length
+	 * @return derived key
+	 * @throws IllegalArgumentException if parameters are not {@link #isSupported supported}
+	 */
+	public static byte[] scrypt(byte[] password, byte[] salt, int ln, int r, int p, int length) {
+		if(!isSupported(ln, r, p)) { throw new IllegalArgumentException("Unsupported scrypt parameters"); }
+		Mac mac = Pbkdf2.hmac(password);
+		int blockLength = 128 * r;
+		byte[] b = Pbkdf2.derive(mac, salt, 1, p * blockLength);
+
+		int n = 1 << ln;
+		int[] x = new int[32 * r];
+		int[] y = new int[32 * r];
+		int[] v = new int[32 * r * n];
+		int[] t = new int[16];
+
+		for(int i = 0; i < p; i++) {
+			int offset = i * blockLength;
+			for(int k = 0; k < 32 * r; k++) {
+				int o = offset + 4 * k;
+				x[k] = (b[o] & 0xff) | (b[o + 1] & 0xff) << 8 | (b[o + 2] & 0xff) << 16 | (b[o + 3] & 0xff) << 24;
+			}
+			roMix(x, y, v, t, r, n);
+			for(int k = 0; k < 32 * r; k++) {
+				int o = offset + 4 * k;
+				int w = x[k];
+				b[o] = (byte) w;
+				b[o + 1] = (byte) (w >>> 8);
+				b[o + 2] = (byte) (w >>> 16);
+				b[o + 3] = (byte) (w >>> 24);
+			}
+		}
+		return Pbkdf2.derive(mac, b, 1, length);
+	}
+
+
+	private static void roMix(int[] x, int[] y, int[] v, int[] t, int r, int n) {
+		int blockSize = 32 * r;
+		for(int i = 0; i < n; i++) {
+			System.arraycopy(x, 0, v, i * blockSize, blockSize);
+			blockMix(x, y, t, r);
+		}
+		for(int i = 0; i < n; i++) {
+			int j = x[(2 * r - 1) * 16] & (n - 1);
+			int offset = j * blockSize;
+			for(int k = 0; k < blockSize; k++) { x[k] ^= v[offset + k]; }
+			blockMix(x, y, t, r);
+		}
+	}
+
+
+	/**
+	 * In-place BlockMix of b, using y as scratch
+	 */
+	private static void blockMix(int[] b, int[] y, int[] t, int r) {
+		System.arraycopy(b, (2 * r - 1) * 16, t, 0, 16);
+		for(int i = 0; i < 2 * r; i++) {
+			for(int k = 0; k < 16; k++) { t[k] ^= b[i * 16 + k]; }
+			salsa20_8(t);
+			/* even blocks first, then odd ones */
+			int target = ((i & 1) == 0) ? (i / 2) * 16 : (r + i / 2) * 16;
+			System.arraycopy(t, 0, y, target, 16);
+		}
+		System.arraycopy(y, 0, b, 0, 32 * r);
+	}
+
+
+	private static void salsa20_8(int[] b) {
+		int x0 = b[0], x1 = b[1], x2 = b[2], x3 = b[3], x4 = b[4], x5 = b[5], x6 = b[6], x7 = b[7],
+				x8 = b[8], x9 = b[9], x10 = b[10], x11 = b[11], x12 = b[12], x13 = b[13], x14 = b[14], x15 = b[15];
+		for(int i = 0; i < 8; i += 2) {
+			x4 ^= Integer.rotateLeft(x0 + x12, 7); x8 ^= Integer.rotateLeft(x4 + x0, 9);
+			x12 ^= Integer.rotateLeft(x8 + x4, 13); x0 ^= Integer.rotateLeft(x12 + x8, 18);
+			x9 ^= Integer.rotateLeft(x5 + x1, 7); x13 ^= Integer.rotateLeft(x9 + x5, 9);
+			x1 ^= Integer.rotateLeft(x13 + x9, 13); x5 ^= Integer.rotateLeft(x1 + x13, 18);
+			x14 ^= Integer.rotateLeft(x10 + x6, 7); x2 ^= Integer.rotateLeft(x14 + x10, 9);
+			x6 ^= Integer.rotateLeft(x2 + x14, 13); x10 ^= Integer.rotateLeft(x6 + x2, 18);
+			x3 ^= Integer.rotateLeft(x15 + x11, 7); x7 ^= Integer.rotateLeft(x3 + x15, 9);
+			x11 ^= Integer.rotateLeft(x7 + x3, 13); x15 ^= Integer.rotateLeft(x11 + x7, 18);
+			x1 ^= Integer.rotateLeft(x0 + x3, 7); x2 ^= Integer.rotateLeft(x1 + x0, 9);
+			x3 ^= Integer.rotateLeft(x2 + x1, 13); x0 ^= Integer.rotateLeft(x3 + x2, 18);
+			x6 ^= Integer.rotateLeft(x5 + x4, 7); x7 ^= Integer.rotateLeft(x6 + x5, 9);
+			x4 ^= Integer.rotateLeft(x7 + x6, 13); x5 ^= Integer.rotateLeft(x4 + x7, 18);
+			x11 ^= Integer.rotateLeft(x10 + x9, 7); x8 ^= Integer.rotateLeft(x11 + x10, 9);
+			x9 ^= Integer.rotateLeft(x8 + x11, 13); x10 ^= Integer.rotateLeft(x9 + x8, 18);
+			x12 ^= Integer.rotateLeft(x15 + x14, 7); x13 ^= Integer.rotateLeft(x12 + x15, 9);
+			x14 ^= Integer.rotateLeft(x13 + x12, 13); x15 ^= Integer.rotateLeft(x14 + x13, 18);
+		}
+		b[0] += x0; b[1] += x1; b[2] += x2; b[3] += x3; b[4] += x4; b[5] += x5; b[6] += x6; b[7] += x7;
+		b[8] += x8; b[9] += x9; b[10] += x10; b[11] += x11; b[12] += x12; b[13] += x13; b[14] += x14; b[15] += x15;
+	}
+
+}
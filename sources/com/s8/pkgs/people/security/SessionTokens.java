@@ -0,0 +1,240 @@
+package com.s8.pkgs.people.security;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * Compact, HMAC-signed "remember me" tokens, verified entirely in memory.
+ *
+ * A token is <code>base64url(payload) "." base64url(mac)</code>, the payload embedding
+ * format, key version, issue and expiry times, a random token id (for revocation) and
+ * the username; the mac is HMAC-SHA256 truncated to 128 bits. Keys are versioned:
+ * {@link #rotateKey()} starts signing with a new key, while tokens signed with the
+ * last <code>maxKeys - 1</code> previous keys stay valid.
+ */
+public class SessionTokens {
+
+
+	public static class Claims {
+
+		public final String username;
+
+		public final long tokenId;
+
+		public final int keyVersion;
+
+		/** in milliseconds */
+		public final long issuedAt;
+
+		/** in milliseconds */
+		public final long expiresAt;
+
+		public Claims(String username, long tokenId, int keyVersion, long issuedAt, long expiresAt) {
+			super();
+			this.username = username;
+			this.tokenId = tokenId;
+			this.keyVersion = keyVersion;
+			this.issuedAt = issuedAt;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+
+	private static final class Key {
+
+		private final int version;
+
+		private final SecretKeySpec spec;
+
+		private final ThreadLocal<Mac> mac;
+
+		private Key(int version, byte[] bytes) {
+			super();
+			this.version = version;
+			this.spec = new SecretKeySpec(bytes, ALGORITHM);
+			this.mac = ThreadLocal.withInitial(() -> {
+				try {
+					Mac mac = Mac.getInstance(ALGORITHM);
+					mac.init(spec);
+					return mac;
+				}
+				catch (GeneralSecurityException exception) {
+					throw new IllegalStateException(exception);
+				}
+			});
+		}
+
+		private byte[] sign(byte[] payload) {
+			return Arrays.copyOf(mac.get().doFinal(payload), MAC_LENGTH);
+		}
+	}
+
+
+	private static final String ALGORITHM = "HmacSHA256";
+
+	private static final byte FORMAT = 1;
+
+	/** format, key version, issued at, expires at, token id */
+	private static final int HEADER_LENGTH = 1 + 4 + 8 + 8 + 8;
+
+	private static final int MAC_LENGTH = 16;
+
+	private static final int KEY_LENGTH = 32;
+
+
+	/** token time-to-live, in milliseconds */
+	public final long ttl;
+
+	/** max nb of key versions accepted (current included) */
+	public final int maxKeys;
+
+	public final TokenRevocationList revocations;
+
+
+	private final SecureRandom random = new SecureRandom();
+
+	/** copy-on-write: rotation is rare, verification is not */
+	private volatile Map<Integer, Key> keys = new HashMap<>();
+
+	private volatile Key currentKey;
+
+
+
+	/**
+	 *
+	 * @param ttl in milliseconds
+	 * @param maxKeys
+	 */
+	public SessionTokens(long ttl, int maxKeys) {
+		super();
+		this.ttl = ttl;
+		this.maxKeys = maxKeys;
+		this.revocations = new TokenRevocationList();
+		rotateKey();
+	}
+
+
+	/**
+	 * Start signing with a new random key.
+	 *
+	 * @return new key version
+	 */
+	public synchronized int rotateKey() {
+		byte[] bytes = new byte[KEY_LENGTH];
+		random.nextBytes(bytes);
+		int version = currentKey != null ? currentKey.version + 1 : 1;
+		setKey(version, bytes);
+		return version;
+	}
+
+
+	/**
+	 * Install a key (e.g. shared across nodes or restored on restart) and sign with it
+	 * if its version is the highest.
+	 *
+	 * @param version
+	 * @param bytes
+	 */
+	public synchronized void setKey(int version, byte[] bytes) {
+		Key key = new Key(version, bytes.clone());
+		Map<Integer, Key> keys = new HashMap<>(this.keys);
+		keys.put(version, key);
+		if(currentKey == null || version >= currentKey.version) { currentKey = key; }
+		int oldest = currentKey.version - maxKeys + 1;
+		keys.keySet().removeIf(v -> v < oldest);
+		this.keys = keys;
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @return token
+	 */
+	public String issue(String username) {
+		Key key = currentKey;
+		long now = System.currentTimeMillis();
+		byte[] name = username.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + name.length);
+		buffer.put(FORMAT);
+		buffer.putInt(key.version);
+		buffer.putLong(now);
+		buffer.putLong(now + ttl);
+		buffer.putLong(random.nextLong());
+		buffer.put(name);
+		byte[] payload = buffer.array();
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		return encoder.encodeToString(payload) + '.' + encoder.encodeToString(key.sign(payload));
+	}
+
+
+	/**
+	 * Verify signature, expiry and revocation, without any I/O.
+	 *
+	 * @param token
+	 * @return claims, <code>null</code> if token is not valid
+	 */
+	public Claims verify(String token) {
+		if(token == null) { return null; }
+		int dot = token.indexOf('.');
+		if(dot < 0) { return null; }
+		byte[] payload, mac;
+		try {
+			Base64.Decoder decoder = Base64.getUrlDecoder();
+			payload = decoder.decode(token.substring(0, dot));
+			mac = decoder.decode(token.substring(dot + 1));
+		}
+		catch(IllegalArgumentException exception) {
+			return null;
+		}
+		if(payload.length <= HEADER_LENGTH || payload[0] != FORMAT || mac.length != MAC_LENGTH) { return null; }
+
+		ByteBuffer buffer = ByteBuffer.wrap(payload);
+		buffer.get();
+		int keyVersion = buffer.getInt();
+		Key key = keys.get(keyVersion);
+		if(key == null) { return null; }
+		if(!MessageDigest.isEqual(key.sign(payload), mac)) { return null; }
+
+		long issuedAt = buffer.getLong();
+		long expiresAt = buffer.getLong();
+		long tokenId = buffer.getLong();
+		if(expiresAt < System.currentTimeMillis()) { return null; }
+		String username = new String(payload, HEADER_LENGTH, payload.length - HEADER_LENGTH, StandardCharsets.UTF_8);
+		if(revocations.isRevoked(username, tokenId, issuedAt)) { return null; }
+		return new Claims(username, tokenId, keyVersion, issuedAt, expiresAt);
+	}
+
+
+	/**
+	 * Revoke one token (e.g. on log-out).
+	 *
+	 * @param token
+	 */
+	public void revoke(String token) {
+		Claims claims = verify(token);
+		if(claims != null) { revocations.revoke(claims.tokenId, claims.expiresAt); }
+	}
+
+
+	/**
+	 * Revoke all tokens of a user issued so far (e.g. on password change).
+	 *
+	 * @param username
+	 */
+	public void revokeAll(String username) {
+		revocations.revokeAllBefore(username, System.currentTimeMillis(), System.currentTimeMillis() + ttl);
+	}
+
+}
@@ -0,0 +1,161 @@
+package com.s8.pkgs.people.security;
+
+import java.util.HashMap;
+
+
+/**
+ * In-memory revocation list of session tokens.
+ *
+ * Revoked token ids are held in an open-addressing table of primitive longs (16 bytes
+ * per entry: id and expiry), and only until the token would have expired anyway:
+ * expired entries are purged whenever the table grows. Revoking all tokens of a user
+ * only stores one cut-off time for that user, also held until expiry: expired cut-offs
+ * are purged whenever their number doubles.
+ */
+public class TokenRevocationList {
+
+
+	private static final class Cutoff {
+
+		private final long time;
+
+		private final long expiresAt;
+
+		private Cutoff(long time, long expiresAt) {
+			super();
+			this.time = time;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+
+	/** 0 marks a free slot: id 0 is remapped */
+	private long[] ids = new long[64];
+
+	private long[] expiries = new long[64];
+
+	private int size = 0;
+
+	private final HashMap<String, Cutoff> cutoffs = new HashMap<>();
+
+	/** nb of cut-offs beyond which expired ones are purged */
+	private int cutoffsPurgeThreshold = 64;
+
+
+
+	public TokenRevocationList() {
+		super();
+	}
+
+
+	/**
+	 *
+	 * @param tokenId
+	 * @param expiresAt expiry of the token, in milliseconds
+	 */
+	public synchronized void revoke(long tokenId, long expiresAt) {
+		if((size + 1) * 4 > ids.length * 3) { rebuild(); }
+		long id = tokenId != 0 ? tokenId : 1;
+		int mask = ids.length - 1;
+		int i = index(id, mask);
+		while(ids[i] != 0) {
+			if(ids[i] == id) { expiries[i] = Math.max(expiries[i], expiresAt); return; }
+			i = (i + 1) & mask;
+		}
+		ids[i] = id;
+		expiries[i] = expiresAt;
+		size++;
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @param time tokens issued at or before this time are revoked
+	 * @param expiresAt time after which no such token can be valid anyway
+	 */
+	public synchronized void revokeAllBefore(String username, long time, long expiresAt) {
+		cutoffs.put(username, new Cutoff(time, expiresAt));
+		if(cutoffs.size() > cutoffsPurgeThreshold) {
+			purgeCutoffs(System.currentTimeMillis());
+			/* amortized: next purge once live cut-offs have doubled */
+			cutoffsPurgeThreshold = Math.max(64, 2 * cutoffs.size());
+		}
+	}
+
+
+	/**
+	 *
+	 * @param username
+	 * @param tokenId
+	 * @param issuedAt
+	 * @return <code>true</code> if token has been revoked
+	 */
+	public synchronized boolean isRevoked(String username, long tokenId, long issuedAt) {
+		if(!cutoffs.isEmpty()) {
+			Cutoff cutoff = cutoffs.get(username);
+			if(cutoff != null && issuedAt <= cutoff.time) { return true; }
+		}
+		if(size == 0) { return false; }
+		long id = tokenId != 0 ? tokenId : 1;
+		int mask = ids.length - 1;
+		int i = index(id, mask);
+		while(ids[i] != 0) {
+			if(ids[i] == id) { return true; }
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+
+	/**
+	 *
+	 * @return nb of revoked token ids held
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+
+	/**
+	 * Drop expired entries, then grow if still needed.
+	 */
+	private void rebuild() {
+		long now = System.currentTimeMillis();
+		purgeCutoffs(now);
+
+		int nLive = 0;
+		for(int i = 0; i < ids.length; i++) {
+			if(ids[i] != 0 && expiries[i] >= now) { nLive++; }
+		}
+		int capacity = ids.length;
+		while((nLive + 1) * 2 > capacity) { capacity *= 2; }
+
+		long[] oldIds = ids, oldExpiries = expiries;
+		ids = new long[capacity];
+		expiries = new long[capacity];
+		size = 0;
+		int mask = capacity - 1;
+		for(int j = 0; j < oldIds.length; j++) {
+			if(oldIds[j] != 0 && oldExpiries[j] >= now) {
+				int i = index(oldIds[j], mask);
+				while(ids[i] != 0) { i = (i + 1) & mask; }
+				ids[i] = oldIds[j];
+				expiries[i] = oldExpiries[j];
+				size++;
+			}
+		}
+	}
+
+
+	private void purgeCutoffs(long now) {
+		cutoffs.values().removeIf(cutoff -> cutoff.expiresAt < now);
+	}
+
+
+	private static int index(long id, int mask) {
+		long h = id * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+}
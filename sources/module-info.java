@@ -8,9 +8,14 @@ module com.s8.pkgs.people {
 	
 	exports com.s8.pkgs.people;
 	exports com.s8.pkgs.people.forms;
+	exports com.s8.pkgs.people.mail;
 	exports com.s8.pkgs.people.menu;
+	exports com.s8.pkgs.people.metrics;
 	exports com.s8.pkgs.people.process;
+	exports com.s8.pkgs.people.security;
 
 	
 	requires transitive com.s8.api;
+	requires jakarta.mail;
+	requires org.eclipse.angus.mail;
 }
\ No newline at end of file
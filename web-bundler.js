@@ -0,0 +1,279 @@
+/**
+ * Production web sources: one ES module bundle per entry point (web object type),
+ * content-hashed and precompressed (gzip, brotli), plus a manifest mapping logical
+ * paths to hashed ones (read by <code>WebSources</code> on Java side).
+ *
+ * Hashed assets are written as <code>output/hash/logical/path</code>: the file name is
+ * kept, so web object types are still resolved by name, and a path never changes
+ * content, so it can be cached as immutable.
+ *
+ * Modules imported by an entry are inlined (each one in its own scope) unless they are
+ * entries themselves, in which case the hashed bundle of that entry is imported, so
+ * that no class is ever defined twice. Imports of other packages are left as is.
+ */
+
+const fs = require("fs");
+const path = require("path");
+const crypto = require("crypto");
+const zlib = require("zlib");
+
+
+const IMPORT = /^[ \t]*import\s+([\s\S]*?)\s+from\s+(['"])([^'"]+)\2[ \t]*;?/gm;
+
+const EXPORT = /^([ \t]*)export\s+(class|function|const|let|var)\s+([A-Za-z_$][\w$]*)/gm;
+
+const COMPRESSED_TYPES = [".js", ".css", ".svg", ".html", ".json"];
+
+const HASH_LENGTH = 12;
+
+
+/**
+ *
+ * @param {*} options
+ * @param {string} options.source web sources folder
+ * @param {string} options.root root web path (e.g. "/S8-pkgs-people")
+ * @param {string[]} options.entries entry points, relative to source (e.g. "forms/LogInForm.js")
+ * @param {string[]} options.assets patterns (extensions) of non-JS assets to hash
+ * @param {string} options.output output folder, relative to source
+ * @param {string} options.manifest manifest file (Java properties)
+ * @returns manifest, as a map of logical to hashed paths
+ */
+function bundle(options) {
+	const source = path.resolve(options.source);
+	const root = options.root.replace(/\/$/, "");
+	const output = path.join(source, options.output);
+	const webOutput = root + "/" + normalize(options.output);
+	const manifest = new Map();
+
+	fs.rmSync(output, { recursive: true, force: true });
+
+	/* assets first: bundles refer to their hashed paths */
+	for (const file of list(source, output)) {
+		if (options.assets.includes(path.extname(file))) {
+			emit(output, webOutput, manifest, root + "/" + file, file, fs.readFileSync(path.join(source, file)));
+		}
+	}
+
+	/* then entries, dependencies first */
+	const entries = new Set(options.entries.map(normalize));
+	const modules = new Map();
+	const done = new Set();
+	const visiting = new Set();
+
+	const build = (entry) => {
+		if (done.has(entry)) { return; }
+		if (visiting.has(entry)) { throw new Error("Cyclic entries: " + [...visiting, entry].join(" -> ")); }
+		visiting.add(entry);
+		const closure = collect(source, root, entry, entries, modules);
+		for (const module of closure) {
+			for (const dependency of module.imports) {
+				if (dependency.entry && dependency.entry !== entry) { build(dependency.entry); }
+			}
+		}
+		emit(output, webOutput, manifest, root + "/" + entry, entry, Buffer.from(link(root, entry, closure, manifest), "utf8"));
+		visiting.delete(entry);
+		done.add(entry);
+	};
+	for (const entry of entries) { build(entry); }
+
+	writeManifest(options.manifest, manifest);
+	return manifest;
+}
+
+
+function normalize(file) {
+	return file.split(path.sep).join("/").replace(/^\//, "");
+}
+
+
+/** relative paths of all files of folder, except output */
+function list(folder, output, prefix = "") {
+	const files = [];
+	for (const item of fs.readdirSync(path.join(folder, prefix), { withFileTypes: true })) {
+		const relative = prefix ? prefix + "/" + item.name : item.name;
+		if (item.isDirectory()) {
+			if (path.join(folder, relative) !== output) { files.push(...list(folder, output, relative)); }
+		}
+		else {
+			files.push(relative);
+		}
+	}
+	return files;
+}
+
+
+/**
+ * Parse module and its inlined dependencies.
+ *
+ * @returns modules to inline, dependencies first, entry last
+ */
+function collect(source, root, entry, entries, modules) {
+	const closure = [];
+	const visiting = new Set();
+	const visit = (file) => {
+		if (closure.some(module => module.file === file)) { return; }
+		if (visiting.has(file)) { throw new Error("Cyclic imports: " + [...visiting, file].join(" -> ")); }
+		visiting.add(file);
+		if (!modules.has(file)) { modules.set(file, parse(source, root, file, entries)); }
+		const module = modules.get(file);
+		for (const dependency of module.imports) {
+			if (dependency.inlined) { visit(dependency.inlined); }
+		}
+		visiting.delete(file);
+		closure.push(module);
+	};
+	visit(entry);
+	return closure;
+}
+
+
+function parse(source, root, file, entries) {
+	const text = fs.readFileSync(path.join(source, file), "utf8");
+	const imports = [];
+	const body = text.replace(IMPORT, (statement, clause, quote, specifier) => {
+		const dependency = { clause, specifier, bindings: bindings(clause, specifier, file) };
+		const local = resolveLocal(root, file, specifier);
+		if (local !== null) {
+			if (!fs.existsSync(path.join(source, local))) { throw new Error(file + ": cannot resolve " + specifier); }
+			if (entries.has(local)) { dependency.entry = local; } else { dependency.inlined = local; }
+		}
+		imports.push(dependency);
+		return "";
+	});
+	const exports = [];
+	const unexported = body.replace(EXPORT, (statement, indent, kind, name) => {
+		if (indent.length === 0) { exports.push(name); }
+		return indent + kind + " " + name;
+	});
+	if (/^[ \t]*export\s/m.test(unexported)) { throw new Error(file + ": unsupported export statement"); }
+	return { file, imports, body, unexported, exports };
+}
+
+
+/** @returns path relative to source if specifier is local to this package, null otherwise */
+function resolveLocal(root, file, specifier) {
+	if (specifier.startsWith(root + "/")) { return specifier.substring(root.length + 1); }
+	if (specifier.startsWith("./") || specifier.startsWith("../")) {
+		return normalize(path.posix.normalize(path.posix.join(path.posix.dirname(file), specifier)));
+	}
+	return null;
+}
+
+
+/** @returns array of [imported name, local name], imported name being "*" or "default" */
+function bindings(clause, specifier, file) {
+	const result = [];
+	let rest = clause.trim();
+	const namespace = rest.match(/^\*\s+as\s+([\w$]+)$/);
+	if (namespace) { return [["*", namespace[1]]]; }
+	const defaultName = rest.match(/^([\w$]+)\s*(,|$)/);
+	if (defaultName) {
+		result.push(["default", defaultName[1]]);
+		rest = rest.substring(defaultName[0].length).trim();
+	}
+	if (rest.length > 0) {
+		const named = rest.match(/^\{([\s\S]*)\}$/);
+		if (!named) { throw new Error(file + ": unsupported import of " + specifier); }
+		for (const item of named[1].split(",")) {
+			const parts = item.trim().split(/\s+as\s+/);
+			if (parts[0]) { result.push([parts[0], parts[1] || parts[0]]); }
+		}
+	}
+	return result;
+}
+
+
+/**
+ * Link modules of one entry into a single ES module.
+ */
+function link(root, entry, closure, manifest) {
+	const externals = new Map();
+	const alias = (specifier, imported) => {
+		const key = specifier + "#" + imported;
+		if (!externals.has(key)) { externals.set(key, { specifier, imported, alias: "__s8_i" + externals.size }); }
+		return externals.get(key).alias;
+	};
+	const scopeName = (file) => "__s8_m_" + file.replace(/\.js$/, "").replace(/[^\w$]/g, "_");
+
+	const parts = [];
+	for (const module of closure) {
+		const prologue = [];
+		for (const dependency of module.imports) {
+			if (dependency.inlined) {
+				for (const [imported, local] of dependency.bindings) {
+					if (imported === "default") { throw new Error(module.file + ": no default export in " + dependency.inlined); }
+					prologue.push("const " + local + " = " + scopeName(dependency.inlined) + (imported === "*" ? "" : "." + imported) + ";");
+				}
+			}
+			else {
+				/* other entries: imported from their hashed bundle */
+				const specifier = dependency.entry ? manifest.get(root + "/" + dependency.entry) : dependency.specifier;
+				for (const [imported, local] of dependency.bindings) {
+					prologue.push("const " + local + " = " + alias(specifier, imported) + ";");
+				}
+			}
+		}
+		const body = rewriteAssets(root, module.file === entry ? module.body : module.unexported, manifest);
+		if (module.file === entry) {
+			parts.push("/* " + module.file + " */\n" + prologue.join("\n") + "\n" + body.trim() + "\n");
+		}
+		else {
+			parts.push("/* " + module.file + " */\nconst " + scopeName(module.file) + " = (() => {\n" + prologue.join("\n") + "\n"
+				+ body.trim() + "\n\nreturn { " + module.exports.join(", ") + " };\n})();\n");
+		}
+	}
+
+	/* one import statement per module */
+	const header = new Map();
+	for (const external of externals.values()) {
+		if (!header.has(external.specifier)) { header.set(external.specifier, { named: [], others: [] }); }
+		const clauses = header.get(external.specifier);
+		if (external.imported === "*") { clauses.others.push("* as " + external.alias); }
+		else if (external.imported === "default") { clauses.others.push(external.alias); }
+		else { clauses.named.push(external.imported + " as " + external.alias); }
+	}
+	const statements = [];
+	for (const [specifier, clauses] of header) {
+		for (const other of clauses.others) { statements.push("import " + other + " from \"" + specifier + "\";"); }
+		if (clauses.named.length > 0) { statements.push("import { " + clauses.named.join(", ") + " } from \"" + specifier + "\";"); }
+	}
+	return statements.join("\n") + "\n\n" + parts.join("\n");
+}
+
+
+/** string literals of hashed assets are replaced by their hashed path */
+function rewriteAssets(root, text, manifest) {
+	return text.replace(/(['"])(\/[^'"\s]+)\1/g, (literal, quote, logical) => {
+		const hashed = logical.startsWith(root + "/") ? manifest.get(logical) : undefined;
+		return hashed ? quote + hashed + quote : literal;
+	});
+}
+
+
+function emit(output, webOutput, manifest, logical, file, content) {
+	const hash = crypto.createHash("sha256").update(content).digest("hex").substring(0, HASH_LENGTH);
+	const target = path.join(output, hash, file);
+	fs.mkdirSync(path.dirname(target), { recursive: true });
+	fs.writeFileSync(target, content);
+	if (COMPRESSED_TYPES.includes(path.extname(file))) {
+		fs.writeFileSync(target + ".gz", zlib.gzipSync(content, { level: 9 }));
+		fs.writeFileSync(target + ".br", zlib.brotliCompressSync(content, {
+			params: {
+				[zlib.constants.BROTLI_PARAM_QUALITY]: zlib.constants.BROTLI_MAX_QUALITY,
+				[zlib.constants.BROTLI_PARAM_SIZE_HINT]: content.length
+			}
+		}));
+	}
+	manifest.set(logical, webOutput + "/" + hash + "/" + file);
+}
+
+
+function writeManifest(file, manifest) {
+	const lines = ["# Generated by web-bundler.js: logical path = hashed path"];
+	for (const [logical, hashed] of [...manifest.entries()].sort()) { lines.push(logical + "=" + hashed); }
+	fs.mkdirSync(path.dirname(file), { recursive: true });
+	fs.writeFileSync(file, lines.join("\n") + "\n");
+}
+
+
+module.exports = { bundle };
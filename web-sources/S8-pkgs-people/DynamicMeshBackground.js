@@ -45,6 +45,47 @@ export class DynamicMeshBackground extends NeObject {
 
 	linkRadius = 256;
 
+	/**
+	 * @type{number} 0 for no cap
+	 */
+	maxFPS = 0;
+
+	/**
+	 * @type{number} nb of particles actually animated, adapted to frame time
+	 */
+	activeAmount = 64;
+
+	/**
+	 * @type{number} target time spent per frame, in ms
+	 */
+	frameBudget = 6;
+
+	/**
+	 * @type{number} moving average of time spent per frame, in ms
+	 */
+	averageFrameTime = 0;
+
+	/**
+	 * @type{number} timestamp of last drawn frame
+	 */
+	lastFrameTime = 0;
+
+	/** nb of opacity levels: links of one level are stroked in a single path */
+	static OPACITY_LEVELS = 16;
+
+	/** spatial grid (cell lists), rebuilt each frame */
+	cellStarts = new Int32Array(0);
+	cellItems = new Int32Array(0);
+	cellOf = new Int32Array(0);
+	nCols = 0;
+	nRows = 0;
+	cellWidth = 0;
+	cellHeight = 0;
+
+	/** per opacity level, flat [x0, y0, x1, y1, ...] segments */
+	segments = [];
+	nSegments = new Int32Array(DynamicMeshBackground.OPACITY_LEVELS);
+
 	/**
 	 * @type{number} screen width
 	 */
@@ -125,9 +166,18 @@ export class DynamicMeshBackground extends NeObject {
 
 
 
-	redraw() {
+	redraw(timestamp) {
+		let _this = this;
+		this.requestAnimationID = window.requestAnimationFrame(function (t) { _this.redraw(t); });
+
+		/* max FPS cap: skip frame */
+		if (this.maxFPS > 0 && timestamp - this.lastFrameTime < 1000 / this.maxFPS - 1) { return; }
+		this.lastFrameTime = timestamp;
+
+		const t0 = performance.now();
+
 		this.drawArea.clearRect(0, 0, this.w, this.h);
-		let nParticles = this.particles.length;
+		let nParticles = Math.min(this.activeAmount, this.particles.length);
 
 		this.context.shadowBlur = 4;
 		this.context.shadowColor = "white";
@@ -138,15 +188,142 @@ export class DynamicMeshBackground extends NeObject {
 		}
 
 		this.context.shadowBlur = 0;
+		this.drawLinks(nParticles);
+
+		this.adaptBudget(performance.now() - t0);
+	}
+
+
+	/**
+	 * Cell lists: cells are at least linkRadius wide, so that linked particles are
+	 * always in the same or in adjacent cells (wrapping around edges, as particles do).
+	 * 
+	 * @param {number} nParticles 
+	 */
+	buildGrid(nParticles) {
+		const w = this.w, h = this.h, r = this.linkRadius;
+		const nCols = Math.max(1, Math.floor(w / r)), nRows = Math.max(1, Math.floor(h / r));
+		const nCells = nCols * nRows;
+		this.nCols = nCols; this.nRows = nRows;
+		this.cellWidth = w / nCols; this.cellHeight = h / nRows;
+
+		if (this.cellStarts.length < nCells + 1) { this.cellStarts = new Int32Array(nCells + 1); }
+		if (this.cellItems.length < nParticles) {
+			this.cellItems = new Int32Array(nParticles);
+			this.cellOf = new Int32Array(nParticles);
+		}
+		const starts = this.cellStarts, items = this.cellItems, cellOf = this.cellOf;
+		starts.fill(0, 0, nCells + 1);
+
+		/* counting sort of particles by cell */
 		for (let i = 0; i < nParticles; i++) {
-			this.particles[i].drawLinks();
+			const particle = this.particles[i];
+			const col = Math.min(nCols - 1, Math.max(0, Math.floor(particle.x / this.cellWidth)));
+			const row = Math.min(nRows - 1, Math.max(0, Math.floor(particle.y / this.cellHeight)));
+			const cell = row * nCols + col;
+			cellOf[i] = cell;
+			starts[cell + 1]++;
 		}
+		for (let c = 0; c < nCells; c++) { starts[c + 1] += starts[c]; }
+		const cursors = starts.slice(0, nCells);
+		for (let i = 0; i < nParticles; i++) { items[cursors[cellOf[i]]++] = i; }
+	}
 
 
-		let _this = this;
-		this.requestAnimationID = window.requestAnimationFrame(function () { _this.redraw() });
+	/**
+	 * @param {number} nParticles 
+	 */
+	drawLinks(nParticles) {
+		this.buildGrid(nParticles);
+
+		const levels = DynamicMeshBackground.OPACITY_LEVELS;
+		const w = this.w, h = this.h, halfW = w / 2, halfH = h / 2;
+		const linkRadius = this.linkRadius, linkRadius2 = linkRadius * linkRadius;
+		const nCols = this.nCols, nRows = this.nRows;
+		const starts = this.cellStarts, items = this.cellItems, particles = this.particles;
+		const counts = this.nSegments;
+		counts.fill(0);
+		for (let l = this.segments.length; l < levels; l++) { this.segments.push(new Float32Array(256)); }
+
+		/* distinct neighbour offsets (fewer than 3 cols / rows: all of them) */
+		const colOffsets = nCols >= 3 ? [-1, 0, 1] : (nCols == 2 ? [0, 1] : [0]);
+		const rowOffsets = nRows >= 3 ? [-1, 0, 1] : (nRows == 2 ? [0, 1] : [0]);
+
+		for (let i = 0; i < nParticles; i++) {
+			const particle = particles[i];
+			const cell = this.cellOf[i];
+			const col = cell % nCols, row = (cell - col) / nCols;
+
+			for (let a = 0; a < rowOffsets.length; a++) {
+				const r = (row + rowOffsets[a] + nRows) % nRows;
+				for (let b = 0; b < colOffsets.length; b++) {
+					const c = (col + colOffsets[b] + nCols) % nCols;
+					const neighbourCell = r * nCols + c;
+					for (let k = starts[neighbourCell], end = starts[neighbourCell + 1]; k < end; k++) {
+						const j = items[k];
+						if (j <= i) { continue; }
+						const other = particles[j];
+
+						/* closest image, screen wrapping around */
+						let dx = other.x - particle.x, dy = other.y - particle.y;
+						if (dx > halfW) { dx -= w; } else if (dx < -halfW) { dx += w; }
+						if (dy > halfH) { dy -= h; } else if (dy < -halfH) { dy += h; }
+						const d2 = dx * dx + dy * dy;
+						if (d2 >= linkRadius2) { continue; }
+
+						const opacity = 1 - Math.sqrt(d2) / linkRadius;
+						const level = Math.min(levels - 1, Math.floor(opacity * levels));
+						let buffer = this.segments[level];
+						const n = counts[level];
+						if (n + 4 > buffer.length) {
+							const grown = new Float32Array(buffer.length * 2);
+							grown.set(buffer);
+							buffer = this.segments[level] = grown;
+						}
+						buffer[n] = other.x - dx; buffer[n + 1] = other.y - dy;
+						buffer[n + 2] = other.x; buffer[n + 3] = other.y;
+						counts[level] = n + 4;
+					}
+				}
+			}
+		}
+
+		/* one stroke per opacity level */
+		const drawArea = this.drawArea;
+		const rgb = this.lineColor;
+		drawArea.lineWidth = 0.25;
+		for (let level = 0; level < levels; level++) {
+			const n = counts[level];
+			if (n == 0) { continue; }
+			const buffer = this.segments[level];
+			drawArea.strokeStyle = `rgba(${rgb[0]}, ${rgb[1]}, ${rgb[2]}, ${(level + 0.5) / levels})`;
+			drawArea.beginPath();
+			for (let k = 0; k < n; k += 4) {
+				drawArea.moveTo(buffer[k], buffer[k + 1]);
+				drawArea.lineTo(buffer[k + 2], buffer[k + 3]);
+			}
+			drawArea.stroke();
+		}
+	}
+
+
+	/**
+	 * Adaptive particle budget: shrink fast when frames exceed budget, grow back slowly.
+	 * 
+	 * @param {number} frameTime in ms
+	 */
+	adaptBudget(frameTime) {
+		this.averageFrameTime = this.averageFrameTime == 0 ? frameTime : 0.9 * this.averageFrameTime + 0.1 * frameTime;
+		if (this.averageFrameTime > this.frameBudget && this.activeAmount > 16) {
+			this.activeAmount = Math.max(16, Math.floor(this.activeAmount * 0.9));
+			this.averageFrameTime = this.frameBudget; /* let the average settle before next step */
+		}
+		else if (this.averageFrameTime < 0.5 * this.frameBudget && this.activeAmount < this.particles.length) {
+			this.activeAmount++;
+		}
 	}
 
+
 	start() {
 
 		let _this = this;
@@ -164,8 +341,9 @@ export class DynamicMeshBackground extends NeObject {
 		for (let i = 0; i < this.particleAmount; i++) {
 			this.particles.push(new Particle(this, i));
 		}
-		this.requestAnimationID = window.requestAnimationFrame(function () {
-			_this.redraw();
+		this.activeAmount = this.particleAmount;
+		this.requestAnimationID = window.requestAnimationFrame(function (t) {
+			_this.redraw(t);
 		});
 	}
 
@@ -185,6 +363,19 @@ export class DynamicMeshBackground extends NeObject {
 
 	S8_set_particleAmount(n) {
 		this.particleAmount = n;
+		if (this.particles) {
+			while (this.particles.length < n) { this.particles.push(new Particle(this, this.particles.length)); }
+			this.particles.length = n;
+		}
+		this.activeAmount = n;
+	}
+
+	S8_set_linkRadius(radius) {
+		this.linkRadius = radius;
+	}
+
+	S8_set_maxFPS(fps) {
+		this.maxFPS = fps;
 	}
 
 	S8_set_lineColor(color) {
@@ -269,47 +460,6 @@ class Particle {
 		drawArea.fillStyle = this.color;
 		drawArea.fill();
 	};
+}
 
 
-	/**
-	 * 
-	 * @param {DynamicMeshBackground} screen 
-	 * @param {*} hubs 
-	 * @param {*} lineColor 
-	 * @param {*} linkRadius 
-	 */
-	drawLinks() {
-
-		const drawArea = this.screen.drawArea;
-		const particles = this.screen.particles;
-		const rgb = this.screen.lineColor;
-		const linkRadius = this.screen.linkRadius;
-		const xShifts = this.screen.xShifts, yShifts = this.screen.yShifts;
-
-		let xActual, yActual, xShifted, yShifted;
-
-		for (let i = 0; i < particles.length; i++) {
-			let particle = particles[i];
-			xActual = this.x; yActual = this.y;
-
-			if (this.index < particle.index) {
-				for (let j = 0; j < 8; j++) {
-					xShifted = xActual + xShifts[j]; yShifted = yActual + yShifts[j];
-					let distance = particle.distance(xShifted, yShifted);
-					let opacity = 1 - distance / linkRadius;
-	
-					if (opacity > 0) {
-						drawArea.lineWidth = 0.25;
-						drawArea.strokeStyle = `rgba(${rgb[0]}, ${rgb[1]}, ${rgb[2]}, ${opacity})`;
-						drawArea.beginPath();
-						drawArea.moveTo(xShifted, yShifted);
-						drawArea.lineTo(particle.x, particle.y);
-						drawArea.closePath();
-						drawArea.stroke();
-					}
-				}
-			}
-		}
-	}
-};
-
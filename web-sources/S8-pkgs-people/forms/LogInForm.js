@@ -17,6 +17,9 @@ S8WebFront.CSS_import('/S8-pkgs-people/inboard.css');
 export class LogInForm extends NeObject {
 
 
+	static REMEMBER_ME_KEY = "s8-people-remember-me";
+
+
 
 	/**
 	 * @type{InboardBox}
@@ -43,6 +46,14 @@ export class LogInForm extends NeObject {
 	feedback;
 
 
+	/** @type{HTMLInputElement} */
+	rememberMeNode;
+
+
+	/** remember-me token is sent back once, on first render */
+	hasTriedToken = false;
+
+
 
 	constructor() {
 		super();
@@ -72,12 +83,22 @@ export class LogInForm extends NeObject {
 		this.passwordField.inputNode.addEventListener("click", function() { _this.passwordField.clearMessage(); });
 		this.formNode.appendChild(this.passwordField.getEnvelope());
 
+		/* <input type="checkbox">Remember me</input> */
+		let rememberMeLabelNode = document.createElement("label");
+		rememberMeLabelNode.classList.add("inboard-remember-me");
+		this.rememberMeNode = document.createElement("input");
+		this.rememberMeNode.type = "checkbox";
+		rememberMeLabelNode.appendChild(this.rememberMeNode);
+		rememberMeLabelNode.appendChild(document.createTextNode("Remember me"));
+		this.formNode.appendChild(rememberMeLabelNode);
+
 		/* <button>Log In</button> */
 		let actionButtonNode = document.createElement("button");
 		actionButtonNode.classList.add("inboard-button-action");
 		actionButtonNode.innerText = "Log in";
 		actionButtonNode.addEventListener("click", function() {
-			const credentials = [_this.usernameField.getValue(), _this.passwordField.getValue()];
+			const credentials = [_this.usernameField.getValue(), _this.passwordField.getValue(), 
+				_this.rememberMeNode.checked ? "true" : "false"];
 			/*S8WebFront.loseFocus();*/
            _this.S8_vertex.runStringUTF8Array("on-trying-login", credentials);
         });
@@ -105,7 +126,27 @@ export class LogInForm extends NeObject {
 	}
 
 
-	S8_render() { /* continuous rendering approach... */ }
+	/**
+	 * @param {string} token (empty: forget)
+	 */
+	S8_set_rememberMeToken(token){
+		try {
+			if(token) { window.localStorage.setItem(LogInForm.REMEMBER_ME_KEY, token); }
+			else { window.localStorage.removeItem(LogInForm.REMEMBER_ME_KEY); }
+		}
+		catch(error){ /* storage not available (e.g. private browsing) */ }
+	}
+
+
+	S8_render() {
+		if(!this.hasTriedToken) {
+			this.hasTriedToken = true;
+			let token = null;
+			try { token = window.localStorage.getItem(LogInForm.REMEMBER_ME_KEY); }
+			catch(error){ /* storage not available */ }
+			if(token) { this.S8_vertex.runStringUTF8("on-trying-token-login", token); }
+		}
+	}
 
 
 	S8_dispose(){ /* nothing to do */ }